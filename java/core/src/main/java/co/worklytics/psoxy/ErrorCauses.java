@@ -17,6 +17,10 @@ public enum ErrorCauses {
     /**
      * Third party call returned error
      */
-    API_ERROR;
+    API_ERROR,
+    /**
+     * Response from third party couldn't be sanitized (eg, malformed content)
+     */
+    SANITIZATION;
 
 }
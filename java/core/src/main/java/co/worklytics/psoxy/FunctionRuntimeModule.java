@@ -1,7 +1,7 @@
 package co.worklytics.psoxy;
 
 import com.google.api.client.http.HttpRequestFactory;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.HttpTransport;
 import dagger.Module;
 import dagger.Provides;
 
@@ -29,9 +29,9 @@ public class FunctionRuntimeModule {
     }
 
     @Provides
-    static HttpRequestFactory providesHttpRequestFactory() {
-        //atm, all function runtimes expected to use generic java NetHttpTransport
-        return (new NetHttpTransport()).createRequestFactory();
+    static HttpRequestFactory providesHttpRequestFactory(HttpTransport transport) {
+        //shared transport, so token requests re-use pooled connections too
+        return transport.createRequestFactory();
     }
 
 }
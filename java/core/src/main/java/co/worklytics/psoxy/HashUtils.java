@@ -1,31 +1,227 @@
 package co.worklytics.psoxy;
 
 import lombok.NoArgsConstructor;
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.lang3.StringUtils;
+import lombok.NonNull;
+import lombok.SneakyThrows;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import javax.inject.Inject;
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
+import java.security.MessageDigest;
 
 @NoArgsConstructor(onConstructor_ = @Inject) // in lieu of provider
 public class HashUtils {
 
+    /**
+     * base64 alphabet, but with non-alphanumeric characters replaced
+     *
+     * To avoid urlencoding issues (especially with handlebars/template rendering) while not
+     * increasing % of collisions, replace base64 non-alphanumeric characters with urlencode
+     * unreserved alternatives ('+' --> '.', '/' --> '_').
+     * See: https://handlebarsjs.com/guide/#html-escaping
+     * https://en.wikipedia.org/wiki/Base64#Base64_table
+     * https://en.wikipedia.org/wiki/Percent-encoding#Types_of_URI_characters
+     */
+    static final char[] ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789._".toCharArray();
+
+    // 256 bits, base64-encoded without padding (which saves us the '=' character)
+    static final int ENCODED_LENGTH = 43;
+
+    static final int BUFFER_SIZE = 256;
+
+    static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    //MessageDigest is NOT thread-safe, so one (plus buffers) per thread
+    static final ThreadLocal<DigestState> STATE = ThreadLocal.withInitial(DigestState::new);
+
+    /**
+     * @param fragments to hash, as if concatenated; `null` fragments treated as "null" (as with
+     *                  String::join)
+     * @return SHA-256 of UTF-8 encoding of concatenated fragments, base64-encoded with our URL-safe
+     *         alphabet
+     */
     public String hash(String... fragments) {
-        // No padding saves us the '=' character
-        // https://www.baeldung.com/java-base64-encode-and-decode#2-java-8-base64-encoding-without-padding
-        String hash = new String(
-            Base64.getEncoder()
-                .withoutPadding()
-                .encode(DigestUtils.sha256(String.join("", fragments))),
-            StandardCharsets.UTF_8);
-
-        // To avoid urlencoding issues (especially with handlebars/template rendering)
-        // while not increasing % of collisions, replace base64 non-alphanumeric characters
-        // with urlencode unreserved alternatives (plus no padding from before)
-        // See: https://handlebarsjs.com/guide/#html-escaping
-        // https://en.wikipedia.org/wiki/Base64#Base64_table
-        // https://en.wikipedia.org/wiki/Percent-encoding#Types_of_URI_characters
-        return StringUtils.replaceChars(hash, "/+", "_.");
+        return STATE.get().hash(fragments);
+    }
+
+    /**
+     * @param key to key HMAC with
+     * @return hasher computing HMAC-SHA256 of fragments, keyed with key
+     */
+    public KeyedHash keyed(@NonNull String key) {
+        return new KeyedHash(key);
+    }
+
+    /**
+     * HMAC-SHA256, with key schedule computed once and cloned to each thread that uses it
+     *
+     * thread-safe
+     */
+    public static class KeyedHash {
+
+        final Mac prototype;
+
+        final ThreadLocal<MacState> state;
+
+        @SneakyThrows
+        KeyedHash(String key) {
+            prototype = Mac.getInstance(HMAC_ALGORITHM);
+            prototype.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            state = ThreadLocal.withInitial(() -> new MacState(copy(prototype)));
+        }
+
+        /**
+         * @param fragments to hash, as if concatenated; `null` fragments treated as "null"
+         * @return HMAC-SHA256 of UTF-8 encoding of concatenated fragments, base64-encoded with our
+         *         URL-safe alphabet
+         */
+        public String hash(String... fragments) {
+            return state.get().hash(fragments);
+        }
+
+        @SneakyThrows
+        static Mac copy(Mac prototype) {
+            // Mac::clone will be supported by any sane provider, but not required to be
+            synchronized (prototype) {
+                return (Mac) prototype.clone();
+            }
+        }
+    }
+
+    static abstract class State {
+
+        final byte[] utf8 = new byte[BUFFER_SIZE];
+
+        final byte[] hash = new byte[32];
+
+        final char[] encoded = new char[ENCODED_LENGTH];
+
+        abstract void update(byte[] bytes, int length);
+
+        /**
+         * write hash of whatever was fed to update() into `hash`, resetting ready for next use
+         */
+        abstract void doFinal();
+
+        String hash(String... fragments) {
+            byte[] buffer = utf8;
+
+            //fragments encoded as one stream of chars, so surrogate pair split across fragments is
+            // encoded exactly as it would be if fragments were joined first
+            int length = 0;
+            char highSurrogate = 0;
+            for (String fragment : fragments) {
+                if (fragment == null) {
+                    fragment = "null";
+                }
+                for (int i = 0; i < fragment.length(); i++) {
+                    if (length > BUFFER_SIZE - 4) {
+                        update(buffer, length);
+                        length = 0;
+                    }
+                    char c = fragment.charAt(i);
+                    if (highSurrogate != 0) {
+                        if (Character.isLowSurrogate(c)) {
+                            int codePoint = Character.toCodePoint(highSurrogate, c);
+                            buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                            buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                            buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                            buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                            highSurrogate = 0;
+                            continue;
+                        }
+                        //unpaired, so replaced (as String::getBytes does)
+                        buffer[length++] = '?';
+                        highSurrogate = 0;
+                    }
+                    if (c < 0x80) {
+                        buffer[length++] = (byte) c;
+                    } else if (c < 0x800) {
+                        buffer[length++] = (byte) (0xC0 | (c >> 6));
+                        buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                    } else if (Character.isHighSurrogate(c)) {
+                        highSurrogate = c;
+                    } else if (Character.isLowSurrogate(c)) {
+                        buffer[length++] = '?';
+                    } else {
+                        buffer[length++] = (byte) (0xE0 | (c >> 12));
+                        buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                        buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                    }
+                }
+            }
+            if (highSurrogate != 0) {
+                buffer[length++] = '?';
+            }
+            update(buffer, length);
+            doFinal();
+            return encode(hash, encoded);
+        }
+    }
+
+    static class DigestState extends State {
+
+        final MessageDigest digest;
+
+        @SneakyThrows
+        DigestState() {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+
+        @Override
+        void update(byte[] bytes, int length) {
+            digest.update(bytes, 0, length);
+        }
+
+        @SneakyThrows
+        @Override
+        void doFinal() {
+            digest.digest(hash, 0, hash.length);
+        }
+    }
+
+    static class MacState extends State {
+
+        final Mac mac;
+
+        MacState(Mac mac) {
+            this.mac = mac;
+        }
+
+        @Override
+        void update(byte[] bytes, int length) {
+            mac.update(bytes, 0, length);
+        }
+
+        @SneakyThrows
+        @Override
+        void doFinal() {
+            mac.doFinal(hash, 0);
+        }
+    }
+
+    /**
+     * @param hash    32 bytes
+     * @param encoded buffer into which to encode
+     * @return hash, base64-encoded without padding
+     */
+    static String encode(byte[] hash, char[] encoded) {
+        int e = 0;
+        int i = 0;
+        for (; i + 3 <= hash.length; i += 3) {
+            int bits = (hash[i] & 0xFF) << 16 | (hash[i + 1] & 0xFF) << 8 | (hash[i + 2] & 0xFF);
+            encoded[e++] = ALPHABET[bits >>> 18];
+            encoded[e++] = ALPHABET[(bits >>> 12) & 0x3F];
+            encoded[e++] = ALPHABET[(bits >>> 6) & 0x3F];
+            encoded[e++] = ALPHABET[bits & 0x3F];
+        }
+        //32 bytes, so always 2 remaining
+        int bits = (hash[i] & 0xFF) << 8 | (hash[i + 1] & 0xFF);
+        encoded[e++] = ALPHABET[bits >>> 10];
+        encoded[e++] = ALPHABET[(bits >>> 4) & 0x3F];
+        encoded[e++] = ALPHABET[(bits << 2) & 0x3F];
+        return new String(encoded, 0, e);
     }
 }
@@ -0,0 +1,85 @@
+package co.worklytics.psoxy;
+
+import com.google.common.cache.CacheStats;
+import lombok.NonNull;
+import lombok.Value;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.Callable;
+
+/**
+ * bounded, thread-safe memo of pseudonyms, shared by all sanitizers in a process
+ *
+ * source data tends to repeat the same (relatively small) set of identifiers many times (eg, the
+ * attendees of calendar events, or managers in HRIS exports), so most pseudonymizations can skip
+ * validation/canonicalization/hashing entirely.
+ *
+ * entries are keyed by fingerprint of the salt + default scope of the sanitizer that produced them,
+ * so sanitizers configured with different salts/scopes may safely share the cache.
+ *
+ * where entries are held is up to the PseudonymStore bound in PsoxyModule.
+ */
+@Singleton
+public class PseudonymCache {
+
+    final PseudonymStore store;
+
+    @Inject
+    public PseudonymCache(@NonNull PseudonymStore store) {
+        this.store = store;
+    }
+
+    @Value
+    public static class Key {
+
+        /**
+         * fingerprint of salt + scheme used to hash the value, rather than the salt itself
+         */
+        @NonNull
+        String saltFingerprint;
+
+        /**
+         * scope used for values that aren't otherwise of a recognized scope (eg, email)
+         */
+        String defaultScopeId;
+
+        /**
+         * value as received, prior to any canonicalization
+         */
+        @NonNull
+        String value;
+    }
+
+    /**
+     * @param key           of pseudonym
+     * @param pseudonymizer to compute pseudonym if not already cached; must not set `original`
+     * @return pseudonym for key; a copy, so caller is free to modify it
+     */
+    public PseudonymizedIdentity get(@NonNull Key key,
+                                     @NonNull Callable<PseudonymizedIdentity> pseudonymizer) {
+        PseudonymizedIdentity cached = store.getIfPresent(key);
+        if (cached == null) {
+            try {
+                cached = pseudonymizer.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to pseudonymize value", e);
+            }
+            store.put(key, cached);
+        }
+        return new PseudonymizedIdentity(cached.getScope(), cached.getDomain(), cached.getHash(), cached.getVersion(), null);
+    }
+
+    /**
+     * @return hit/miss/eviction counts since cache was created
+     */
+    public CacheStats getStats() {
+        return store.stats();
+    }
+
+    public long size() {
+        return store.size();
+    }
+}
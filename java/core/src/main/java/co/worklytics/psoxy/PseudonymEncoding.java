@@ -0,0 +1,38 @@
+package co.worklytics.psoxy;
+
+/**
+ * how pseudonyms are encoded in sanitized content
+ */
+public enum PseudonymEncoding {
+
+    /**
+     * PseudonymizedIdentity, as JSON; eg `{"scope":"email","domain":"worklytics.co","hash":"..."}`
+     */
+    JSON,
+
+    /**
+     * single string, `<scope>:<domain>:<hash>`; eg `e:worklytics.co:...`
+     *
+     *  - 'email' scope is abbreviated to `e`
+     *  - scope and domain are empty, if null
+     *  - if hash scheme is versioned, version is appended as `:v<version>`
+     *
+     * NOTE: pseudonyms that include the original value are always encoded as JSON
+     */
+    COMPACT,
+
+    /**
+     * PseudonymizedIdentity, as a JSON object within the document (for email headers, an array of
+     * them) - rather than a string containing JSON, as with `JSON`; so not escaped, nor need
+     * consumers decode it a second time.
+     *
+     * a different version of output than `JSON`, so consumers must expect it (see
+     * ResponseHeader.PSEUDONYM_ENCODING). where content is text rather than JSON (eg, CSV), as
+     * `JSON`.
+     *
+     * NOTE: within the document, pseudonyms are opaque values; subsequent transforms don't
+     * traverse into them (as they wouldn't into a string of JSON)
+     */
+    NATIVE,
+    ;
+}
@@ -0,0 +1,38 @@
+package co.worklytics.psoxy;
+
+import com.google.common.cache.CacheStats;
+import lombok.NonNull;
+
+/**
+ * backing store of PseudonymCache; bounded, thread-safe
+ *
+ * pseudonyms are deterministic, so a store may evict entries (or fail to retain them) at will; it
+ * need not guard against concurrent puts of the same key either, as these will be equal.
+ *
+ * default implementation holds pseudonyms on heap (GuavaPseudonymStore); bind another in
+ * PsoxyModule to hold them elsewhere (eg, off-heap, if heap is a constraint).
+ */
+public interface PseudonymStore {
+
+    /**
+     * @param key of pseudonym
+     * @return pseudonym stored for key, if any; null otherwise
+     */
+    PseudonymizedIdentity getIfPresent(@NonNull PseudonymCache.Key key);
+
+    /**
+     * @param key       of pseudonym
+     * @param pseudonym to store; won't be modified after this call, so needn't be copied
+     */
+    void put(@NonNull PseudonymCache.Key key, @NonNull PseudonymizedIdentity pseudonym);
+
+    /**
+     * @return hit/miss/eviction counts since store was created
+     */
+    CacheStats stats();
+
+    /**
+     * @return approximate number of pseudonyms stored
+     */
+    long size();
+}
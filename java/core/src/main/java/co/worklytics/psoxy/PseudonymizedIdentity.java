@@ -46,6 +46,14 @@ public class PseudonymizedIdentity {
 
     String hash;
 
+    /**
+     * version of scheme used to generate hash; `null` for legacy scheme
+     *
+     * pseudonyms are only comparable if generated with same version of scheme (and same salt)
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Integer version;
+
     @JsonInclude(JsonInclude.Include.NON_NULL)
     String original;
 
@@ -3,12 +3,17 @@ package co.worklytics.psoxy;
 import co.worklytics.psoxy.gateway.ConfigService;
 import co.worklytics.psoxy.gateway.ProxyConfigProperty;
 import co.worklytics.psoxy.gateway.SourceAuthStrategy;
+import co.worklytics.psoxy.gateway.impl.CommonRequestHandler;
 import co.worklytics.psoxy.gateway.impl.oauth.OAuthRefreshTokenSourceAuthStrategy;
+import co.worklytics.psoxy.impl.GuavaPseudonymStore;
+import co.worklytics.psoxy.impl.JsonNodeJsonProvider;
 import co.worklytics.psoxy.storage.FileHandlerFactory;
 import co.worklytics.psoxy.storage.impl.FileHandlerFactoryImpl;
+import co.worklytics.psoxy.utils.PooledHttpTransport;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.google.api.client.http.HttpContent;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import com.jayway.jsonpath.Configuration;
@@ -21,9 +26,12 @@ import dagger.Provides;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
 
 /**
@@ -45,7 +53,7 @@ public class PsoxyModule {
         return new ObjectMapper(new YAMLFactory());
     }
 
-    @Provides
+    @Provides @Singleton //immutable
     Configuration providesJSONConfiguration(JacksonJsonProvider jacksonJsonProvider,
                                             JacksonMappingProvider jacksonMappingProvider) {
         //jackson here because it's our common JSON stack, but adds dependency beyond the one pkg'd
@@ -55,12 +63,24 @@ public class PsoxyModule {
             .mappingProvider(jacksonMappingProvider);
     }
 
-    @Provides
+    /**
+     * as providesJSONConfiguration, but with documents parsed into Jackson's JsonNode tree rather
+     * than java.util.Map/List
+     */
+    @Provides @Singleton @Named("ForJsonNode")
+    Configuration providesJsonNodeConfiguration(ObjectMapper objectMapper,
+                                                JacksonMappingProvider jacksonMappingProvider) {
+        return Configuration.defaultConfiguration()
+            .jsonProvider(new JsonNodeJsonProvider(objectMapper))
+            .mappingProvider(jacksonMappingProvider);
+    }
+
+    @Provides @Singleton //stateless, beyond (thread-safe) ObjectMapper
     JacksonJsonProvider jacksonJsonProvider(ObjectMapper objectMapper) {
         return new JacksonJsonProvider(objectMapper);
     }
 
-    @Provides
+    @Provides @Singleton //stateless, beyond (thread-safe) ObjectMapper
     JacksonMappingProvider jacksonMappingProvider(ObjectMapper objectMapper) {
         return new JacksonMappingProvider(objectMapper);
     }
@@ -70,6 +90,24 @@ public class PsoxyModule {
         return GsonFactory.getDefaultInstance();
     }
 
+    @Provides @Singleton //pools connections to source, so must be shared across requests
+    static HttpTransport httpTransport(ConfigService config) {
+        return PooledHttpTransport.of(config.getConfigPropertyAsOptional(ProxyConfigProperty.SOURCE_HTTP_VERSION)
+            .map(version -> HttpClient.Version.valueOf(version.trim().toUpperCase()))
+            .orElse(HttpClient.Version.HTTP_1_1),
+            Duration.ofMillis(CommonRequestHandler.SOURCE_API_REQUEST_CONNECT_TIMEOUT_MILLISECONDS));
+    }
+
+    /**
+     * on which sanitizers traverse elements of large arrays in parallel; dedicated rather than
+     * common pool, so bounded (one thread per processor) however many requests are in flight, and
+     * not contending with other users of common pool
+     */
+    @Provides @Singleton @Named("ForSanitizer")
+    static ForkJoinPool sanitizerPool() {
+        return new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
     @Provides
     static Logger logger() {
         return Logger.getLogger(PsoxyModule.class.getCanonicalName());
@@ -116,4 +154,9 @@ public class PsoxyModule {
     static FileHandlerFactory fileHandler(FileHandlerFactoryImpl fileHandlerStrategy) {
         return fileHandlerStrategy;
     }
+
+    @Provides
+    static PseudonymStore pseudonymStore(GuavaPseudonymStore guavaPseudonymStore) {
+        return guavaPseudonymStore;
+    }
 }
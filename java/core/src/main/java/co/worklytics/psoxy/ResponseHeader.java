@@ -16,6 +16,10 @@ public enum ResponseHeader {
      *
      */
     RULES_SHA("Rules-SHA"),
+    /**
+     * encoding of pseudonyms in the response (see PseudonymEncoding)
+     */
+    PSEUDONYM_ENCODING("Pseudonym-Encoding"),
     ERROR("Error");
 
     @NonNull
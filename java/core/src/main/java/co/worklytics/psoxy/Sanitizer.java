@@ -3,8 +3,14 @@ package co.worklytics.psoxy;
 import co.worklytics.psoxy.rules.RuleSet;
 import lombok.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Map;
 
 public interface Sanitizer {
 
@@ -13,7 +19,7 @@ public interface Sanitizer {
     @Value
     class Options implements Serializable {
 
-        private static final long serialVersionUID = 3L;
+        private static final long serialVersionUID = 8L;
 
         /**
          * salt used to generate pseudonyms
@@ -29,6 +35,107 @@ public interface Sanitizer {
         String defaultScopeId;
 
         RuleSet rules;
+
+        /**
+         * engine used to apply rules' transforms to JSON content
+         */
+        @Builder.Default
+        Engine engine = Engine.JSON_PATH;
+
+        /**
+         * scheme used to hash identifiers; NOTE: changing this changes all pseudonyms
+         */
+        @Builder.Default
+        HashScheme hashScheme = HashScheme.LEGACY;
+
+        /**
+         * model into which JSON content is parsed, for engines that parse it into a tree
+         */
+        @Builder.Default
+        DocumentModel documentModel = DocumentModel.MAP;
+
+        /**
+         * min number of elements an array must have for them to be sanitized in parallel, with
+         * SINGLE_PASS engine; 0 to disable
+         */
+        @Builder.Default
+        int parallelThreshold = 1000;
+
+        /**
+         * encoding of pseudonyms, unless rules specify one
+         */
+        @Builder.Default
+        PseudonymEncoding pseudonymEncoding = PseudonymEncoding.JSON;
+    }
+
+    /**
+     * ways of hashing identifiers, given the salt
+     */
+    enum HashScheme {
+
+        /**
+         * SHA-256 of canonical value + salt + scope (scope omitted for emails), as in original
+         * Worklytics scheme
+         */
+        LEGACY(null),
+
+        /**
+         * HMAC-SHA256, keyed with salt, of scope + ':' + canonical value
+         *
+         * key schedule is computed once per salt, rather than per identifier
+         */
+        HMAC_SHA256(1);
+
+        /**
+         * value of PseudonymizedIdentity::version for pseudonyms hashed with this scheme; null for
+         * legacy scheme, so that such pseudonyms are unchanged
+         */
+        @Getter
+        private final Integer version;
+
+        HashScheme(Integer version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * models of parsed JSON content; all should produce the same output
+     */
+    enum DocumentModel {
+
+        /**
+         * generic java.util.Map/List tree, with boxed number leaves
+         */
+        MAP,
+
+        /**
+         * Jackson JsonNode tree; more compact, and serialized directly without any mapping
+         */
+        JSON_NODE,
+    }
+
+    /**
+     * ways of applying transforms to JSON content; all should produce the same output
+     */
+    enum Engine {
+
+        /**
+         * parse content into a tree, then apply each JsonPath of each transform to it in turn
+         */
+        JSON_PATH,
+
+        /**
+         * parse content into a tree, then apply all transforms in a single traversal of it, per a
+         * plan compiled from the JsonPaths of all the endpoint's transforms; endpoints with
+         * JsonPaths outside the subset that this supports fallback to JSON_PATH
+         */
+        SINGLE_PASS,
+
+        /**
+         * as SINGLE_PASS, but apply transforms token-by-token as content is parsed, copying
+         * through parts of the content that no transform applies to
+         */
+        STREAMING,
     }
 
     /**
@@ -54,6 +161,46 @@ public interface Sanitizer {
      */
     String sanitize(URL url, String jsonResponse);
 
+    /**
+     * sanitize jsonResponse received from url, as it's read, writing result to sanitized as it's
+     * produced; so, with STREAMING engine, content needn't ever be held in memory whole
+     *
+     * NOTE: if isStreaming(url), output may already have been written, so caller can't respond
+     * with an error if this throws part way through
+     *
+     * @param jsonResponse content received from url; not closed
+     * @param charset      with which jsonResponse is encoded
+     * @param sanitized    to which to write sanitized content, UTF-8 encoded; not closed
+     */
+    void sanitize(URL url, InputStream jsonResponse, Charset charset, OutputStream sanitized) throws IOException;
+
+    /**
+     * @param url allowed to be called via proxy
+     * @return whether sanitize returns content received from url as-is (eg, no transforms apply to
+     *         it), such that caller can pass it through without even decoding it
+     */
+    boolean isPassthrough(URL url);
+
+    /**
+     * @param url allowed to be called via proxy
+     * @return whether sanitize writes content received from url as it's read (eg, passthrough, or
+     *         STREAMING engine), rather than only once it's been parsed and sanitized whole
+     */
+    boolean isStreaming(URL url);
+
+    /**
+     * @param url allowed to be called via proxy
+     * @return encoding of pseudonyms in content sanitized for url
+     */
+    PseudonymEncoding getPseudonymEncoding(URL url);
+
+    /**
+     * @param pseudonym to encode
+     * @param encoding  to encode it with
+     * @return pseudonym, encoded as a String
+     */
+    String encode(PseudonymizedIdentity pseudonym, PseudonymEncoding encoding);
+
     /**
      * @param identifier to pseudonymize
      * @return identifier as a PseudonymizedIdentity
@@ -66,5 +213,18 @@ public interface Sanitizer {
      */
     PseudonymizedIdentity pseudonymize(Number identifier);
 
+    /**
+     * pseudonymize a batch of identifiers, such that each distinct identifier is pseudonymized once
+     *
+     * @param identifiers to pseudonymize; may contain duplicates; nulls are ignored
+     * @return pseudonym of each distinct identifier, in order of first occurrence
+     */
+    Map<String, PseudonymizedIdentity> pseudonymizeAll(Collection<String> identifiers);
+
     Options getOptions();
+
+    /**
+     * @return fingerprint of options' rules, as RulesUtils::sha; computed once, not per call
+     */
+    String getRulesSha();
 }
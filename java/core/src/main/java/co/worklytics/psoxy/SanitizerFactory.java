@@ -24,6 +24,26 @@ public interface SanitizerFactory {
 
         builder.rules(rules);
 
+        config.getConfigPropertyAsOptional(ProxyConfigProperty.SANITIZER_ENGINE)
+            .map(engine -> Sanitizer.Engine.valueOf(engine.trim().toUpperCase()))
+            .ifPresent(builder::engine);
+
+        config.getConfigPropertyAsOptional(ProxyConfigProperty.SANITIZER_DOCUMENT_MODEL)
+            .map(model -> Sanitizer.DocumentModel.valueOf(model.trim().toUpperCase()))
+            .ifPresent(builder::documentModel);
+
+        config.getConfigPropertyAsOptional(ProxyConfigProperty.SANITIZER_PARALLEL_THRESHOLD)
+            .map(threshold -> Integer.parseInt(threshold.trim()))
+            .ifPresent(builder::parallelThreshold);
+
+        config.getConfigPropertyAsOptional(ProxyConfigProperty.HASH_SCHEME)
+            .map(scheme -> Sanitizer.HashScheme.valueOf(scheme.trim().toUpperCase()))
+            .ifPresent(builder::hashScheme);
+
+        config.getConfigPropertyAsOptional(ProxyConfigProperty.PSEUDONYM_ENCODING)
+            .map(encoding -> PseudonymEncoding.valueOf(encoding.trim().toUpperCase()))
+            .ifPresent(builder::pseudonymEncoding);
+
         return builder.build();
     }
 
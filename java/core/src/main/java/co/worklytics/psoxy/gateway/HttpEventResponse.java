@@ -6,7 +6,10 @@ import lombok.ToString;
 import lombok.Value;
 import org.apache.commons.lang3.tuple.Pair;
 
-import java.util.List;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 /**
@@ -24,5 +27,88 @@ public class HttpEventResponse {
     @Singular
     Map<String,String> headers;
 
+    /**
+     * body, as text; ignored if rawBody is set
+     */
     String body;
+
+    /**
+     * body, as bytes exactly as received from source (not decoded, nor re-encoded); if set, takes
+     * precedence over body
+     */
+    @ToString.Exclude
+    byte[] rawBody;
+
+    /**
+     * body, written to client as it's produced (eg, as content is read from source and sanitized),
+     * so never held in memory whole; if set, takes precedence over rawBody and body
+     */
+    @ToString.Exclude
+    StreamingBody streamingBody;
+
+    public interface StreamingBody {
+
+        /**
+         * write body to out, then release whatever it's produced from (eg, connection to source);
+         * may be called only once
+         *
+         * @param out to write to; not closed
+         */
+        void writeTo(OutputStream out) throws IOException;
+
+        /**
+         * @return whether body is UTF-8 encoded text (as opposed to bytes exactly as received from
+         *         source)
+         */
+        boolean isText();
+    }
+
+    /**
+     * write body to out, streaming it if possible
+     *
+     * @param out to write to; not closed
+     */
+    public void writeBody(OutputStream out) throws IOException {
+        if (streamingBody != null) {
+            streamingBody.writeTo(out);
+        } else {
+            out.write(getBodyBytes());
+        }
+    }
+
+    /**
+     * @return this response, with any streaming body written to memory as body (if text) or
+     *         rawBody; for callers that must have response whole (eg, AWS lambda return value)
+     */
+    public HttpEventResponse buffered() throws IOException {
+        if (streamingBody == null) {
+            return this;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamingBody.writeTo(out);
+        HttpEventResponseBuilder builder = HttpEventResponse.builder()
+            .statusCode(statusCode)
+            .headers(headers);
+        if (streamingBody.isText()) {
+            builder.body(out.toString(StandardCharsets.UTF_8));
+        } else {
+            builder.rawBody(out.toByteArray());
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return body as bytes; UTF-8 encoded, if it's text
+     */
+    public byte[] getBodyBytes() {
+        if (streamingBody != null) {
+            throw new IllegalStateException("Body is streaming; use writeBody, or buffered");
+        } else if (rawBody != null) {
+            return rawBody;
+        } else if (body == null) {
+            return new byte[0];
+        } else {
+            return body.getBytes(StandardCharsets.UTF_8);
+        }
+    }
 }
@@ -4,15 +4,27 @@ package co.worklytics.psoxy.gateway;
  * config properties that control basic proxy behavior
  */
 public enum ProxyConfigProperty implements ConfigService.ConfigProperty {
+    // if set, scheme used to hash identifiers (eg, 'HMAC_SHA256'); defaults to 'LEGACY'
+    HASH_SCHEME,
     IDENTIFIER_SCOPE_ID,
+    // if set, default encoding of pseudonyms (eg, 'COMPACT'); defaults to 'JSON'
+    PSEUDONYM_ENCODING,
     PSOXY_SALT,
     // if set, a base64-YAML encoding of rules
     RULES,
     // for testing - if set, allows for behavior that should only be permitted in development context,
     // such as to skip sanitizer if corresponding header is sent
     IS_DEVELOPMENT_MODE,
+    // if set, model into which JSON content is parsed (eg, 'JSON_NODE'); defaults to 'MAP'
+    SANITIZER_DOCUMENT_MODEL,
+    // if set, engine used to apply rules to JSON content (eg, 'STREAMING'); defaults to 'JSON_PATH'
+    SANITIZER_ENGINE,
+    // if set, min length of arrays to sanitize elements of in parallel (eg, '500'); '0' to disable
+    SANITIZER_PARALLEL_THRESHOLD,
     SOURCE,
     SOURCE_AUTH_STRATEGY_IDENTIFIER,
+    // if set, preferred version of HTTP for connections to source (eg, 'HTTP_2'); defaults to 'HTTP_1_1'
+    SOURCE_HTTP_VERSION,
     //target API endpoint to forward request to
     TARGET_HOST,
 }
@@ -3,15 +3,14 @@ package co.worklytics.psoxy.gateway.impl;
 import co.worklytics.psoxy.*;
 import co.worklytics.psoxy.gateway.*;
 import co.worklytics.psoxy.rules.RuleSet;
-import co.worklytics.psoxy.rules.RulesUtils;
 import co.worklytics.psoxy.utils.ComposedHttpRequestInitializer;
 import co.worklytics.psoxy.utils.GzipedContentHttpRequestInitializer;
+import co.worklytics.psoxy.utils.PooledHttpTransport;
 import co.worklytics.psoxy.utils.URLUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.GenericUrl;
 import com.google.api.client.http.HttpRequestFactory;
 import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.auth.Credentials;
 import com.google.auth.http.HttpCredentialsAdapter;
 import lombok.NoArgsConstructor;
@@ -24,8 +23,13 @@ import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.ContentType;
 
 import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 import java.util.function.Supplier;
 import java.util.logging.Level;
@@ -35,17 +39,22 @@ import java.util.logging.Level;
 public class CommonRequestHandler {
 
     //we have ~540 total in Cloud Function connection, so can have generous values here
-    private static final int SOURCE_API_REQUEST_CONNECT_TIMEOUT_MILLISECONDS = 30_000;
+    // connect timeout also that of pooled transport; see PsoxyModule::httpTransport
+    public static final int SOURCE_API_REQUEST_CONNECT_TIMEOUT_MILLISECONDS = 30_000;
+    // NOTE: with PooledHttpTransport, bounds total time until response headers received
     private static final int SOURCE_API_REQUEST_READ_TIMEOUT = 300_000;
 
+    // prefix of error responses from source logged, if FINE logging enabled
+    private static final int MAX_LOGGED_ERROR_BODY_BYTES = 1_024;
+
     @Inject ConfigService config;
-    @Inject RulesUtils rulesUtils;
     @Inject SourceAuthStrategy sourceAuthStrategy;
     @Inject ObjectMapper objectMapper;
     @Inject SanitizerFactory sanitizerFactory;
     @Inject
     RuleSet rules;
     @Inject HealthCheckRequestHandler healthCheckRequestHandler;
+    @Inject HttpTransport httpTransport;
 
     private volatile Sanitizer sanitizer;
     private final Object $writeLock = new Object[0];
@@ -127,50 +136,126 @@ public class CommonRequestHandler {
         com.google.api.client.http.HttpResponse sourceApiResponse = sourceApiRequest.execute();
 
         logIfDevelopmentMode(() -> sourceApiResponse.toString());
+        if (httpTransport instanceof PooledHttpTransport) {
+            logIfDevelopmentMode(() -> ((PooledHttpTransport) httpTransport).getStats().toString());
+        }
 
         // return response
         builder.statusCode(sourceApiResponse.getStatusCode());
+        boolean streaming = false;
         try {
-            // return response
-            builder.statusCode(sourceApiResponse.getStatusCode());
-
-            String responseContent = StringUtils.EMPTY;
-            // could be empty in HEAD calls
-            if (sourceApiResponse.getContent() != null) {
-                responseContent = new String(sourceApiResponse.getContent().readAllBytes(), sourceApiResponse.getContentCharset());
-            }
             if (sourceApiResponse.getContentType() != null) {
                 builder.header(HttpHeaders.CONTENT_TYPE, sourceApiResponse.getContentType());
             }
 
-            String proxyResponseContent;
             if (isSuccessFamily(sourceApiResponse.getStatusCode())) {
-                if (skipSanitization) {
-                    proxyResponseContent = responseContent;
+                if (skipSanitization || sanitizer.isPassthrough(targetUrl)) {
+                    //no need to decode, parse, re-encode
+                    builder.streamingBody(streamingBody(sourceApiResponse, false,
+                        (content, out) -> content.transferTo(out)));
+                    streaming = true;
                 } else {
-                    proxyResponseContent = sanitizer.sanitize(targetUrl, responseContent);
-                    String rulesSha = rulesUtils.sha(sanitizer.getOptions().getRules());
+                    Charset charset = sourceApiResponse.getContentCharset();
+                    if (sanitizer.isStreaming(targetUrl)) {
+                        builder.streamingBody(streamingBody(sourceApiResponse, true,
+                            (content, out) -> sanitizer.sanitize(targetUrl, content, charset, out)));
+                        streaming = true;
+                    } else {
+                        // content is parsed whole anyway, so sanitize it before responding; such
+                        // that any failure is an error response, rather than a truncated 200
+                        ByteArrayOutputStream sanitized = new ByteArrayOutputStream();
+                        try {
+                            // could be empty in HEAD calls
+                            InputStream content = sourceApiResponse.getContent();
+                            if (content != null) {
+                                try (content) {
+                                    sanitizer.sanitize(targetUrl, content, charset, sanitized);
+                                }
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            log.log(Level.WARNING, "Failed to sanitize response from source", e);
+                            return HttpEventResponse.builder()
+                                .statusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR)
+                                .header(ResponseHeader.ERROR.getHttpHeader(), ErrorCauses.SANITIZATION.name())
+                                .build();
+                        }
+                        builder.body(sanitized.toString(StandardCharsets.UTF_8));
+                    }
+                    builder.header(ResponseHeader.PSEUDONYM_ENCODING.getHttpHeader(),
+                        sanitizer.getPseudonymEncoding(targetUrl).name());
+                }
+                if (!skipSanitization) {
+                    String rulesSha = sanitizer.getRulesSha();
                     builder.header(ResponseHeader.RULES_SHA.getHttpHeader(), rulesSha);
                     log.info("response sanitized with rule set " + rulesSha);
                 }
             } else {
-                //write error, which shouldn't contain PII, directly
-                log.log(Level.WARNING, "Source API Error " + responseContent);
+                byte[] responseBytes = new byte[0];
+                // could be empty in HEAD calls
+                InputStream content = sourceApiResponse.getContent();
+                if (content != null) {
+                    try (content) {
+                        responseBytes = content.readAllBytes();
+                    }
+                }
+                log.log(Level.WARNING, "Source API Error: " + sourceApiResponse.getStatusCode()
+                    + "; " + responseBytes.length + " bytes");
+                if (log.isLoggable(Level.FINE)) {
+                    // only decoded (and only a prefix) if it's going to be logged
+                    log.fine("Source API Error body: " + new String(responseBytes, 0,
+                        Math.min(responseBytes.length, MAX_LOGGED_ERROR_BODY_BYTES), sourceApiResponse.getContentCharset()));
+                }
+                //write error, which shouldn't contain PII, directly, as received
                 //TODO: could run this through DLP to be extra safe
                 builder.header(ResponseHeader.ERROR.getHttpHeader(), ErrorCauses.API_ERROR.name());
-                proxyResponseContent = responseContent;
+                builder.rawBody(responseBytes);
             }
-            builder.body(StringUtils.trimToEmpty(proxyResponseContent));
             return builder.build();
         } finally {
-            sourceApiResponse.disconnect();
+            if (!streaming) {
+                sourceApiResponse.disconnect();
+            }
         }
     }
 
+    interface ContentWriter {
+        void write(InputStream content, OutputStream out) throws IOException;
+    }
+
+    /**
+     * @return body that's written from content of sourceApiResponse as it's read, via writer; and
+     *         which disconnects sourceApiResponse once written
+     */
+    HttpEventResponse.StreamingBody streamingBody(com.google.api.client.http.HttpResponse sourceApiResponse,
+                                                  boolean text,
+                                                  ContentWriter writer) {
+        return new HttpEventResponse.StreamingBody() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                try {
+                    // could be empty in HEAD calls
+                    InputStream content = sourceApiResponse.getContent();
+                    if (content != null) {
+                        try (content) {
+                            writer.write(content, out);
+                        }
+                    }
+                } finally {
+                    sourceApiResponse.disconnect();
+                }
+            }
+
+            @Override
+            public boolean isText() {
+                return text;
+            }
+        };
+    }
+
     @SneakyThrows
     HttpRequestFactory getRequestFactory(HttpEventRequest request) {
         // per connection request factory, abstracts auth ..
-        HttpTransport transport = new NetHttpTransport();
+        // (but over shared transport, so connections to source are re-used across requests)
 
         //TODO: changing impl of credentials/initializer should support sources authenticated by
         // something OTHER than a Google Service account
@@ -195,7 +280,7 @@ public class CommonRequestHandler {
             ComposedHttpRequestInitializer.of(initializeWithCredentials,
                 new GzipedContentHttpRequestInitializer("Psoxy"));
 
-        return transport.createRequestFactory(initializer);
+        return httpTransport.createRequestFactory(initializer);
     }
 
     /**
@@ -0,0 +1,140 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import com.google.auth.RequestMetadataCallback;
+import com.google.auth.oauth2.OAuth2Credentials;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.java.Log;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+/**
+ * bounded, thread-safe memo of credentials, shared by all requests in a process (container)
+ *
+ * credentials cache their own access token, so re-using them across requests means token is
+ * fetched from source's token endpoint only when it's about to expire, rather than per request;
+ * and any parsing/signing to build them is done once per key.
+ *
+ * tokens nearing expiry are refreshed in the background when credentials are next used, so
+ * requests don't block on token endpoint while current token remains valid.
+ *
+ * NOTE: config (eg, keys) from which credentials were built is assumed fixed for lifetime of
+ * container; entries expire only when unused for EXPIRE_AFTER_ACCESS.
+ */
+@Log
+@Singleton
+public class CredentialsCache {
+
+    /**
+     * max number of credentials retained; enough for connectors that impersonate each user in a
+     * large domain
+     */
+    static final long DEFAULT_MAXIMUM_SIZE = 10_000L;
+
+    /**
+     * access tokens are typically valid for 1 hour; no point holding credentials unused for longer
+     */
+    static final Duration EXPIRE_AFTER_ACCESS = Duration.ofHours(1);
+
+    final Cache<Key, OAuth2Credentials> cache;
+
+    /**
+     * runs background token refreshes
+     */
+    final Executor refreshExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setNameFormat("credentials-refresh-%d")
+        .setDaemon(true)
+        .build());
+
+    @Inject
+    public CredentialsCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public CredentialsCache(long maximumSize) {
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterAccess(EXPIRE_AFTER_ACCESS)
+            .recordStats()
+            .build();
+    }
+
+    @Value
+    public static class Key {
+
+        /**
+         * config identifier of SourceAuthStrategy that built credentials
+         */
+        @NonNull
+        String strategy;
+
+        /**
+         * user, if any, that credentials impersonate
+         */
+        String userToImpersonate;
+
+        @NonNull
+        Set<String> scopes;
+    }
+
+    /**
+     * @param key     of credentials
+     * @param builder to build credentials if not already cached
+     * @return credentials for key; if their token is nearing expiry, it's being refreshed in the
+     *         background
+     */
+    public OAuth2Credentials get(@NonNull Key key,
+                                 @NonNull Callable<? extends OAuth2Credentials> builder) {
+        OAuth2Credentials credentials;
+        try {
+            credentials = cache.get(key, builder);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to build credentials", e.getCause());
+        }
+
+        if (credentials.getAccessToken() != null) {
+            // no-op if token is fresh; otherwise, starts refresh on refreshExecutor (unless one is
+            // already in progress) and returns without waiting for it
+            credentials.getRequestMetadata(null, refreshExecutor, new RequestMetadataCallback() {
+                @Override
+                public void onSuccess(Map<String, List<String>> metadata) {
+                }
+
+                @Override
+                public void onFailure(Throwable exception) {
+                    log.log(Level.WARNING, "Failed to refresh credentials in background", exception);
+                }
+            });
+        }
+        return credentials;
+    }
+
+    /**
+     * @return hit/miss/eviction counts since cache was created
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+}
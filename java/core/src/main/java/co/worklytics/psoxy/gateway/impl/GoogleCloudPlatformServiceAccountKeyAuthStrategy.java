@@ -26,12 +26,22 @@ public class GoogleCloudPlatformServiceAccountKeyAuthStrategy implements SourceA
 
     @Inject ConfigService config;
 
-    @SneakyThrows
+    @Inject CredentialsCache credentialsCache;
+
     @Override
     public Credentials getCredentials(Optional<String> userToImpersonate) {
 
         Set<String> scopes = Arrays.stream(config.getConfigPropertyOrError(SourceAuthConfigProperty.OAUTH_SCOPES).split(","))
             .collect(Collectors.toSet());
+
+        // re-use credentials (and so their access token) across requests, per user
+        CredentialsCache.Key key =
+            new CredentialsCache.Key(configIdentifier, userToImpersonate.orElse(null), scopes);
+        return credentialsCache.get(key, () -> buildCredentials(userToImpersonate, scopes));
+    }
+
+    @SneakyThrows
+    GoogleCredentials buildCredentials(Optional<String> userToImpersonate, Set<String> scopes) {
         GoogleCredentials credentials;
 
         Optional<String> key = config.getConfigPropertyAsOptional(SourceAuthConfigProperty.SERVICE_ACCOUNT_KEY);
@@ -13,6 +13,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.SneakyThrows;
 import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.tuple.Pair;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -78,6 +79,11 @@ public class ClientCredentialsGrantTokenRequestPayloadBuilder
     @Inject
     Provider<UUID> uuidGenerator;
 
+    /**
+     * private key, with PEM it was parsed from; so parsed once, rather than per assertion
+     */
+    private volatile Pair<String, PrivateKey> privateKey;
+
     @SneakyThrows
     public HttpContent buildPayload() {
 
@@ -148,6 +154,15 @@ public class ClientCredentialsGrantTokenRequestPayloadBuilder
 
     private PrivateKey getServiceAccountPrivateKey() throws IOException {
         String privateKeyPem = config.getConfigPropertyOrError(ConfigProperty.PRIVATE_KEY);
+        Pair<String, PrivateKey> parsed = this.privateKey;
+        if (parsed == null || !parsed.getKey().equals(privateKeyPem)) {
+            parsed = Pair.of(privateKeyPem, parsePrivateKey(privateKeyPem));
+            this.privateKey = parsed;
+        }
+        return parsed.getValue();
+    }
+
+    private PrivateKey parsePrivateKey(String privateKeyPem) throws IOException {
         Reader reader = new StringReader(privateKeyPem);
         PemReader.Section section = PemReader.readFirstSectionAndClose(reader, "PRIVATE KEY");
         if (section == null) {
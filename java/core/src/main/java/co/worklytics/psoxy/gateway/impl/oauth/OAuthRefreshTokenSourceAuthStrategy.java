@@ -3,6 +3,7 @@ package co.worklytics.psoxy.gateway.impl.oauth;
 import co.worklytics.psoxy.gateway.ConfigService;
 import co.worklytics.psoxy.gateway.RequiresConfiguration;
 import co.worklytics.psoxy.gateway.SourceAuthStrategy;
+import co.worklytics.psoxy.gateway.impl.CredentialsCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.*;
 import com.google.auth.Credentials;
@@ -11,13 +12,17 @@ import com.google.auth.oauth2.OAuth2CredentialsWithRefresh;
 import com.google.common.annotations.VisibleForTesting;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Value;
 import lombok.extern.java.Log;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -28,8 +33,9 @@ import java.util.stream.Stream;
  *   Options for refresh method are configured by
  *
  * A new access token will be retrieved for every psoxy instance that spins up; as well as when the
- * current one expires.  We'll endeavor to minimize the number of token requests by sharing this
- * states across API requests
+ * current one nears expiry. Credentials (and so the token) are shared across API requests, and
+ * concurrent requests share any refresh in progress, so at most one token request is in flight at
+ * a time.
  *
  * If the source API you're connecting to offers long-lived access tokens (or does not offer refresh
  * tokens), you may opt for the access-token only strategy:
@@ -61,6 +67,8 @@ public class OAuthRefreshTokenSourceAuthStrategy implements SourceAuthStrategy {
 
     @Inject OAuth2CredentialsWithRefresh.OAuth2RefreshHandler refreshHandler;
 
+    @Inject CredentialsCache credentialsCache;
+
     @Override
     public Set<ConfigService.ConfigProperty> getRequiredConfigProperties() {
         Stream<ConfigService.ConfigProperty> propertyStream = Arrays.stream(ConfigProperty.values());
@@ -74,12 +82,13 @@ public class OAuthRefreshTokenSourceAuthStrategy implements SourceAuthStrategy {
 
     @Override
     public Credentials getCredentials(Optional<String> userToImpersonate) {
-        return OAuth2CredentialsWithRefresh.newBuilder()
-            //TODO: pull an AccessToken from some cached location or something? otherwise will
-            // be 'null' and refreshed for every request; and/or Keep credentials themselves in
-            // memory
+        // single credentials for the process, which cache their access token and refresh it in
+        // the background as it nears expiry (see CredentialsCache)
+        CredentialsCache.Key key =
+            new CredentialsCache.Key(configIdentifier, null, Collections.emptySet());
+        return credentialsCache.get(key, () -> OAuth2CredentialsWithRefresh.newBuilder()
             .setRefreshHandler(refreshHandler)
-            .build();
+            .build());
     }
 
     public interface TokenRequestPayloadBuilder {
@@ -91,6 +100,7 @@ public class OAuthRefreshTokenSourceAuthStrategy implements SourceAuthStrategy {
 
     @NoArgsConstructor(onConstructor_ = @Inject)
     @Log
+    @Singleton //holds current token, so must be shared across requests
     public static class TokenRefreshHandlerImpl implements OAuth2CredentialsWithRefresh.OAuth2RefreshHandler,
             RequiresConfiguration {
 
@@ -103,23 +113,71 @@ public class OAuthRefreshTokenSourceAuthStrategy implements SourceAuthStrategy {
         @Inject
         OAuthRefreshTokenSourceAuthStrategy.TokenRequestPayloadBuilder payloadBuilder;
 
+        /**
+         * tokens this close to expiry are refreshed, rather than re-used; unless they're short-lived,
+         * in which case only in latter half of their lifetime (see refreshThreshold)
+         *
+         * NOTE: must be at least refresh margin of OAuth2Credentials (6 min by default); otherwise
+         * refreshes that they trigger ahead of expiry would just get the current token back
+         */
         @VisibleForTesting
-        protected final Duration TOKEN_REFRESH_THRESHOLD = Duration.ofMinutes(1L);
+        protected final Duration TOKEN_REFRESH_THRESHOLD = Duration.ofMinutes(6L);
+
+        /**
+         * usage of token endpoint; for monitoring
+         */
+        @Getter
+        final Stats stats = new Stats();
+
+        private final Object refreshLock = new Object();
+
+        private volatile IssuedToken currentToken = null;
+
+        @Value
+        static class IssuedToken {
+
+            AccessToken accessToken;
 
-        private AccessToken currentToken = null;
+            Instant issuedAt;
+        }
 
         /**
          * implements canonical oauth flow to exchange refreshToken for accessToken
          *
+         * concurrent callers share single request to token endpoint: any that find a refresh in
+         * progress wait for it, and get its result.
+         *
          * @return the resulting AccessToken
          * @throws IOException if anything went wrong;
          * @throws Error       if config values missing
          */
         @Override
         public AccessToken refreshAccessToken() throws IOException {
-            if (isCurrentTokenValid(this.currentToken, Instant.now())) {
-                return this.currentToken;
+            IssuedToken token = this.currentToken;
+            if (token != null && isCurrentTokenValid(token.getAccessToken(), token.getIssuedAt(), Instant.now())) {
+                return token.getAccessToken();
+            }
+            synchronized (refreshLock) {
+                // may have been refreshed by another caller, while this one awaited lock
+                token = this.currentToken;
+                if (token != null && isCurrentTokenValid(token.getAccessToken(), token.getIssuedAt(), Instant.now())) {
+                    return token.getAccessToken();
+                }
+                long start = System.nanoTime();
+                try {
+                    token = requestAccessToken();
+                } catch (IOException | RuntimeException e) {
+                    stats.recordFailure();
+                    throw e;
+                }
+                this.currentToken = token;
+                stats.recordRefresh(Duration.ofNanos(System.nanoTime() - start));
+                log.info("Refreshed access token; " + stats);
+                return token.getAccessToken();
             }
+        }
+
+        IssuedToken requestAccessToken() throws IOException {
             String refreshEndpoint =
                 config.getConfigPropertyOrError(OAuthRefreshTokenSourceAuthStrategy.ConfigProperty.REFRESH_ENDPOINT);
 
@@ -128,9 +186,14 @@ public class OAuthRefreshTokenSourceAuthStrategy implements SourceAuthStrategy {
 
             HttpResponse response = tokenRequest.execute();
 
-            CanonicalOAuthAccessTokenResponseDto tokenResponse =
-                objectMapper.readerFor(CanonicalOAuthAccessTokenResponseDto.class)
+            CanonicalOAuthAccessTokenResponseDto tokenResponse;
+            try {
+                tokenResponse = objectMapper.readerFor(CanonicalOAuthAccessTokenResponseDto.class)
                     .readValue(response.getContent());
+            } finally {
+                // returns connection to pool
+                response.disconnect();
+            }
 
             //TODO: this is obviously not great; if we're going to support refresh token rotation,
             // need to have some way to control the logic based on grant type
@@ -145,30 +208,48 @@ public class OAuthRefreshTokenSourceAuthStrategy implements SourceAuthStrategy {
                     }
                 });
 
-            this.currentToken = asAccessToken(tokenResponse);
-            return this.currentToken;
+            Instant issuedAt = Instant.now();
+            return new IssuedToken(asAccessToken(tokenResponse, issuedAt), issuedAt);
         }
 
 
-        AccessToken asAccessToken(CanonicalOAuthAccessTokenResponseDto tokenResponse) {
+        AccessToken asAccessToken(CanonicalOAuthAccessTokenResponseDto tokenResponse, Instant issuedAt) {
             //expires_in is RECOMMENDED, not REQUIRED in response; if omitted, we're supposed to
             // assume a default value for service OR retrieve via some other means
             Integer expiresIn = Optional.ofNullable(tokenResponse.getExpiresIn())
                 .orElse((int) DEFAULT_ACCESS_TOKEN_EXPIRATION.toSeconds());
             return new AccessToken(tokenResponse.getAccessToken(),
-                Date.from(Instant.now().plusSeconds(expiresIn)));
+                Date.from(issuedAt.plusSeconds(expiresIn)));
         }
 
+        /**
+         * @param accessToken to check
+         * @param issuedAt    when accessToken was obtained
+         * @param now         current time
+         * @return whether accessToken may still be re-used, rather than refreshed
+         */
         @VisibleForTesting
-        protected boolean isCurrentTokenValid(AccessToken accessToken, Instant now) {
+        protected boolean isCurrentTokenValid(AccessToken accessToken, Instant issuedAt, Instant now) {
             if (accessToken == null) {
                 return false;
             }
             Instant expiresAt = accessToken.getExpirationTime().toInstant();
-            Instant minimumValid = expiresAt.minus(TOKEN_REFRESH_THRESHOLD);
+            Instant minimumValid = expiresAt.minus(refreshThreshold(Duration.between(issuedAt, expiresAt)));
             return now.isBefore(minimumValid);
         }
 
+        /**
+         * @param lifetime of token
+         * @return how close to expiry token must be to be refreshed; at most half its lifetime, so
+         *         that tokens that are short-lived (relative to TOKEN_REFRESH_THRESHOLD) are still
+         *         re-used, rather than refreshed on every request
+         */
+        @VisibleForTesting
+        protected Duration refreshThreshold(Duration lifetime) {
+            Duration halfLifetime = lifetime.dividedBy(2);
+            return halfLifetime.compareTo(TOKEN_REFRESH_THRESHOLD) < 0 ? halfLifetime : TOKEN_REFRESH_THRESHOLD;
+        }
+
         @Override
         public Set<ConfigService.ConfigProperty> getRequiredConfigProperties() {
             Stream<ConfigService.ConfigProperty> propertyStream = Arrays.stream(ConfigProperty.values());
@@ -178,6 +259,64 @@ public class OAuthRefreshTokenSourceAuthStrategy implements SourceAuthStrategy {
             }
             return propertyStream.collect(Collectors.toSet());
         }
+
+        public static class Stats {
+
+            final LongAdder refreshes = new LongAdder();
+
+            final LongAdder failures = new LongAdder();
+
+            final LongAdder totalLatencyMillis = new LongAdder();
+
+            final AtomicLong maxLatencyMillis = new AtomicLong();
+
+            void recordRefresh(Duration latency) {
+                refreshes.increment();
+                totalLatencyMillis.add(latency.toMillis());
+                maxLatencyMillis.accumulateAndGet(latency.toMillis(), Math::max);
+            }
+
+            void recordFailure() {
+                failures.increment();
+            }
+
+            /**
+             * @return number of access tokens obtained from token endpoint
+             */
+            public long getRefreshes() {
+                return refreshes.sum();
+            }
+
+            /**
+             * @return number of attempts to obtain access token that failed
+             */
+            public long getFailures() {
+                return failures.sum();
+            }
+
+            /**
+             * @return mean time taken to obtain access token, over successful refreshes
+             */
+            public long getMeanLatencyMillis() {
+                long refreshes = getRefreshes();
+                return refreshes == 0 ? 0 : totalLatencyMillis.sum() / refreshes;
+            }
+
+            /**
+             * @return longest time taken to obtain access token
+             */
+            public long getMaxLatencyMillis() {
+                return maxLatencyMillis.get();
+            }
+
+            @Override
+            public String toString() {
+                return "TokenRefreshHandlerImpl.Stats(refreshes=" + getRefreshes()
+                    + ", failures=" + getFailures()
+                    + ", meanLatencyMillis=" + getMeanLatencyMillis()
+                    + ", maxLatencyMillis=" + getMaxLatencyMillis() + ")";
+            }
+        }
     }
 
 
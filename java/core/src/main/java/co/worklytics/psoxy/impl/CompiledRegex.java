@@ -0,0 +1,135 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.rules.Transform;
+import co.worklytics.psoxy.utils.LinearRegex;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * a regex of a transform, compiled for whichever engine the transform specifies
+ */
+interface CompiledRegex {
+
+    /**
+     * @return whether whole of input matches
+     */
+    boolean matches(String input);
+
+    /**
+     * @return input, with all matches removed
+     */
+    String removeAll(String input);
+
+    Matches matcher(String input);
+
+    /**
+     * successive matches within some input; as java.util.regex.Matcher
+     */
+    interface Matches {
+
+        boolean find();
+
+        int start();
+
+        int end();
+    }
+
+    /**
+     * @param engine with which to match; if null, java.util.regex
+     * @throws IllegalArgumentException if regex not supported by engine
+     */
+    static CompiledRegex compile(@NonNull String regex, Transform.RegexEngine engine) {
+        if (engine == Transform.RegexEngine.LINEAR) {
+            return new Linear(LinearRegex.compile(regex));
+        } else {
+            return new Java(Pattern.compile(regex));
+        }
+    }
+
+    @RequiredArgsConstructor
+    class Java implements CompiledRegex {
+
+        final Pattern pattern;
+
+        @Override
+        public boolean matches(String input) {
+            return pattern.matcher(input).matches();
+        }
+
+        @Override
+        public String removeAll(String input) {
+            return pattern.matcher(input).replaceAll("");
+        }
+
+        @Override
+        public Matches matcher(String input) {
+            Matcher matcher = pattern.matcher(input);
+            return new Matches() {
+                @Override
+                public boolean find() {
+                    return matcher.find();
+                }
+
+                @Override
+                public int start() {
+                    return matcher.start();
+                }
+
+                @Override
+                public int end() {
+                    return matcher.end();
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return pattern.pattern();
+        }
+    }
+
+    @RequiredArgsConstructor
+    class Linear implements CompiledRegex {
+
+        final LinearRegex regex;
+
+        @Override
+        public boolean matches(String input) {
+            return regex.matches(input);
+        }
+
+        @Override
+        public String removeAll(String input) {
+            return regex.matcher(input).replaceAll("");
+        }
+
+        @Override
+        public Matches matcher(String input) {
+            LinearRegex.Matcher matcher = regex.matcher(input);
+            return new Matches() {
+                @Override
+                public boolean find() {
+                    return matcher.find();
+                }
+
+                @Override
+                public int start() {
+                    return matcher.start();
+                }
+
+                @Override
+                public int end() {
+                    return matcher.end();
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return regex.getPattern();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.Sanitizer;
+import co.worklytics.psoxy.rules.Rules2;
+import co.worklytics.psoxy.rules.Transform;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.MapFunction;
+import com.jayway.jsonpath.Predicate;
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * a Rules2, compiled once into everything needed to route requests to endpoints and apply the
+ * endpoints' transforms to responses: patterns, JsonPaths, transform functions, plans.
+ *
+ * everything is looked up by index/identity, so nothing is recompiled (or deep-hashed) per request.
+ *
+ * immutable, so safe to share across threads without locking.
+ */
+@Log
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class CompiledRules {
+
+    final EndpointRouter router;
+
+    /**
+     * in same order as endpoints of rules (and therefore router)
+     */
+    final List<CompiledEndpoint> endpoints;
+
+    /**
+     * @param rules     to compile
+     * @param functions to apply non-redaction transforms of endpoint; called once per transform
+     * @param engine    with which transforms will be applied
+     */
+    static CompiledRules of(@NonNull Rules2 rules,
+                            @NonNull BiFunction<Rules2.Endpoint, Transform, MapFunction> functions,
+                            @NonNull Sanitizer.Engine engine,
+                            @NonNull ObjectMapper objectMapper,
+                            @NonNull Configuration configuration) {
+        List<CompiledEndpoint> endpoints = new ArrayList<>(rules.getEndpoints().size());
+        for (Rules2.Endpoint endpoint : rules.getEndpoints()) {
+            List<CompiledTransform> transforms = new ArrayList<>(endpoint.getTransforms().size());
+            Map<Transform, MapFunction> byIdentity = new IdentityHashMap<>();
+            for (Transform transform : endpoint.getTransforms()) {
+                CompiledTransform compiled = CompiledTransform.of(transform, t -> functions.apply(endpoint, t));
+                transforms.add(compiled);
+                byIdentity.put(transform, compiled.function);
+            }
+
+            // projections can follow a plan only if they're last, as they'd otherwise affect what
+            // subsequent transforms' paths match
+            int planned = transforms.size();
+            while (planned > 0 && transforms.get(planned - 1).isProjection()) {
+                planned--;
+            }
+            List<Projection> projections = new ArrayList<>();
+            for (CompiledTransform transform : transforms.subList(planned, transforms.size())) {
+                projections.add(transform.projection);
+            }
+
+            TransformPlan plan = null;
+            StreamingJsonTransformer streamingTransformer = null;
+            if (engine != Sanitizer.Engine.JSON_PATH) {
+                plan = TransformPlan.compile(planned(endpoint), byIdentity::get).orElse(null);
+                if (plan == null) {
+                    log.info("Endpoint " + endpoint.getPathRegex() + " has JsonPaths that can't be compiled to a single-pass plan; will use " + Sanitizer.Engine.JSON_PATH);
+                } else if (engine == Sanitizer.Engine.STREAMING && projections.isEmpty()) {
+                    streamingTransformer = StreamingJsonTransformer.of(plan, objectMapper, configuration);
+                }
+            }
+
+            // deep scans that would otherwise each be a full JsonPath scan of the document
+            Set<String> indexedNames = new HashSet<>();
+            if (plan == null) {
+                for (CompiledTransform transform : transforms) {
+                    for (String name : transform.deepScanNames) {
+                        if (name != null) {
+                            indexedNames.add(name);
+                        }
+                    }
+                }
+            }
+            endpoints.add(new CompiledEndpoint(endpoint, Collections.unmodifiableList(transforms), plan,
+                plan == null ? Collections.emptyList() : Collections.unmodifiableList(projections),
+                streamingTransformer, Collections.unmodifiableSet(indexedNames)));
+        }
+        return new CompiledRules(EndpointRouter.of(rules), Collections.unmodifiableList(endpoints));
+    }
+
+    /**
+     * @return endpoint, with just those transforms that are to be applied by a plan; ie, without
+     *         any trailing projections (keep transforms)
+     */
+    static Rules2.Endpoint planned(@NonNull Rules2.Endpoint endpoint) {
+        List<Transform> transforms = endpoint.getTransforms();
+        int planned = transforms.size();
+        while (planned > 0 && transforms.get(planned - 1) instanceof Transform.Keep) {
+            planned--;
+        }
+        return endpoint.toBuilder()
+            .clearTransforms()
+            .transforms(transforms.subList(0, planned))
+            .build();
+    }
+
+    /**
+     * @param relativeUrl path + query of URL
+     * @return first endpoint, in rule order, that matches relativeUrl; if any
+     */
+    Optional<CompiledEndpoint> route(@NonNull String relativeUrl) {
+        int match = router.match(relativeUrl);
+        return match < 0 ? Optional.empty() : Optional.of(endpoints.get(match));
+    }
+
+    @RequiredArgsConstructor
+    static class CompiledEndpoint {
+
+        final Rules2.Endpoint endpoint;
+
+        /**
+         * in order that they're to be applied
+         */
+        final List<CompiledTransform> transforms;
+
+        /**
+         * null if engine is JSON_PATH, or endpoint's paths can't be compiled to a plan
+         */
+        final TransformPlan plan;
+
+        /**
+         * to apply, in order, after plan; these are trailing keep transforms of endpoint, which plan
+         * omits. empty if no plan
+         */
+        final List<Projection> projections;
+
+        /**
+         * null unless engine is STREAMING and endpoint has a plan, without projections
+         */
+        final StreamingJsonTransformer streamingTransformer;
+
+        /**
+         * names of properties to index in each document, to resolve deep scans of transforms; empty
+         * if none (or transforms applied by plan, which resolves all deep scans in its traversal)
+         */
+        final Set<String> indexedNames;
+    }
+
+    @RequiredArgsConstructor
+    static class CompiledTransform {
+
+        final Transform transform;
+
+        final List<JsonPath> paths;
+
+        /**
+         * in same order as paths; name of property, if path is just a deep scan for it (eg,
+         * `$..email`); otherwise null
+         */
+        final List<String> deepScanNames;
+
+        /**
+         * null if transform is a redaction or projection
+         */
+        final MapFunction function;
+
+        /**
+         * null unless transform is a projection (keep)
+         */
+        final Projection projection;
+
+        /**
+         * whether to memoize results of function within a document
+         */
+        final boolean memoize;
+
+        static CompiledTransform of(Transform transform, Function<Transform, MapFunction> functions) {
+            List<JsonPath> paths = new ArrayList<>(transform.getJsonPaths().size());
+            List<String> deepScanNames = new ArrayList<>(transform.getJsonPaths().size());
+            boolean projection = transform instanceof Transform.Keep;
+            for (String jsonPath : transform.getJsonPaths()) {
+                paths.add(compilePath(jsonPath));
+                //projections resolve their own deep scans, in their traversal
+                deepScanNames.add(projection ? null : SimplePath.parse(jsonPath)
+                    .filter(path -> path.length() == 1 && path.step(0) instanceof SimplePath.DeepScan)
+                    .map(path -> ((SimplePath.DeepScan) path.step(0)).getName())
+                    .orElse(null));
+            }
+            return new CompiledTransform(transform,
+                Collections.unmodifiableList(paths),
+                Collections.unmodifiableList(deepScanNames),
+                transform instanceof Transform.Redact || projection ? null : functions.apply(transform),
+                projection ? Projection.compile((Transform.Keep) transform) : null,
+                TransformPlan.isPseudonymization(transform));
+        }
+
+        /**
+         * @return jsonPath, compiled with any of its filters that FilterPredicate supports as
+         *         native predicates (placeholders) rather than for JsonPath to interpret
+         */
+        static JsonPath compilePath(String jsonPath) {
+            List<Predicate> predicates = new ArrayList<>();
+            StringBuilder rewritten = new StringBuilder(jsonPath.length());
+            int from = 0;
+            for (SimplePath.Step step : SimplePath.parse(jsonPath).map(SimplePath::getSteps).orElse(Collections.emptyList())) {
+                if (step instanceof SimplePath.Filter && ((SimplePath.Filter) step).getCompiled() != null) {
+                    SimplePath.Filter filter = (SimplePath.Filter) step;
+                    int at = jsonPath.indexOf(filter.getExpression(), from);
+                    rewritten.append(jsonPath, from, at).append("[?]");
+                    from = at + filter.getExpression().length();
+                    predicates.add(filter.getCompiled());
+                }
+            }
+            if (predicates.isEmpty()) {
+                return JsonPath.compile(jsonPath);
+            }
+            rewritten.append(jsonPath, from, jsonPath.length());
+            return JsonPath.compile(rewritten.toString(), predicates.toArray(new Predicate[0]));
+        }
+
+        boolean isRedaction() {
+            return function == null && projection == null;
+        }
+
+        boolean isProjection() {
+            return projection != null;
+        }
+    }
+}
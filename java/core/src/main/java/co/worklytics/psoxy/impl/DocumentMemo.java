@@ -0,0 +1,51 @@
+package co.worklytics.psoxy.impl;
+
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.MapFunction;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * results of transform functions already applied to values within a single document
+ *
+ * documents tend to repeat the same identifiers many times (eg, the organizer of every event in a
+ * page of calendar events), so with this each distinct value is pseudonymized (and serialized to
+ * JSON) only once per document.
+ *
+ * NOT thread-safe; scope to a single document.
+ */
+class DocumentMemo {
+
+    /**
+     * function --> value --> result of function for value
+     */
+    final Map<MapFunction, Map<Object, Object>> results = new HashMap<>(4);
+
+    /**
+     * @return result of function for value, applying it only if not previously applied to an equal
+     *         value in this document
+     */
+    Object map(MapFunction function, Object value, Configuration configuration) {
+        //only memoize leaf values; objects/arrays are costly to hash, and mutable
+        if (!(value instanceof String || value instanceof Number)) {
+            return function.map(value, configuration);
+        }
+        Map<Object, Object> resultsForFunction = results.computeIfAbsent(function, f -> new HashMap<>());
+
+        //NOTE: can't use computeIfAbsent, as result may legitimately be null
+        if (resultsForFunction.containsKey(value)) {
+            return resultsForFunction.get(value);
+        }
+        Object result = function.map(value, configuration);
+        resultsForFunction.put(value, result);
+        return result;
+    }
+
+    /**
+     * @return function that applies 'function' via this memo
+     */
+    MapFunction memoize(MapFunction function) {
+        return (value, configuration) -> map(function, value, configuration);
+    }
+}
@@ -0,0 +1,169 @@
+package co.worklytics.psoxy.impl;
+
+import lombok.NonNull;
+import lombok.Value;
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria;
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressParser;
+
+import javax.mail.internet.InternetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * parses email addresses, and lists of them, exactly as EmailAddressParser does (with DEFAULT
+ * criteria), but in a single pass
+ *
+ * plain addresses (eg, `alice@worklytics.co`), which are the vast majority of those we see, are
+ * parsed without regex; anything else (personal names, quoted local parts, comments, etc) falls
+ * back to EmailAddressParser
+ */
+class EmailAddressCanonicalizer {
+
+    @Value
+    static class EmailAddress {
+
+        String localPart;
+
+        String domain;
+
+        /**
+         * NOTE: lower-case here is NOT stipulated by RFC
+         *
+         * @return canonical form of address, for pseudonymization
+         */
+        String getCanonical() {
+            return localPart.toLowerCase() + "@" + domain.toLowerCase();
+        }
+    }
+
+    /**
+     * @param value to parse
+     * @return address, if value is a valid mailbox (possibly with personal name, etc)
+     */
+    static Optional<EmailAddress> parse(@NonNull String value) {
+        int at = plainAddressSeparator(value, 0, value.length());
+        if (at >= 0) {
+            return Optional.of(new EmailAddress(value.substring(0, at), value.substring(at + 1)));
+        }
+        //q: do something with the personal name??
+        // NO --> it is not going to be reliable (except for From, will fill with whatever
+        // sender has for the person in their Contacts), and in enterprise use-cases we
+        // shouldn't need it for matching
+        String[] parts = EmailAddressParser.getAddressParts(value, EmailAddressCriteria.DEFAULT, true);
+        if (parts == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new EmailAddress(parts[1], parts[2]));
+    }
+
+    /**
+     * @param value of an address list header (eg, To, Cc)
+     * @return addresses in list, if value is a valid address list
+     */
+    static Optional<List<String>> parseAddressList(@NonNull String value) {
+        List<String> addresses = new ArrayList<>();
+        int start = 0;
+        while (start <= value.length()) {
+            int end = value.indexOf(',', start);
+            if (end < 0) {
+                end = value.length();
+            }
+            int trimmedStart = start;
+            int trimmedEnd = end;
+            while (trimmedStart < trimmedEnd && value.charAt(trimmedStart) == ' ') {
+                trimmedStart++;
+            }
+            while (trimmedEnd > trimmedStart && value.charAt(trimmedEnd - 1) == ' ') {
+                trimmedEnd--;
+            }
+            if (plainAddressSeparator(value, trimmedStart, trimmedEnd) < 0) {
+                return parseAddressListFully(value);
+            }
+            addresses.add(value.substring(trimmedStart, trimmedEnd));
+            start = end + 1;
+        }
+        return Optional.of(addresses);
+    }
+
+    static Optional<List<String>> parseAddressListFully(String value) {
+        //NOTE: this does NOT seem to work for lists containing empty values (eg ",,"), which
+        // per RFC should be allowed ....
+        if (EmailAddressParser.isValidAddressList(value, EmailAddressCriteria.DEFAULT)) {
+            InternetAddress[] addresses =
+                EmailAddressParser.extractHeaderAddresses(value, EmailAddressCriteria.DEFAULT, true);
+            return Optional.of(Arrays.stream(addresses)
+                .map(InternetAddress::getAddress)
+                .collect(Collectors.toList()));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * a 'plain' address is a dot-atom local part of common characters, an '@', and a domain name of
+     * at least two labels, the last of which is 2+ letters; such addresses parse trivially, and
+     * identically to EmailAddressParser
+     *
+     * @return index of '@' in value[start, end), if that range is a plain address; otherwise -1
+     */
+    static int plainAddressSeparator(String value, int start, int end) {
+        int at = -1;
+        boolean atomStart = true;
+        int labels = 0;
+        boolean alphabeticLabel = false;
+        int labelStart = -1;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (at < 0) {
+                if (c == '@' && !atomStart) {
+                    at = i;
+                    atomStart = true;
+                } else if (c == '.' && !atomStart) {
+                    atomStart = true;
+                } else if (isLocalPartChar(c)) {
+                    atomStart = false;
+                } else {
+                    return -1;
+                }
+            } else {
+                if (c == '.' && !atomStart && value.charAt(i - 1) != '-') {
+                    atomStart = true;
+                } else if (isDomainChar(c) && !(atomStart && c == '-')) {
+                    if (atomStart) {
+                        labels++;
+                        labelStart = i;
+                        alphabeticLabel = true;
+                    }
+                    alphabeticLabel &= isAlpha(c);
+                    atomStart = false;
+                } else {
+                    return -1;
+                }
+            }
+        }
+        // top-level domain must be alphabetic (eg, not IP address), and at least 2 chars
+        if (at < 0 || atomStart || labels < 2 || !alphabeticLabel || end - labelStart < 2) {
+            return -1;
+        }
+        return at;
+    }
+
+    static boolean isLocalPartChar(char c) {
+        return isAlphaNumeric(c) || c == '_' || c == '-' || c == '+' || c == '%';
+    }
+
+    static boolean isDomainChar(char c) {
+        return isAlphaNumeric(c) || c == '-';
+    }
+
+    static boolean isAlphaNumeric(char c) {
+        return isAlpha(c) || (c >= '0' && c <= '9');
+    }
+
+    static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
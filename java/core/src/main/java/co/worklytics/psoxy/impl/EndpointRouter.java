@@ -0,0 +1,195 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.rules.Rules2;
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
+
+/**
+ * resolves a relative URL to the first endpoint of a rule set that matches it, in a single lookup
+ *
+ * endpoints with a pathTemplate are routed through a trie of path segments; those with a pathRegex
+ * are merged into a single alternation, so only one Matcher is needed per lookup.
+ *
+ * immutable, so safe to share across threads without locking.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class EndpointRouter {
+
+    //matches numbered/named back-references, which would break if regex merged with others
+    static final Pattern BACK_REFERENCE = Pattern.compile("\\\\([1-9]|k<)");
+
+    final List<Rules2.Endpoint> endpoints;
+
+    final Segment templates;
+
+    /**
+     * all pathRegex values, merged into single pattern; null if none
+     */
+    final Pattern mergedRegex;
+
+    /**
+     * names of groups of mergedRegex, one per merged endpoint
+     */
+    final String[] mergedRegexGroups;
+
+    /**
+     * index of endpoint for each group of mergedRegex
+     */
+    final int[] mergedRegexEndpoints;
+
+    /**
+     * regexes that couldn't be merged, by endpoint index
+     */
+    final Map<Integer, Pattern> unmergedRegexes;
+
+    static EndpointRouter of(@NonNull Rules2 rules) {
+        List<Rules2.Endpoint> endpoints = Collections.unmodifiableList(new ArrayList<>(rules.getEndpoints()));
+        Segment templates = new Segment();
+        StringBuilder merged = new StringBuilder();
+        List<Integer> mergedEndpoints = new ArrayList<>();
+        Map<Integer, Pattern> unmerged = new HashMap<>();
+
+        for (int i = 0; i < endpoints.size(); i++) {
+            Rules2.Endpoint endpoint = endpoints.get(i);
+            if (endpoint.getPathTemplate() != null) {
+                templates.add(endpoint.getPathTemplate(), i);
+            } else if (BACK_REFERENCE.matcher(endpoint.getPathRegex()).find()) {
+                unmerged.put(i, Pattern.compile(endpoint.getPathRegex(), CASE_INSENSITIVE));
+            } else {
+                if (merged.length() > 0) {
+                    merged.append('|');
+                }
+                merged.append("(?<e").append(mergedEndpoints.size()).append('>')
+                    .append(endpoint.getPathRegex())
+                    .append(')');
+                mergedEndpoints.add(i);
+            }
+        }
+
+        return new EndpointRouter(endpoints,
+            templates,
+            merged.length() > 0 ? Pattern.compile(merged.toString(), CASE_INSENSITIVE) : null,
+            IntStream.range(0, mergedEndpoints.size()).mapToObj(group -> "e" + group).toArray(String[]::new),
+            mergedEndpoints.stream().mapToInt(Integer::intValue).toArray(),
+            unmerged);
+    }
+
+    /**
+     * @param relativeUrl path + query of URL
+     * @return first endpoint, in rule order, that matches relativeUrl; if any
+     */
+    Optional<Rules2.Endpoint> route(@NonNull String relativeUrl) {
+        int match = match(relativeUrl);
+        return match < 0 ? Optional.empty() : Optional.of(endpoints.get(match));
+    }
+
+    /**
+     * @param relativeUrl path + query of URL
+     * @return index of first endpoint, in rule order, that matches relativeUrl; -1 if none
+     */
+    int match(@NonNull String relativeUrl) {
+        int match = templates.match(relativeUrl);
+
+        if (mergedRegex != null) {
+            Matcher matcher = mergedRegex.matcher(relativeUrl);
+            if (matcher.matches()) {
+                //alternation tries groups in order, so first that participated is first in order
+                for (int group = 0; group < mergedRegexGroups.length; group++) {
+                    if (matcher.start(mergedRegexGroups[group]) >= 0) {
+                        match = Math.min(match, mergedRegexEndpoints[group]);
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<Integer, Pattern> regex : unmergedRegexes.entrySet()) {
+            if (regex.getKey() < match && regex.getValue().matcher(relativeUrl).matches()) {
+                match = regex.getKey();
+            }
+        }
+
+        return match < endpoints.size() ? match : -1;
+    }
+
+    /**
+     * node of trie of path template segments
+     *
+     * literal segments match case-insensitively (as pathRegex does); `{name}` matches any single
+     * non-empty segment. any query string is accepted.
+     */
+    static class Segment {
+
+        final Map<String, Segment> literals = new HashMap<>();
+
+        Segment parameter;
+
+        /**
+         * index of first endpoint whose template ends at this segment; MAX_VALUE if none
+         */
+        int endpoint = Integer.MAX_VALUE;
+
+        void add(String template, int endpointIndex) {
+            Segment node = this;
+            for (String segment : template.substring(1).split("/", -1)) {
+                if (segment.startsWith("{") && segment.endsWith("}")) {
+                    if (node.parameter == null) {
+                        node.parameter = new Segment();
+                    }
+                    node = node.parameter;
+                } else {
+                    node = node.literals.computeIfAbsent(segment.toLowerCase(Locale.ROOT), s -> new Segment());
+                }
+            }
+            node.endpoint = Math.min(node.endpoint, endpointIndex);
+        }
+
+        /**
+         * @return index of first endpoint matching relativeUrl; MAX_VALUE if none
+         */
+        int match(String relativeUrl) {
+            if (literals.isEmpty() && parameter == null) {
+                return Integer.MAX_VALUE;
+            }
+            int end = relativeUrl.indexOf('?');
+            if (end < 0) {
+                end = relativeUrl.length();
+            }
+            if (end == 0 || relativeUrl.charAt(0) != '/') {
+                return Integer.MAX_VALUE;
+            }
+            return match(relativeUrl, 1, end);
+        }
+
+        int match(String url, int start, int end) {
+            int next = url.indexOf('/', start);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            int result = Integer.MAX_VALUE;
+
+            Segment literal = literals.get(url.substring(start, next).toLowerCase(Locale.ROOT));
+            if (literal != null) {
+                result = next == end ? literal.endpoint : literal.match(url, next + 1, end);
+            }
+            if (parameter != null && next > start) {
+                result = Math.min(result, next == end ? parameter.endpoint : parameter.match(url, next + 1, end));
+            }
+            return result;
+        }
+    }
+}
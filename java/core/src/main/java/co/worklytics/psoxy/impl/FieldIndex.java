@@ -0,0 +1,130 @@
+package co.worklytics.psoxy.impl;
+
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * objects in a document that have a property with any of a set of names, by name; built in a single
+ * walk of the document, such that several deep scans (`$..name`) can be resolved directly from it,
+ * rather than JsonPath visiting every node of the document once per deep scan.
+ *
+ * objects are in document order, with any object before those nested within its properties (as
+ * JsonPath's deep scan would find them).
+ *
+ * NOTE: transforms only ever remove properties or replace their values with scalars (or opaque
+ * pseudonym values, which aren't traversed), so index
+ * remains valid as a document is transformed, provided callers check that a property is still
+ * present before using it. (objects may also be detached from document by such changes, in which
+ * case changing them has no effect on output)
+ *
+ * NOT thread-safe; scope to a single document.
+ */
+class FieldIndex {
+
+    final Map<String, List<Object>> objectsByName;
+
+    final int size;
+
+    private FieldIndex(Map<String, List<Object>> objectsByName, int size) {
+        this.objectsByName = objectsByName;
+        this.size = size;
+    }
+
+    /**
+     * @param document     parsed by jsonProvider
+     * @param names        of properties to index
+     * @param jsonProvider with which document was parsed
+     */
+    static FieldIndex build(@NonNull Object document, @NonNull Set<String> names, @NonNull JsonProvider jsonProvider) {
+        Map<String, List<Object>> objectsByName = new HashMap<>(names.size() * 2);
+        int size = walk(document, names, jsonProvider, objectsByName);
+        return new FieldIndex(objectsByName, size);
+    }
+
+    static int walk(Object node, Set<String> names, JsonProvider jsonProvider, Map<String, List<Object>> objectsByName) {
+        int size = 0;
+        if (jsonProvider.isMap(node)) {
+            Collection<String> keys = jsonProvider.getPropertyKeys(node);
+            // index this object before walking its properties, so precedes any nested objects
+            for (String key : keys) {
+                if (names.contains(key)) {
+                    objectsByName.computeIfAbsent(key, k -> new ArrayList<>()).add(node);
+                    size++;
+                }
+            }
+            for (String key : keys) {
+                size += walk(jsonProvider.getMapValue(node, key), names, jsonProvider, objectsByName);
+            }
+        } else if (jsonProvider.isArray(node)) {
+            for (Object element : jsonProvider.toIterable(node)) {
+                size += walk(element, names, jsonProvider, objectsByName);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return objects that had property 'name' when indexed, in document order
+     */
+    List<Object> objectsWithProperty(String name) {
+        return objectsByName.getOrDefault(name, Collections.emptyList());
+    }
+
+    /**
+     * usage of field indexes, across documents
+     */
+    static class Stats {
+
+        final LongAdder documentsIndexed = new LongAdder();
+
+        final LongAdder propertiesIndexed = new LongAdder();
+
+        final LongAdder deepScansResolved = new LongAdder();
+
+        void recordIndexed(FieldIndex index) {
+            documentsIndexed.increment();
+            propertiesIndexed.add(index.size);
+        }
+
+        void recordDeepScanResolved() {
+            deepScansResolved.increment();
+        }
+
+        /**
+         * @return number of documents for which an index was built
+         */
+        public long getDocumentsIndexed() {
+            return documentsIndexed.sum();
+        }
+
+        /**
+         * @return number of properties, across all documents, found by indexing
+         */
+        public long getPropertiesIndexed() {
+            return propertiesIndexed.sum();
+        }
+
+        /**
+         * @return number of deep scans resolved from an index, rather than by JsonPath
+         */
+        public long getDeepScansResolved() {
+            return deepScansResolved.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "FieldIndex.Stats(documentsIndexed=" + getDocumentsIndexed()
+                + ", propertiesIndexed=" + getPropertiesIndexed()
+                + ", deepScansResolved=" + getDeepScansResolved() + ")";
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package co.worklytics.psoxy.impl;
+
+import com.jayway.jsonpath.Predicate;
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * a JsonPath filter (`[?(...)]`), compiled to a java predicate, if it's within the subset of filter
+ * syntax that rules commonly use:
+ *   - `@.a.b`, `@['a']` - property exists (even if null)
+ *   - `@.a == 'x'`, `@.a != 'x'` - equality to a string
+ *   - `@.a in ['x','y']` - equality to any of several strings
+ *   - `@.a =~ /regex/i` - regex matches value (whole of it)
+ *   - `!`, `&&`, `||`, `(...)`
+ *
+ * evaluates to exactly what JsonPath's interpretation of the filter would (eg, a number is equal
+ * to a string that parses to same number; regex is tested against "" if property is missing, null,
+ * or not a primitive), but without walking an expression tree of value nodes per candidate.
+ *
+ * anything else is unsupported; callers should fallback to JsonPath.
+ *
+ * immutable, so safe to share across threads.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class FilterPredicate implements Predicate {
+
+    @Getter
+    @NonNull
+    final String expression;
+
+    @NonNull
+    final Expression root;
+
+    /**
+     * @param expression filter, as it appears in a JsonPath; eg `[?(@.name == 'To')]`
+     * @return predicate, if filter within supported subset of syntax; otherwise empty
+     */
+    static Optional<FilterPredicate> compile(@NonNull String expression) {
+        if (!expression.startsWith("[?(") || !expression.endsWith(")]")) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new FilterPredicate(expression,
+                new Parser(expression.substring(3, expression.length() - 2)).parse()));
+        } catch (UnsupportedOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param node         candidate
+     * @param jsonProvider with which node was parsed
+     * @return whether node satisfies filter
+     */
+    boolean test(Object node, JsonProvider jsonProvider) {
+        return root.test(node, jsonProvider);
+    }
+
+    @Override
+    public boolean apply(PredicateContext ctx) {
+        return test(ctx.item(), ctx.configuration().jsonProvider());
+    }
+
+    interface Expression {
+
+        boolean test(Object node, JsonProvider jsonProvider);
+    }
+
+    @RequiredArgsConstructor
+    static class Or implements Expression {
+        final List<Expression> operands;
+
+        @Override
+        public boolean test(Object node, JsonProvider jsonProvider) {
+            for (Expression operand : operands) {
+                if (operand.test(node, jsonProvider)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class And implements Expression {
+        final List<Expression> operands;
+
+        @Override
+        public boolean test(Object node, JsonProvider jsonProvider) {
+            for (Expression operand : operands) {
+                if (!operand.test(node, jsonProvider)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class Not implements Expression {
+        final Expression operand;
+
+        @Override
+        public boolean test(Object node, JsonProvider jsonProvider) {
+            return !operand.test(node, jsonProvider);
+        }
+    }
+
+    /**
+     * property path relative to candidate, eg `@.a.b`
+     */
+    @RequiredArgsConstructor
+    static class Property {
+        final List<String> names;
+
+        /**
+         * @return value of property; JsonProvider.UNDEFINED if it, or any object along path to it,
+         *         is missing
+         */
+        Object resolve(Object node, JsonProvider jsonProvider) {
+            Object value = node;
+            for (String name : names) {
+                if (!jsonProvider.isMap(value)) {
+                    return JsonProvider.UNDEFINED;
+                }
+                value = jsonProvider.getMapValue(value, name);
+                if (value == JsonProvider.UNDEFINED) {
+                    return value;
+                }
+            }
+            return value;
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class Exists implements Expression {
+        final Property property;
+
+        @Override
+        public boolean test(Object node, JsonProvider jsonProvider) {
+            return property.resolve(node, jsonProvider) != JsonProvider.UNDEFINED;
+        }
+    }
+
+    /**
+     * value equal to any of strings
+     */
+    static class In implements Expression {
+        final Property property;
+
+        final Set<String> strings;
+
+        /**
+         * those of strings that parse as numbers
+         */
+        final List<BigDecimal> numbers;
+
+        In(Property property, List<String> strings) {
+            this.property = property;
+            this.strings = Collections.unmodifiableSet(new HashSet<>(strings));
+            List<BigDecimal> numbers = new ArrayList<>();
+            for (String string : strings) {
+                asNumber(string).ifPresent(numbers::add);
+            }
+            this.numbers = Collections.unmodifiableList(numbers);
+        }
+
+        @Override
+        public boolean test(Object node, JsonProvider jsonProvider) {
+            Object value = property.resolve(node, jsonProvider);
+            if (value instanceof String) {
+                return strings.contains(value);
+            } else if (value instanceof Number && !numbers.isEmpty()) {
+                Optional<BigDecimal> number = asNumber(value.toString());
+                if (number.isPresent()) {
+                    for (BigDecimal candidate : numbers) {
+                        if (candidate.compareTo(number.get()) == 0) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class Matches implements Expression {
+        final Property property;
+
+        final Pattern pattern;
+
+        @Override
+        public boolean test(Object node, JsonProvider jsonProvider) {
+            Object value = property.resolve(node, jsonProvider);
+            String input = "";
+            if (value instanceof String) {
+                input = (String) value;
+            } else if (value instanceof Number) {
+                input = asNumber(value.toString()).map(BigDecimal::toString).orElse("");
+            } else if (value instanceof Boolean) {
+                input = value.toString();
+            }
+            return pattern.matcher(input).matches();
+        }
+    }
+
+    static Optional<BigDecimal> asNumber(String value) {
+        try {
+            return Optional.of(new BigDecimal(value));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Parser {
+
+        final String filter;
+
+        int i = 0;
+
+        Expression parse() {
+            Expression expression = or();
+            skipWhitespace();
+            if (i < filter.length()) {
+                throw unsupported();
+            }
+            return expression;
+        }
+
+        Expression or() {
+            List<Expression> operands = new ArrayList<>();
+            operands.add(and());
+            while (consume("||")) {
+                operands.add(and());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        Expression and() {
+            List<Expression> operands = new ArrayList<>();
+            operands.add(unary());
+            while (consume("&&")) {
+                operands.add(unary());
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        Expression unary() {
+            skipWhitespace();
+            if (consume("!")) {
+                skipWhitespace();
+                if (peek() == '@') {
+                    // JsonPath reads `!@.a` as 'not exists', but only if not compared to anything
+                    Expression operand = relation();
+                    if (!(operand instanceof Exists)) {
+                        throw unsupported();
+                    }
+                    return new Not(operand);
+                }
+                return new Not(unary());
+            } else if (consume("(")) {
+                Expression expression = or();
+                if (!consume(")")) {
+                    throw unsupported();
+                }
+                return expression;
+            } else {
+                return relation();
+            }
+        }
+
+        Expression relation() {
+            Property property = property();
+            skipWhitespace();
+            if (consume("==")) {
+                return new In(property, Collections.singletonList(string()));
+            } else if (consume("!=")) {
+                return new Not(new In(property, Collections.singletonList(string())));
+            } else if (consume("=~")) {
+                return new Matches(property, regex());
+            } else if (filter.startsWith("in", i) && !isNamePart(charAt(i + 2))) {
+                i += 2;
+                return new In(property, strings());
+            } else if (peek() == ')' || peek() == '&' || peek() == '|' || i == filter.length()) {
+                return new Exists(property);
+            } else {
+                throw unsupported();
+            }
+        }
+
+        Property property() {
+            skipWhitespace();
+            expect('@');
+            List<String> names = new ArrayList<>();
+            while (true) {
+                if (peek() == '.') {
+                    i++;
+                    int start = i;
+                    while (isNamePart(peek())) {
+                        i++;
+                    }
+                    if (i == start) {
+                        throw unsupported();
+                    }
+                    names.add(filter.substring(start, i));
+                } else if (peek() == '[') {
+                    i++;
+                    names.add(string());
+                    expect(']');
+                } else {
+                    break;
+                }
+            }
+            if (names.isEmpty()) {
+                // `@` itself
+                throw unsupported();
+            }
+            return new Property(names);
+        }
+
+        String string() {
+            skipWhitespace();
+            char quote = peek();
+            if (quote != '\'' && quote != '"') {
+                throw unsupported();
+            }
+            int end = filter.indexOf(quote, i + 1);
+            if (end < 0) {
+                throw unsupported();
+            }
+            String value = filter.substring(i + 1, end);
+            if (value.indexOf('\\') >= 0) {
+                //escaping; leave to JsonPath
+                throw unsupported();
+            }
+            i = end + 1;
+            return value;
+        }
+
+        List<String> strings() {
+            skipWhitespace();
+            expect('[');
+            List<String> strings = new ArrayList<>();
+            skipWhitespace();
+            if (!consume("]")) {
+                do {
+                    strings.add(string());
+                    skipWhitespace();
+                } while (consume(","));
+                expect(']');
+            }
+            return strings;
+        }
+
+        Pattern regex() {
+            skipWhitespace();
+            expect('/');
+            int start = i;
+            boolean escaped = false;
+            while (i < filter.length() && (escaped || filter.charAt(i) != '/')) {
+                escaped = !escaped && filter.charAt(i) == '\\';
+                i++;
+            }
+            if (i == filter.length()) {
+                throw unsupported();
+            }
+            String regex = filter.substring(start, i);
+            i++;
+            int flags = 0;
+            while (Character.isLetter(peek())) {
+                flags |= flag(filter.charAt(i++));
+            }
+            return Pattern.compile(regex, flags);
+        }
+
+        // as com.jayway.jsonpath.internal.filter.PatternFlag
+        int flag(char c) {
+            switch (c) {
+                case 'd':
+                    return Pattern.UNIX_LINES;
+                case 'i':
+                    return Pattern.CASE_INSENSITIVE;
+                case 'x':
+                    return Pattern.COMMENTS;
+                case 'm':
+                    return Pattern.MULTILINE;
+                case 's':
+                    return Pattern.DOTALL;
+                case 'u':
+                    return Pattern.UNICODE_CASE;
+                case 'U':
+                    return Pattern.UNICODE_CHARACTER_CLASS;
+                default:
+                    throw unsupported();
+            }
+        }
+
+        boolean isNamePart(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+        }
+
+        boolean consume(String token) {
+            skipWhitespace();
+            if (filter.startsWith(token, i)) {
+                i += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (peek() != c) {
+                throw unsupported();
+            }
+            i++;
+        }
+
+        char peek() {
+            return charAt(i);
+        }
+
+        char charAt(int index) {
+            return index < filter.length() ? filter.charAt(index) : 0;
+        }
+
+        void skipWhitespace() {
+            while (Character.isWhitespace(peek())) {
+                i++;
+            }
+        }
+
+        UnsupportedOperationException unsupported() {
+            return new UnsupportedOperationException("Unsupported filter at " + i + ": " + filter);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.PseudonymCache;
+import co.worklytics.psoxy.PseudonymStore;
+import co.worklytics.psoxy.PseudonymizedIdentity;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.NonNull;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * on-heap PseudonymStore, as a size-bounded Guava cache
+ */
+@Singleton
+public class GuavaPseudonymStore implements PseudonymStore {
+
+    /**
+     * max number of pseudonyms retained; at ~300 bytes each, ~15MB
+     */
+    static final long DEFAULT_MAXIMUM_SIZE = 50_000L;
+
+    final Cache<PseudonymCache.Key, PseudonymizedIdentity> cache;
+
+    @Inject
+    public GuavaPseudonymStore() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public GuavaPseudonymStore(long maximumSize) {
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .recordStats()
+            .build();
+    }
+
+    @Override
+    public PseudonymizedIdentity getIfPresent(@NonNull PseudonymCache.Key key) {
+        return cache.getIfPresent(key);
+    }
+
+    @Override
+    public void put(@NonNull PseudonymCache.Key key, @NonNull PseudonymizedIdentity pseudonym) {
+        cache.put(key, pseudonym);
+    }
+
+    @Override
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public long size() {
+        return cache.size();
+    }
+}
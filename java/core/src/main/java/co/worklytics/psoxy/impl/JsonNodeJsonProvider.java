@@ -0,0 +1,46 @@
+package co.worklytics.psoxy.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.POJONode;
+import com.jayway.jsonpath.spi.json.JacksonJsonNodeJsonProvider;
+
+/**
+ * JsonProvider for Jackson JsonNode trees, which yields leaf values of arrays as plain java values
+ * (String, Integer, etc) - as it does for leaf values of objects, and as JacksonJsonProvider does for
+ * both - such that transform functions see the same values whatever the document model
+ *
+ * (JacksonJsonNodeJsonProvider::getArrayIndex returns them as TextNode, IntNode, etc)
+ *
+ * values that aren't JSON primitives (eg, a PseudonymizedIdentity) are set as POJO nodes, so that
+ * they're opaque leaves - as they are in java.util.Map trees - rather than converted to trees
+ */
+public class JsonNodeJsonProvider extends JacksonJsonNodeJsonProvider {
+
+    public JsonNodeJsonProvider(ObjectMapper objectMapper) {
+        super(objectMapper);
+    }
+
+    @Override
+    public Object getArrayIndex(Object obj, int idx) {
+        return unwrap(super.getArrayIndex(obj, idx));
+    }
+
+    @Override
+    public void setProperty(Object obj, Object key, Object value) {
+        super.setProperty(obj, key, asNode(value));
+    }
+
+    @Override
+    public void setArrayIndex(Object array, int index, Object newValue) {
+        super.setArrayIndex(array, index, asNode(newValue));
+    }
+
+    Object asNode(Object value) {
+        if (value == null || value instanceof JsonNode || value instanceof String
+            || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+        return new POJONode(value);
+    }
+}
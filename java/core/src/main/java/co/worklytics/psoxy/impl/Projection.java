@@ -0,0 +1,132 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.rules.Transform;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+
+/**
+ * a Transform.Keep, compiled: its paths merged into a trie (as for a TransformPlan), such that a
+ * document can be pruned to just the values they match, plus the objects/arrays that contain those
+ * values, in a single traversal.
+ *
+ * document is pruned in place: kept values are never copied, and objects keep their identity (so
+ * eg a FieldIndex remains valid). arrays from which elements are pruned are replaced with new
+ * arrays of the remaining elements.
+ *
+ * immutable, so safe to share across threads.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class Projection {
+
+    final TransformPlan paths;
+
+    /**
+     * @throws IllegalArgumentException if any of transform's paths outside SimplePath subset
+     */
+    static Projection compile(@NonNull Transform.Keep transform) {
+        return new Projection(TransformPlan.ofPaths(transform.getJsonPaths())
+            .orElseThrow(() -> new IllegalArgumentException("Paths of keep transform must be limited to properties, deep scans, wildcards and filters: " + transform.getJsonPaths())));
+    }
+
+    /**
+     * prune document to values matched by paths, plus their ancestors
+     *
+     * @param document      parsed by configuration's JsonProvider
+     * @param configuration with which document was parsed
+     * @return pruned document; same object as document, unless it's an array from which elements
+     *         were pruned. (documents that are neither object nor array returned as is, as there's
+     *         nothing to project)
+     */
+    Object apply(@NonNull Object document, @NonNull Configuration configuration) {
+        JsonProvider jsonProvider = configuration.jsonProvider();
+        TransformPlan.State state = paths.initial();
+        if (jsonProvider.isMap(document) && paths.hasFilters(state)) {
+            state = paths.applyFilters(state, document, configuration);
+        }
+        if (!paths.matches(state).isEmpty()) {
+            //whole document matched (eg, `$[?(...)]`)
+            return document;
+        }
+        Object pruned = prune(document, state, configuration);
+        if (pruned == NOTHING) {
+            //objects already emptied in place
+            return jsonProvider.isArray(document) ? jsonProvider.createArray() : document;
+        }
+        return pruned;
+    }
+
+    /**
+     * @return value, pruned (in place, if an object); or NOTHING, if nothing within it is kept
+     */
+    Object prune(Object value, TransformPlan.State state, Configuration configuration) {
+        JsonProvider jsonProvider = configuration.jsonProvider();
+        if (jsonProvider.isMap(value)) {
+            boolean retained = false;
+            //copy, as modified during traversal
+            for (String key : new ArrayList<>(jsonProvider.getPropertyKeys(value))) {
+                Object child = jsonProvider.getMapValue(value, key);
+                Object kept = pruneChild(child, paths.advanceToProperty(state, key), configuration);
+                if (kept == NOTHING) {
+                    jsonProvider.removeProperty(value, key);
+                } else {
+                    if (kept != child) {
+                        jsonProvider.setProperty(value, key, kept);
+                    }
+                    retained = true;
+                }
+            }
+            return retained ? value : NOTHING;
+        } else if (jsonProvider.isArray(value)) {
+            int length = jsonProvider.length(value);
+            Object[] kept = new Object[length];
+            int count = 0;
+            boolean replaced = false;
+            for (int i = 0; i < length; i++) {
+                Object element = jsonProvider.getArrayIndex(value, i);
+                kept[i] = pruneChild(element,
+                    paths.advanceToElement(state, element, configuration), configuration);
+                if (kept[i] != NOTHING) {
+                    count++;
+                    replaced |= kept[i] != element;
+                }
+            }
+            if (count == 0) {
+                return NOTHING;
+            } else if (count == length && !replaced) {
+                return value;
+            }
+            Object result = jsonProvider.createArray();
+            int index = 0;
+            for (int i = 0; i < length; i++) {
+                if (kept[i] != NOTHING) {
+                    jsonProvider.setArrayIndex(result, index++, kept[i]);
+                }
+            }
+            return result;
+        } else {
+            //leaf not matched by any path
+            return NOTHING;
+        }
+    }
+
+    Object pruneChild(Object child, TransformPlan.State childState, Configuration configuration) {
+        if (childState.isEmpty()) {
+            return NOTHING;
+        }
+        if (configuration.jsonProvider().isMap(child) && paths.hasFilters(childState)) {
+            childState = paths.applyFilters(childState, child, configuration);
+        }
+        if (!paths.matches(childState).isEmpty()) {
+            //matched; kept whole
+            return child;
+        }
+        return prune(child, childState, configuration);
+    }
+
+    static final Object NOTHING = new Object();
+}
@@ -3,39 +3,42 @@ package co.worklytics.psoxy.impl;
 import co.worklytics.psoxy.*;
 import co.worklytics.psoxy.rules.RuleSet;
 import co.worklytics.psoxy.rules.Rules2;
+import co.worklytics.psoxy.rules.RulesUtils;
 import co.worklytics.psoxy.rules.Transform;
 import co.worklytics.psoxy.utils.URLUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.MapFunction;
+import com.jayway.jsonpath.spi.json.JsonProvider;
 import dagger.assisted.Assisted;
 import dagger.assisted.AssistedInject;
 import lombok.Getter;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
 import lombok.extern.java.Log;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.Pair;
-import org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria;
-import org.hazlewood.connor.bottema.emailaddress.EmailAddressParser;
-import org.hazlewood.connor.bottema.emailaddress.EmailAddressValidator;
 
-import javax.inject.Inject;
-import javax.mail.internet.InternetAddress;
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PushbackInputStream;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import static java.util.regex.Pattern.CASE_INSENSITIVE;
 
 @Log
-@RequiredArgsConstructor //for tests to compile for now
 public class SanitizerImpl implements Sanitizer {
 
     @Getter
@@ -45,61 +48,104 @@ public class SanitizerImpl implements Sanitizer {
     //  - https://github.com/json-path/JsonPath/issues/384
     //  - https://github.com/json-path/JsonPath/issues/187 (earlier issue fixing stuff that wasn't thread-safe)
 
-    List<Pair<Pattern, List<JsonPath>>> compiledPseudonymizations;
-    List<Pair<Pattern, List<JsonPath>>> compiledRedactions;
-    List<Pair<Pattern, List<JsonPath>>> compiledEmailHeaderPseudonymizations;
-    List<Pair<Pattern, List<JsonPath>>> compiledPseudonymizationsWithOriginals;
-    List<Pattern> compiledAllowedEndpoints;
+    /**
+     * rules, fully compiled when sanitizer constructed; null if not Rules2 (eg, CsvRules)
+     */
+    final CompiledRules compiledRules;
 
-    private final Object $writeLock = new Object[0];
-    List<Pair<Pattern, Rules2.Endpoint>> compiledEndpointRules;
-    Map<Transform, List<JsonPath>> compiledTransforms = new ConcurrentHashMap<>();
+    /**
+     * fingerprint of rules, computed when sanitizer constructed
+     */
+    @Getter
+    final String rulesSha;
 
-    @AssistedInject
-    public SanitizerImpl(HashUtils hashUtils, @Assisted Options options) {
-        this.hashUtils = hashUtils;
-        this.options = options;
-    }
+    /**
+     * usage of field indexes to resolve deep scans; for monitoring
+     */
+    @Getter
+    final FieldIndex.Stats fieldIndexStats = new FieldIndex.Stats();
 
     @Getter(onMethod_ = {@VisibleForTesting})
-    @Inject Configuration jsonConfiguration;
+    final Configuration jsonConfiguration;
 
+    final Configuration jsonNodeConfiguration;
 
-    @Inject
-    HashUtils hashUtils;
+    final HashUtils hashUtils;
 
-    List<JsonPath> applicablePaths(@NonNull List<Pair<Pattern, List<JsonPath>>> rules,
-                                   @NonNull String relativeUrl) {
-        return rules.stream()
-            .filter(compiled -> compiled.getKey().asMatchPredicate().test(relativeUrl))
-            .map(Pair::getValue)
-            .flatMap(List::stream)
-            .collect(Collectors.toList());
-    }
+    final ObjectMapper objectMapper;
 
-    List<Pattern> getCompiledAllowedEndpoints() {
-        if (compiledAllowedEndpoints == null) {
-            synchronized ($writeLock) {
-                if (options.getRules() instanceof Rules2) {
-                    compiledAllowedEndpoints = ((Rules2) options.getRules()).getEndpoints().stream()
-                        .map(Rules2.Endpoint::getPathRegex)
-                        .map(regex -> Pattern.compile(regex, CASE_INSENSITIVE))
-                        .collect(Collectors.toList());
-                } else {
-                    throw new IllegalStateException("Rules must be of type Rules2");
-                }
-            }
+    final PseudonymCache pseudonymCache;
+
+    final TransformPlan.Parallelism parallelism;
+
+    @AssistedInject
+    public SanitizerImpl(HashUtils hashUtils,
+                         Configuration jsonConfiguration,
+                         @Named("ForJsonNode") Configuration jsonNodeConfiguration,
+                         ObjectMapper objectMapper,
+                         PseudonymCache pseudonymCache,
+                         @Named("ForSanitizer") ForkJoinPool parallelPool,
+                         RulesUtils rulesUtils,
+                         @Assisted Options options) {
+        this.hashUtils = hashUtils;
+        this.jsonConfiguration = jsonConfiguration;
+        this.jsonNodeConfiguration = jsonNodeConfiguration;
+        this.objectMapper = objectMapper;
+        this.pseudonymCache = pseudonymCache;
+        this.options = options;
+        this.parallelism = new TransformPlan.Parallelism(options.getParallelThreshold(), parallelPool);
+
+        // compile everything up front, so request threads only ever read final fields
+        this.rulesSha = rulesUtils.sha(options.getRules());
+        if (options.getRules() instanceof Rules2) {
+            this.compiledRules = CompiledRules.of((Rules2) options.getRules(),
+                (endpoint, transform) -> getMapFunction(transform, getPseudonymEncoding(endpoint)),
+                options.getEngine(), objectMapper, jsonConfiguration);
+        } else {
+            this.compiledRules = null;
         }
-        return compiledAllowedEndpoints;
+        this.saltFingerprint = hashUtils.hash(Objects.toString(options.getPseudonymizationSalt()),
+            "pseudonym-cache", options.getHashScheme().name());
+        this.keyedHash = options.getHashScheme() == HashScheme.HMAC_SHA256
+            ? hashUtils.keyed(options.getPseudonymizationSalt()) : null;
     }
 
+    /**
+     * distinguishes cached pseudonyms by salt/scheme, so cache may be shared across sanitizers
+     */
+    final String saltFingerprint;
+
+    /**
+     * iff hashScheme is HMAC_SHA256; thread-safe, and published via final field
+     */
+    final HashUtils.KeyedHash keyedHash;
+
+    /**
+     * prefixes of compact pseudonyms, by scope, then domain; so those strings are shared rather
+     * than rebuilt for every pseudonym
+     */
+    final Map<String, Map<String, String>> compactPrefixes = new ConcurrentHashMap<>();
+
+    /**
+     * beyond this many domains for a scope, prefixes aren't retained (bound memory, if content has
+     * pseudonyms in a huge variety of domains)
+     */
+    static final int MAX_COMPACT_PREFIXES_PER_SCOPE = 10_000;
+
+    CompiledRules getCompiledRules() {
+        if (compiledRules == null) {
+            throw new IllegalStateException("Rules must be of type Rules2");
+        }
+        return compiledRules;
+    }
 
+    Optional<CompiledRules.CompiledEndpoint> getEndpoint(@NonNull URL url) {
+        return getCompiledRules().route(URLUtils.relativeURL(url));
+    }
 
     @Override
     public boolean isAllowed(@NonNull URL url) {
-        String relativeUrl = URLUtils.relativeURL(url);
-        return isAllowAll(options.getRules())
-            || getCompiledAllowedEndpoints().stream().anyMatch(p -> p.matcher(relativeUrl).matches());
+        return isAllowAll(options.getRules()) || getEndpoint(url).isPresent();
     }
 
     boolean isAllowAll(RuleSet rules) {
@@ -110,94 +156,231 @@ public class SanitizerImpl implements Sanitizer {
 
     @Override
     public String sanitize(@NonNull URL url, @NonNull String jsonResponse) {
-        //extra check ...
-        if (!isAllowed(url)) {
-            throw new IllegalStateException(String.format("Sanitizer called to sanitize response that should not have been retrieved: %s", url.toString()));
-        }
+        Optional<CompiledRules.CompiledEndpoint> endpoint = getAllowedEndpoint(url);
+
         if (StringUtils.isEmpty(jsonResponse)) {
             // Nothing to do
             return jsonResponse;
         }
 
-        return transform(url, jsonResponse);
+        return endpoint.map(match -> transform(match, jsonResponse)).orElse(jsonResponse);
     }
 
-    synchronized List<Pair<Pattern, Rules2.Endpoint>> getEndpointRules() {
-        if (compiledEndpointRules == null) {
-            synchronized ($writeLock) {
-                if (compiledEndpointRules == null) {
-                    compiledEndpointRules = ((Rules2) options.getRules()).getEndpoints().stream()
-                        .map(endpoint -> Pair.of(Pattern.compile(endpoint.getPathRegex(), CASE_INSENSITIVE), endpoint))
-                        .collect(Collectors.toList());
-                }
+    @Override
+    public void sanitize(@NonNull URL url, @NonNull InputStream jsonResponse, @NonNull Charset charset,
+                         @NonNull OutputStream sanitized) throws IOException {
+        Optional<CompiledRules.CompiledEndpoint> endpoint = getAllowedEndpoint(url);
+
+        if (endpoint.isEmpty() || endpoint.get().transforms.isEmpty()) {
+            //nothing to do, other than re-encode as UTF-8
+            Writer writer = new OutputStreamWriter(sanitized, StandardCharsets.UTF_8);
+            new InputStreamReader(jsonResponse, charset).transferTo(writer);
+            writer.flush();
+        } else if (endpoint.get().streamingTransformer != null) {
+            endpoint.get().streamingTransformer.transform(new InputStreamReader(jsonResponse, charset), sanitized);
+        } else {
+            //must be parsed whole; but at least not held as a String too
+            PushbackInputStream content = new PushbackInputStream(jsonResponse);
+            int first = content.read();
+            if (first < 0) {
+                // Nothing to do
+                return;
             }
+            content.unread(first);
+            Configuration configuration = getDocumentConfiguration();
+            Object document = transform(endpoint.get(), configuration.jsonProvider().parse(content, charset.name()), configuration);
+            Writer writer = new OutputStreamWriter(sanitized, StandardCharsets.UTF_8);
+            writer.write(configuration.jsonProvider().toJson(document));
+            writer.flush();
         }
-        return compiledEndpointRules;
     }
 
+    /**
+     * @return endpoint of rules that url matches, if any
+     * @throws IllegalStateException if url isn't allowed by rules at all
+     */
+    Optional<CompiledRules.CompiledEndpoint> getAllowedEndpoint(@NonNull URL url) {
+        Optional<CompiledRules.CompiledEndpoint> endpoint = getEndpoint(url);
 
-    String transform(@NonNull URL url, @NonNull String jsonResponse) {
-        String relativeUrl = URLUtils.relativeURL(url);
-        Optional<Pair<Pattern, Rules2.Endpoint>> matchingEndpoint = getEndpointRules().stream()
-            .filter(compiledEndpoint -> compiledEndpoint.getKey().asMatchPredicate().test(relativeUrl))
-            .findFirst();
+        //extra check ...
+        if (!isAllowAll(options.getRules()) && endpoint.isEmpty()) {
+            throw new IllegalStateException(String.format("Sanitizer called to sanitize response that should not have been retrieved: %s", url.toString()));
+        }
+        return endpoint;
+    }
 
-        return matchingEndpoint.map(match -> {
+    @Override
+    public boolean isPassthrough(@NonNull URL url) {
+        return getEndpoint(url)
+            .map(endpoint -> endpoint.transforms.isEmpty())
+            .orElse(isAllowAll(options.getRules()));
+    }
 
-            Object document = jsonConfiguration.jsonProvider().parse(jsonResponse);
+    @Override
+    public boolean isStreaming(@NonNull URL url) {
+        return getEndpoint(url)
+            .map(endpoint -> endpoint.transforms.isEmpty() || endpoint.streamingTransformer != null)
+            .orElse(isAllowAll(options.getRules()));
+    }
 
-            for (Transform transform : match.getValue().getTransforms()) {
-                applyTransform(transform, document);
-            }
+    @Override
+    public PseudonymEncoding getPseudonymEncoding(@NonNull URL url) {
+        return getEndpoint(url)
+            .map(endpoint -> getPseudonymEncoding(endpoint.endpoint))
+            .orElseGet(this::getPseudonymEncoding);
+    }
 
-            return jsonConfiguration.jsonProvider().toJson(document);
-        }).orElse(jsonResponse);
+    PseudonymEncoding getPseudonymEncoding(Rules2.Endpoint endpoint) {
+        return Optional.ofNullable(endpoint.getPseudonymEncoding())
+            .orElseGet(this::getPseudonymEncoding);
     }
 
+    /**
+     * @return encoding of pseudonyms, per rules or else options
+     */
+    PseudonymEncoding getPseudonymEncoding() {
+        return Optional.ofNullable(options.getRules().getPseudonymEncoding())
+            .orElse(options.getPseudonymEncoding());
+    }
 
-    Object applyTransform(Transform transform, Object document ) {
-        List<JsonPath> paths = compiledTransforms.computeIfAbsent(transform,
-            t -> t.getJsonPaths().stream()
-                .map(JsonPath::compile)
-                .collect(Collectors.toList()));
+    String transform(@NonNull URL url, @NonNull String jsonResponse) {
+        return getEndpoint(url)
+            .map(endpoint -> transform(endpoint, jsonResponse))
+            .orElse(jsonResponse);
+    }
 
-        if (transform instanceof Transform.Redact) {
-            for (JsonPath path : paths) {
-                try {
-                    path.delete(document, jsonConfiguration);
-                } catch (com.jayway.jsonpath.PathNotFoundException e) {
-                    //expected if rule doesn't apply
-                }
+    String transform(@NonNull CompiledRules.CompiledEndpoint endpoint, @NonNull String jsonResponse) {
+        if (endpoint.transforms.isEmpty()) {
+            //nothing to do; so don't even parse
+            return jsonResponse;
+        }
+        if (endpoint.streamingTransformer != null) {
+            return endpoint.streamingTransformer.transform(jsonResponse);
+        }
+
+        Configuration configuration = getDocumentConfiguration();
+        Object document = transform(endpoint, configuration.jsonProvider().parse(jsonResponse), configuration);
+        return configuration.jsonProvider().toJson(document);
+    }
+
+    /**
+     * @param document parsed by configuration's JsonProvider
+     * @return document, transformed per endpoint's transforms; same object as document, unless a
+     *         projection replaced it
+     */
+    Object transform(@NonNull CompiledRules.CompiledEndpoint endpoint, @NonNull Object document,
+                     @NonNull Configuration configuration) {
+        if (endpoint.plan != null) {
+            endpoint.plan.apply(document, configuration, parallelism);
+            for (Projection projection : endpoint.projections) {
+                document = projection.apply(document, configuration);
             }
         } else {
-            MapFunction f;
-            if (transform instanceof Transform.Pseudonymize) {
-                //curry the defaultScopeId from the transform into the pseudonymization method
-                f =
-                    ((Transform.Pseudonymize) transform).getIncludeOriginal() ? this::pseudonymizeWithOriginalToJson : this::pseudonymizeToJson;
-            } else if (transform instanceof Transform.PseudonymizeEmailHeader) {
-                f = this::pseudonymizeEmailHeaderToJson;
-            } else if (transform instanceof Transform.RedactRegexMatches) {
-                f = getRedactRegexMatches((Transform.RedactRegexMatches) transform);
-            } else if (transform instanceof Transform.FilterTokenByRegex) {
-                f = getFilterTokenByRegex((Transform.FilterTokenByRegex) transform);
-            } else {
-                throw new IllegalArgumentException("Unknown transform type: " + transform.getClass().getName());
+            DocumentMemo memo = new DocumentMemo();
+            FieldIndex index = null;
+            if (!endpoint.indexedNames.isEmpty()) {
+                index = FieldIndex.build(document, endpoint.indexedNames, configuration.jsonProvider());
+                fieldIndexStats.recordIndexed(index);
+            }
+            for (CompiledRules.CompiledTransform transform : endpoint.transforms) {
+                document = applyTransform(transform, document, memo, index);
+            }
+        }
+        return document;
+    }
+
+    /**
+     * @return configuration with which to parse/transform documents, per options' document model
+     */
+    Configuration getDocumentConfiguration() {
+        return options.getDocumentModel() == DocumentModel.JSON_NODE ? jsonNodeConfiguration : jsonConfiguration;
+    }
+
+    /**
+     * @param index of document, if any, with which to resolve deep scans of transform
+     * @return document, transformed; same object as document, unless a projection replaced it
+     */
+    Object applyTransform(CompiledRules.CompiledTransform transform, Object document, DocumentMemo memo, FieldIndex index) {
+        if (transform.isProjection()) {
+            return transform.projection.apply(document, getDocumentConfiguration());
+        }
+        MapFunction f = null;
+        if (!transform.isRedaction()) {
+            f = transform.memoize ? memo.memoize(transform.function) : transform.function;
+        }
+        for (int i = 0; i < transform.paths.size(); i++) {
+            String deepScanName = transform.deepScanNames.get(i);
+            if (index != null && deepScanName != null) {
+                applyTransform(index.objectsWithProperty(deepScanName), deepScanName, f);
+                fieldIndexStats.recordDeepScanResolved();
+                continue;
             }
-            for (JsonPath path : paths) {
-                try {
-                    path.map(document, f, jsonConfiguration);
-                } catch (com.jayway.jsonpath.PathNotFoundException e) {
-                    //expected if rule doesn't apply
+            try {
+                if (f == null) {
+                    transform.paths.get(i).delete(document, getDocumentConfiguration());
+                } else {
+                    transform.paths.get(i).map(document, f, getDocumentConfiguration());
                 }
+            } catch (com.jayway.jsonpath.PathNotFoundException e) {
+                //expected if rule doesn't apply
             }
         }
         return document;
     }
 
+    /**
+     * apply transform to property 'name' of each of objects, as JsonPath would for `$..name`
+     *
+     * @param f to map values with; null for redaction
+     */
+    void applyTransform(List<Object> objects, String name, MapFunction f) {
+        Configuration configuration = getDocumentConfiguration();
+        JsonProvider jsonProvider = configuration.jsonProvider();
+        for (Object object : objects) {
+            Object value = jsonProvider.getMapValue(object, name);
+            if (value == JsonProvider.UNDEFINED) {
+                //removed by an earlier transform
+                continue;
+            }
+            if (f == null) {
+                jsonProvider.removeProperty(object, name);
+            } else {
+                jsonProvider.setProperty(object, name, f.map(value, configuration));
+            }
+        }
+    }
+
+
+    MapFunction getMapFunction(Transform transform) {
+        return getMapFunction(transform, PseudonymEncoding.JSON);
+    }
+
+    MapFunction getMapFunction(Transform transform, PseudonymEncoding encoding) {
+        boolean compact = encoding == PseudonymEncoding.COMPACT;
+        boolean isNative = encoding == PseudonymEncoding.NATIVE;
+        if (transform instanceof Transform.Pseudonymize) {
+            //curry the defaultScopeId from the transform into the pseudonymization method
+            if (((Transform.Pseudonymize) transform).getIncludeOriginal()) {
+                return isNative ? this::pseudonymizeWithOriginalToNative : this::pseudonymizeWithOriginalToJson;
+            }
+            return compact ? this::pseudonymizeToCompact : isNative ? this::pseudonymizeToNative : this::pseudonymizeToJson;
+        } else if (transform instanceof Transform.PseudonymizeEmailHeader) {
+            return compact ? this::pseudonymizeEmailHeaderToCompact : isNative ? this::pseudonymizeEmailHeaderToNative : this::pseudonymizeEmailHeaderToJson;
+        } else if (transform instanceof Transform.RedactRegexMatches) {
+            return getRedactRegexMatches((Transform.RedactRegexMatches) transform);
+        } else if (transform instanceof Transform.FilterTokenByRegex) {
+            return getFilterTokenByRegex((Transform.FilterTokenByRegex) transform);
+        } else if (transform instanceof Transform.ExtractUrls) {
+            return getExtractUrls((Transform.ExtractUrls) transform);
+        } else {
+            throw new IllegalArgumentException("Unknown transform type: " + transform.getClass().getName());
+        }
+    }
 
     MapFunction getRedactRegexMatches(Transform.RedactRegexMatches transform) {
-       List<Pattern> patterns = transform.getRedactions().stream().map(Pattern::compile).collect(Collectors.toList());
+       List<CompiledRegex> patterns = transform.getRedactions().stream()
+           .map(regex -> CompiledRegex.compile(regex, transform.getEngine()))
+           .collect(Collectors.toList());
        return (s, jsonConfiguration) -> {
            if (!(s instanceof String)) {
                if (s != null) {
@@ -208,8 +391,8 @@ public class SanitizerImpl implements Sanitizer {
                return s;
            } else {
                String result = (String) s;
-               for (Pattern p : patterns) {
-                   result = p.matcher(result).replaceAll("");
+               for (CompiledRegex p : patterns) {
+                   result = p.removeAll(result);
                }
                return result;
            }
@@ -217,10 +400,12 @@ public class SanitizerImpl implements Sanitizer {
     }
 
     MapFunction getFilterTokenByRegex(Transform.FilterTokenByRegex transform) {
-        List<java.util.function.Predicate<String>> patterns =
-            transform.getFilters().stream().map(Pattern::compile)
-            .map(Pattern::asMatchPredicate)
+        List<CompiledRegex> patterns = transform.getFilters().stream()
+            .map(regex -> CompiledRegex.compile(regex, transform.getEngine()))
             .collect(Collectors.toList());
+        CompiledRegex delimiter = Optional.ofNullable(transform.getDelimiter())
+            .map(regex -> CompiledRegex.compile(regex, transform.getEngine()))
+            .orElse(null);
 
         return (s, jsonConfiguration) -> {
             if (!(s instanceof String)) {
@@ -231,18 +416,91 @@ public class SanitizerImpl implements Sanitizer {
             } else if (StringUtils.isBlank((String) s)) {
                 return s;
             } else {
-                String result = (String) s;
-                Stream<String> stream = Optional.ofNullable(transform.getDelimiter())
-                    .map(delimiter -> Arrays.stream(result.split(delimiter)))
-                    .orElse(Stream.of(result));
-
-                return StringUtils.trimToNull(stream
-                    .filter(token -> patterns.stream().anyMatch(p -> p.test(token)))
-                    .collect(Collectors.joining(" ")));
+                return StringUtils.trimToNull(filterTokens((String) s, delimiter, patterns));
             }
         };
     }
 
+    MapFunction getExtractUrls(Transform.ExtractUrls transform) {
+        UrlExtractor extractor = UrlExtractor.compile(transform);
+
+        return (s, jsonConfiguration) -> {
+            if (!(s instanceof String)) {
+                if (s != null) {
+                    log.warning("value matched by " + transform + " not of type String");
+                }
+                return null;
+            } else if (StringUtils.isBlank((String) s)) {
+                return s;
+            } else {
+                return StringUtils.trimToNull(extractor.extract((String) s));
+            }
+        };
+    }
+
+    /**
+     * @param value     to tokenize, as String::split would (eg, dropping trailing empty tokens)
+     * @param delimiter between tokens; if null, value is a single token
+     * @param patterns  at least one of which token must match to be kept
+     * @return tokens of value that match any of patterns, joined by ' '
+     */
+    String filterTokens(String value, CompiledRegex delimiter, List<CompiledRegex> patterns) {
+        if (delimiter == null) {
+            return matchesAny(value, patterns) ? value : "";
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        CompiledRegex.Matches matcher = delimiter.matcher(value);
+        int start = 0;
+        int pendingEmptyTokens = 0;
+        while (matcher.find()) {
+            if (matcher.end() == 0) {
+                //zero-width match at beginning never yields a leading empty token
+                continue;
+            }
+            if (matcher.start() == start) {
+                //held back, as empty tokens are dropped by split if trailing
+                pendingEmptyTokens++;
+            } else {
+                pendingEmptyTokens = appendEmptyTokens(result, pendingEmptyTokens, patterns);
+                appendIfMatches(result, value.substring(start, matcher.start()), patterns);
+            }
+            start = matcher.end();
+        }
+        if (start < value.length()) {
+            appendEmptyTokens(result, pendingEmptyTokens, patterns);
+            appendIfMatches(result, value.substring(start), patterns);
+        } else if (start == 0) {
+            // no delimiter in value at all
+            appendIfMatches(result, value, patterns);
+        }
+        return result.toString();
+    }
+
+    int appendEmptyTokens(StringBuilder result, int count, List<CompiledRegex> patterns) {
+        for (int i = 0; i < count; i++) {
+            appendIfMatches(result, "", patterns);
+        }
+        return 0;
+    }
+
+    void appendIfMatches(StringBuilder result, String token, List<CompiledRegex> patterns) {
+        if (matchesAny(token, patterns)) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(token);
+        }
+    }
+
+    boolean matchesAny(String token, List<CompiledRegex> patterns) {
+        for (CompiledRegex pattern : patterns) {
+            if (pattern.matches(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 
     List<PseudonymizedIdentity> pseudonymizeEmailHeader(Object value) {
         if (value == null) {
@@ -254,13 +512,9 @@ public class SanitizerImpl implements Sanitizer {
         if (StringUtils.isBlank((String) value)) {
             return new ArrayList<>();
         } else {
-            //NOTE: this does NOT seem to work for lists containing empty values (eg ",,"), which
-            // per RFC should be allowed ....
-            if (EmailAddressParser.isValidAddressList((String) value, EmailAddressCriteria.DEFAULT)) {
-                InternetAddress[] addresses =
-                    EmailAddressParser.extractHeaderAddresses((String) value, EmailAddressCriteria.DEFAULT, true);
-                return Arrays.stream(addresses)
-                    .map(InternetAddress::getAddress)
+            Optional<List<String>> addresses = EmailAddressCanonicalizer.parseAddressList((String) value);
+            if (addresses.isPresent()) {
+                return addresses.get().stream()
                     .map(this::pseudonymize)
                     .collect(Collectors.toList());
             } else {
@@ -283,6 +537,24 @@ public class SanitizerImpl implements Sanitizer {
         Preconditions.checkArgument(value instanceof String || value instanceof Number,
             "Value must be some basic type (eg JSON leaf, not node)");
 
+        PseudonymizedIdentity pseudonym;
+        if (pseudonymCache == null) {
+            pseudonym = pseudonymizeUncached(value);
+        } else {
+            //NOTE: Number never a valid email, so pseudonymized exactly as its String form would be
+            PseudonymCache.Key key =
+                new PseudonymCache.Key(saltFingerprint, options.getDefaultScopeId(), value.toString());
+            pseudonym = pseudonymCache.get(key, () -> pseudonymizeUncached(value));
+        }
+
+        if (includeOriginal) {
+            pseudonym.setOriginal(Objects.toString(value));
+        }
+
+        return pseudonym;
+    }
+
+    PseudonymizedIdentity pseudonymizeUncached(@NonNull Object value) {
         PseudonymizedIdentity.PseudonymizedIdentityBuilder builder = PseudonymizedIdentity.builder();
 
         String canonicalValue, scope;
@@ -291,23 +563,12 @@ public class SanitizerImpl implements Sanitizer {
         //NOTE: use of EmailAddressValidator/Parser here is probably overly permissive, as there
         // are many cases where we expect simple emails (eg, alice@worklytics.co), not all the
         // possible variants with personal names / etc that may be allowed in email header values
-        if (value instanceof String && EmailAddressValidator.isValid((String) value)) {
-
-            String domain = EmailAddressParser.getDomain((String) value, EmailAddressCriteria.DEFAULT, true);
-            builder.domain(domain);
+        Optional<EmailAddressCanonicalizer.EmailAddress> emailAddress = value instanceof String
+            ? EmailAddressCanonicalizer.parse((String) value) : Optional.empty();
+        if (emailAddress.isPresent()) {
+            builder.domain(emailAddress.get().getDomain());
             scope = PseudonymizedIdentity.EMAIL_SCOPE;
-
-            //NOTE: lower-case here is NOT stipulated by RFC
-            canonicalValue =
-                EmailAddressParser.getLocalPart((String) value, EmailAddressCriteria.DEFAULT, true)
-                    .toLowerCase()
-                + "@"
-                + domain.toLowerCase();
-
-            //q: do something with the personal name??
-            // NO --> it is not going to be reliable (except for From, will fill with whatever
-            // sender has for the person in their Contacts), and in enterprise use-cases we
-            // shouldn't need it for matching
+            canonicalValue = emailAddress.get().getCanonical();
         } else {
             canonicalValue = value.toString();
             scope = options.getDefaultScopeId();
@@ -315,16 +576,21 @@ public class SanitizerImpl implements Sanitizer {
 
         if (canonicalValue != null) {
             builder.scope(scope);
-            builder.hash(hashUtils.hash(canonicalValue, options.getPseudonymizationSalt(), asLegacyScope(scope)));
-        }
-
-        if (includeOriginal) {
-            builder.original(Objects.toString(value));
+            builder.hash(hash(canonicalValue, scope));
+            builder.version(options.getHashScheme().getVersion());
         }
 
         return builder.build();
     }
 
+    String hash(@NonNull String canonicalValue, String scope) {
+        if (keyedHash != null) {
+            return keyedHash.hash(scope, ":", canonicalValue);
+        } else {
+            return hashUtils.hash(canonicalValue, options.getPseudonymizationSalt(), asLegacyScope(scope));
+        }
+    }
+
     //converts 'scope' to legacy value (eg, equivalents to original Worklytics scheme, where no scope
     // meant 'email'
     private String asLegacyScope(@NonNull String scope) {
@@ -333,16 +599,81 @@ public class SanitizerImpl implements Sanitizer {
 
     @VisibleForTesting
     public String pseudonymizeToJson(Object value, @NonNull Configuration configuration) {
-        return configuration.jsonProvider().toJson(pseudonymize(value));
+        return toJson(pseudonymize(value));
     }
 
     public String pseudonymizeWithOriginalToJson(Object value, @NonNull Configuration configuration) {
-        return configuration.jsonProvider().toJson(pseudonymize(value, true));
+        return toJson(pseudonymize(value, true));
     }
 
 
     String pseudonymizeEmailHeaderToJson(@NonNull Object value, @NonNull Configuration configuration) {
-        return configuration.jsonProvider().toJson(pseudonymizeEmailHeader(value));
+        return toJson(pseudonymizeEmailHeader(value));
+    }
+
+    /**
+     * NOTE: pseudonym is written to document as is, and serialized along with it
+     */
+    Object pseudonymizeToNative(Object value, @NonNull Configuration configuration) {
+        return pseudonymize(value);
+    }
+
+    Object pseudonymizeWithOriginalToNative(Object value, @NonNull Configuration configuration) {
+        return pseudonymize(value, true);
+    }
+
+    Object pseudonymizeEmailHeaderToNative(@NonNull Object value, @NonNull Configuration configuration) {
+        return pseudonymizeEmailHeader(value);
+    }
+
+    String pseudonymizeToCompact(Object value, @NonNull Configuration configuration) {
+        return toCompact(pseudonymize(value));
+    }
+
+    String pseudonymizeEmailHeaderToCompact(@NonNull Object value, @NonNull Configuration configuration) {
+        List<PseudonymizedIdentity> pseudonyms = pseudonymizeEmailHeader(value);
+        return toJson(pseudonyms == null ? null :
+            pseudonyms.stream().map(this::toCompact).collect(Collectors.toList()));
+    }
+
+    @Override
+    public String encode(@NonNull PseudonymizedIdentity pseudonym, @NonNull PseudonymEncoding encoding) {
+        return encoding == PseudonymEncoding.COMPACT && pseudonym.getOriginal() == null
+            ? toCompact(pseudonym) : toJson(pseudonym);
+    }
+
+    /**
+     * @see PseudonymEncoding#COMPACT
+     */
+    String toCompact(PseudonymizedIdentity pseudonym) {
+        if (pseudonym == null) {
+            return null;
+        }
+        String compact = compactPrefix(pseudonym.getScope(), pseudonym.getDomain()) + pseudonym.getHash();
+        return pseudonym.getVersion() == null ? compact : compact + ":v" + pseudonym.getVersion();
+    }
+
+    String compactPrefix(String scope, String domain) {
+        String scopePart = Objects.equals(scope, PseudonymizedIdentity.EMAIL_SCOPE) ? "e" : StringUtils.defaultString(scope);
+        String domainPart = StringUtils.defaultString(domain);
+        Map<String, String> byDomain = compactPrefixes.computeIfAbsent(scopePart, s -> new ConcurrentHashMap<>());
+        String prefix = byDomain.get(domainPart);
+        if (prefix == null) {
+            prefix = scopePart + ":" + domainPart + ":";
+            if (byDomain.size() < MAX_COMPACT_PREFIXES_PER_SCOPE) {
+                byDomain.putIfAbsent(domainPart, prefix);
+            }
+        }
+        return prefix;
+    }
+
+    /**
+     * NOTE: not via configuration's JsonProvider, as that may only support its own document model
+     * (eg, JsonNode)
+     */
+    @SneakyThrows
+    String toJson(Object value) {
+        return objectMapper.writeValueAsString(value);
     }
     @Override
     public PseudonymizedIdentity pseudonymize(@NonNull String value) {
@@ -354,4 +685,15 @@ public class SanitizerImpl implements Sanitizer {
         return pseudonymize((Object) value);
     }
 
+    @Override
+    public Map<String, PseudonymizedIdentity> pseudonymizeAll(@NonNull Collection<String> identifiers) {
+        Map<String, PseudonymizedIdentity> pseudonyms = new LinkedHashMap<>();
+        for (String identifier : identifiers) {
+            if (identifier != null && !pseudonyms.containsKey(identifier)) {
+                pseudonyms.put(identifier, pseudonymize((Object) identifier));
+            }
+        }
+        return pseudonyms;
+    }
+
 }
@@ -0,0 +1,305 @@
+package co.worklytics.psoxy.impl;
+
+import com.jayway.jsonpath.JsonPath;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * a JsonPath, restricted to the subset of the syntax that can be evaluated by walking a document
+ * from its root, one step at a time, without random access to the rest of the document.
+ *
+ * supported:
+ *   - `$.name`, `$['a','b']`, `$.['a','b']` - child properties
+ *   - `$..name`, `$..['name']` - deep scan for a property
+ *   - `[*]`, `.*` - all array elements (or all property values, for objects)
+ *   - `[?(...)]` - filter, so long as it's relative to the current node (no `$` references)
+ *
+ * anything else (array indexes, slices, functions, etc) is unsupported; callers should fallback
+ * to evaluating such paths with JsonPath itself.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class SimplePath {
+
+    @NonNull
+    final String source;
+
+    @NonNull
+    final List<Step> steps;
+
+    /**
+     * @param jsonPath to parse
+     * @return path, if it's within supported subset of JsonPath syntax; otherwise empty
+     */
+    static Optional<SimplePath> parse(@NonNull String jsonPath) {
+        try {
+            return Optional.of(new SimplePath(jsonPath, new Parser(jsonPath).parse()));
+        } catch (UnsupportedOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    int length() {
+        return steps.size();
+    }
+
+    Step step(int i) {
+        return steps.get(i);
+    }
+
+    static abstract class Step {
+
+    }
+
+    /**
+     * child properties of an object, with any of the given names
+     */
+    @Getter
+    @EqualsAndHashCode(callSuper = false)
+    @ToString
+    @RequiredArgsConstructor
+    static class Property extends Step {
+        final Set<String> names;
+
+        boolean matches(String fieldName) {
+            return names.contains(fieldName);
+        }
+    }
+
+    /**
+     * properties, with the given name, of the current node or any of its descendants
+     */
+    @Getter
+    @EqualsAndHashCode(callSuper = false)
+    @ToString
+    @RequiredArgsConstructor
+    static class DeepScan extends Step {
+        final String name;
+
+        boolean matches(String fieldName) {
+            return name.equals(fieldName);
+        }
+    }
+
+    /**
+     * all elements of an array, or all property values of an object
+     */
+    @EqualsAndHashCode(callSuper = false)
+    @ToString
+    static class Wildcard extends Step {
+
+    }
+
+    /**
+     * elements of an array (or an object itself) satisfying a predicate
+     *
+     * predicate is evaluated natively, if within subset of filter syntax FilterPredicate supports;
+     * otherwise with JsonPath, as `$[?(...)]` against a single-element array holding the candidate
+     * node.
+     */
+    @Getter
+    @EqualsAndHashCode(callSuper = false, of = "expression")
+    @ToString(of = "expression")
+    static class Filter extends Step {
+
+        final String expression;
+
+        /**
+         * null if filter compiled natively
+         */
+        final JsonPath predicate;
+
+        /**
+         * null if filter not within subset of syntax supported natively
+         */
+        final FilterPredicate compiled;
+
+        Filter(String expression) {
+            this.expression = expression;
+            this.compiled = FilterPredicate.compile(expression).orElse(null);
+            this.predicate = compiled == null ? JsonPath.compile("$" + expression) : null;
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Parser {
+
+        final String path;
+
+        int i = 0;
+
+        List<Step> parse() {
+            expect('$');
+            List<Step> steps = new ArrayList<>();
+            while (i < path.length()) {
+                if (path.startsWith("..", i)) {
+                    i += 2;
+                    Set<String> names = peek() == '[' ? bracketedNames() : name();
+                    if (names.size() > 1) {
+                        //JsonPath matches these only on objects with ALL the properties, which
+                        // can't be known until the whole object has been read
+                        throw unsupported();
+                    }
+                    steps.add(new DeepScan(names.iterator().next()));
+                } else if (peek() == '.') {
+                    i++;
+                    if (peek() == '*') {
+                        i++;
+                        steps.add(new Wildcard());
+                    } else if (peek() == '[') {
+                        steps.add(bracket());
+                    } else {
+                        steps.add(new Property(name()));
+                    }
+                } else if (peek() == '[') {
+                    steps.add(bracket());
+                } else {
+                    throw unsupported();
+                }
+            }
+            if (steps.isEmpty()) {
+                // whole document; nothing to walk
+                throw unsupported();
+            }
+            return steps;
+        }
+
+        Step bracket() {
+            if (path.startsWith("[*]", i)) {
+                i += 3;
+                return new Wildcard();
+            } else if (path.startsWith("[?(", i)) {
+                return filter();
+            } else {
+                return new Property(bracketedNames());
+            }
+        }
+
+        Set<String> name() {
+            int start = i;
+            while (i < path.length() && ".[]()'\"*$@ ".indexOf(path.charAt(i)) < 0) {
+                i++;
+            }
+            if (i == start) {
+                throw unsupported();
+            }
+            return Collections.singleton(path.substring(start, i));
+        }
+
+        Set<String> bracketedNames() {
+            expect('[');
+            Set<String> names = new LinkedHashSet<>();
+            do {
+                skipWhitespace();
+                char quote = peek();
+                if (quote != '\'' && quote != '"') {
+                    throw unsupported();
+                }
+                int end = path.indexOf(quote, ++i);
+                if (end < 0 || path.substring(i, end).indexOf('\\') >= 0) {
+                    throw unsupported();
+                }
+                names.add(path.substring(i, end));
+                i = end + 1;
+                skipWhitespace();
+            } while (tryConsume(','));
+            expect(']');
+            return Collections.unmodifiableSet(names);
+        }
+
+        /**
+         * consume `[?(...)]`, tracking nesting of parens outside of quoted strings and regex
+         * literals
+         */
+        Filter filter() {
+            int start = i;
+            i += 3;
+            int depth = 1;
+            char previousSignificant = '(';
+            while (depth > 0) {
+                char c = next();
+                if (c == '\'' || c == '"') {
+                    skipPast(c);
+                } else if (c == '/' && previousSignificant == '~') {
+                    //regex literal, as in `@.name =~ /^abc$/i`
+                    skipPast('/');
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (c == '$') {
+                    //reference to document root; can't evaluate relative to the current node
+                    throw unsupported();
+                }
+                if (!Character.isWhitespace(c)) {
+                    previousSignificant = c;
+                }
+            }
+            expect(']');
+            try {
+                return new Filter(path.substring(start, i));
+            } catch (RuntimeException e) {
+                throw unsupported();
+            }
+        }
+
+        void skipPast(char terminator) {
+            char c;
+            do {
+                c = next();
+                if (c == '\\') {
+                    next();
+                    c = 0;
+                }
+            } while (c != terminator);
+        }
+
+        void skipWhitespace() {
+            while (i < path.length() && Character.isWhitespace(path.charAt(i))) {
+                i++;
+            }
+        }
+
+        boolean tryConsume(char c) {
+            if (i < path.length() && path.charAt(i) == c) {
+                i++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!tryConsume(c)) {
+                throw unsupported();
+            }
+        }
+
+        char peek() {
+            return i < path.length() ? path.charAt(i) : 0;
+        }
+
+        char next() {
+            if (i >= path.length()) {
+                throw unsupported();
+            }
+            return path.charAt(i++);
+        }
+
+        UnsupportedOperationException unsupported() {
+            return new UnsupportedOperationException("Unsupported JsonPath syntax at " + i + ": " + path);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package co.worklytics.psoxy.impl;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.InvalidJsonException;
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * applies an endpoint's transforms to JSON content token-by-token, as it's read from a
+ * JsonParser and written to a JsonGenerator.
+ *
+ * subtrees that no transform's path can reach are copied through without being materialized.
+ * values that ARE matched (and array elements that must be tested against a filter) are
+ * materialized as the same Map/List/leaf types that the JsonPath engine parses them to, so
+ * transform functions get identical input under both engines.
+ *
+ * which transforms apply to which values is determined by the endpoint's TransformPlan, so matches
+ * are the same as when the plan is applied to a parsed document.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class StreamingJsonTransformer {
+
+    final TransformPlan plan;
+
+    final ObjectMapper objectMapper;
+
+    final ObjectReader reader;
+
+    final Configuration configuration;
+
+    static StreamingJsonTransformer of(@NonNull TransformPlan plan,
+                                       @NonNull ObjectMapper objectMapper,
+                                       @NonNull Configuration configuration) {
+        return new StreamingJsonTransformer(plan, objectMapper, objectMapper.readerFor(Object.class), configuration);
+    }
+
+    String transform(@NonNull String json) {
+        StringWriter writer = new StringWriter(json.length());
+        try (JsonParser parser = objectMapper.getFactory().createParser(json);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            transform(parser, generator);
+        } catch (IOException e) {
+            throw new InvalidJsonException(e, json);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * @param json read from, as it's transformed; not closed
+     * @param out  to which to write transformed json, UTF-8 encoded, as it's produced; not closed
+     * @throws InvalidJsonException if json isn't valid JSON
+     * @throws IOException if can't read json or write to out
+     */
+    void transform(@NonNull Reader json, @NonNull OutputStream out) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            transform(parser, generator);
+        } catch (JsonProcessingException e) {
+            throw new InvalidJsonException(e);
+        }
+    }
+
+    void transform(@NonNull JsonParser parser, @NonNull JsonGenerator generator) throws IOException {
+        if (parser.nextToken() == null) {
+            return;
+        }
+        value(parser, generator, null, plan.initial(), new DocumentMemo());
+    }
+
+    /**
+     * process value at parser's current token
+     *
+     * @param fieldName name of property, if value is one; written only if value isn't redacted
+     * @param state     of plan active at this value
+     * @param memo      of results of functions applied within document
+     */
+    void value(JsonParser parser, JsonGenerator generator, String fieldName, TransformPlan.State state,
+               DocumentMemo memo) throws IOException {
+        if (state.isEmpty()) {
+            writeFieldName(generator, fieldName);
+            generator.copyCurrentStructure(parser);
+            return;
+        }
+
+        if (parser.currentToken() == JsonToken.START_OBJECT && plan.hasFilters(state)) {
+            // object itself must be tested against filter, so buffer it
+            TokenBuffer buffer = buffer(parser);
+            state = plan.applyFilters(state, materialize(buffer), configuration);
+            parser = replay(buffer);
+        }
+
+        List<TransformPlan.Rule> matches = plan.matches(state);
+        if (matches.isEmpty()) {
+            writeFieldName(generator, fieldName);
+            switch (parser.currentToken()) {
+                case START_OBJECT:
+                    object(parser, generator, state, memo);
+                    break;
+                case START_ARRAY:
+                    array(parser, generator, state, memo);
+                    break;
+                default:
+                    generator.copyCurrentEvent(parser);
+            }
+        } else if (plan.isRedacted(matches)) {
+            parser.skipChildren();
+        } else {
+            Object value = plan.map(reader.readValue(parser), matches, configuration, memo);
+            writeFieldName(generator, fieldName);
+            writeObject(generator, value);
+        }
+    }
+
+    void object(JsonParser parser, JsonGenerator generator, TransformPlan.State state,
+                DocumentMemo memo) throws IOException {
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            value(parser, generator, fieldName, plan.advanceToProperty(state, fieldName), memo);
+        }
+        generator.writeEndObject();
+    }
+
+    void array(JsonParser parser, JsonGenerator generator, TransformPlan.State state,
+               DocumentMemo memo) throws IOException {
+        boolean filtered = plan.hasFilters(state);
+        generator.writeStartArray();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (filtered) {
+                TokenBuffer buffer = buffer(parser);
+                TransformPlan.State elementState =
+                    plan.advanceToElement(state, materialize(buffer), configuration);
+                value(replay(buffer), generator, null, elementState, memo);
+            } else {
+                value(parser, generator, null, plan.advanceToElement(state, null, configuration), memo);
+            }
+        }
+        generator.writeEndArray();
+    }
+
+    TokenBuffer buffer(JsonParser parser) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(parser);
+        buffer.copyCurrentStructure(parser);
+        return buffer;
+    }
+
+    JsonParser replay(TokenBuffer buffer) throws IOException {
+        JsonParser parser = buffer.asParser();
+        parser.nextToken();
+        return parser;
+    }
+
+    Object materialize(TokenBuffer buffer) throws IOException {
+        return reader.readValue(buffer.asParser());
+    }
+
+    void writeFieldName(JsonGenerator generator, String fieldName) throws IOException {
+        if (fieldName != null) {
+            generator.writeFieldName(fieldName);
+        }
+    }
+
+    void writeObject(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else {
+            objectMapper.writeValue(generator, value);
+        }
+    }
+}
@@ -0,0 +1,980 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.rules.Rules2;
+import co.worklytics.psoxy.rules.Transform;
+import com.google.common.hash.Hashing;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.MapFunction;
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * all the JsonPaths of an endpoint's transforms, merged into a single trie, such that every
+ * transform can be applied in a single traversal of a document.
+ *
+ * traversal tracks the set of trie nodes that are 'active' at each node of the document; where a
+ * document node is reached by one or more complete paths, the transforms of those paths are
+ * applied to it in rule order (and it is not traversed further).
+ *
+ * NOTE: unlike applying JsonPaths one-by-one, all paths are matched against the document as
+ * received; so endpoints where a filter of a path references a property that an earlier path
+ * redacts or replaces (and so would be affected by applying them in order) aren't compiled.
+ *
+ * sets of active nodes that traversal can reach are determinized when plan is compiled, into
+ * States with their successors by property name, and the rules that match at them, precomputed;
+ * so walking a document is a lookup per property, rather than re-deriving the set of active nodes
+ * (and the rules matching) each time. sets beyond those (eg, too many states, combinations of
+ * filters) are derived as traversed.
+ *
+ * plans of prebuilt rules' endpoints are specialized at build time into subclasses, with a
+ * hardcoded walk of each state (see TransformPlanGenerator); compile() returns an instance of
+ * one of those if its signature matches that of the plan being compiled.
+ */
+class TransformPlan {
+
+    /**
+     * class generated by TransformPlanGenerator, mapping signatures to specialized plans
+     */
+    static final String GENERATED_PLANS_CLASS = "co.worklytics.psoxy.impl.GeneratedTransformPlans";
+
+    /**
+     * beyond this many states, successors of further sets of nodes are derived as traversed
+     */
+    static final int MAX_STATES = 1_000;
+
+    /**
+     * beyond this many filters active at once, sets of nodes that would follow from each
+     * combination of them accepting are not precomputed
+     */
+    static final int MAX_PRECOMPUTED_FILTERS = 4;
+
+    final Node root;
+
+    /**
+     * determinized sets of nodes, by those nodes; not modified after construction
+     */
+    final Map<Set<Node>, State> states;
+
+    /**
+     * determinized states, by id
+     */
+    final List<State> determinized;
+
+    /**
+     * whether every state reachable from initial is determinized, including those for every
+     * combination of filters
+     */
+    final boolean complete;
+
+    final State initial;
+
+    TransformPlan(Node root) {
+        this(root, MAX_STATES);
+    }
+
+    TransformPlan(Node root, int maxStates) {
+        this.root = root;
+        Map<Set<Node>, State> states = new HashMap<>();
+        List<State> determinized = new ArrayList<>();
+        this.initial = determinize(states, determinized, maxStates);
+        this.states = Collections.unmodifiableMap(states);
+        this.determinized = Collections.unmodifiableList(determinized);
+        this.complete = isComplete(determinized, maxStates);
+    }
+
+    /**
+     * @param plan whose (immutable) trie and states to share; for specialized subclasses
+     */
+    TransformPlan(TransformPlan plan) {
+        this.root = plan.root;
+        this.states = plan.states;
+        this.determinized = plan.determinized;
+        this.complete = plan.complete;
+        this.initial = plan.initial;
+    }
+
+    /**
+     * @param endpoint  to compile
+     * @param functions to use for non-redaction transforms
+     * @return plan for endpoint, if all of its transforms' paths are within SimplePath subset;
+     *         specialized, if one was generated for a plan of this structure
+     */
+    static Optional<TransformPlan> compile(@NonNull Rules2.Endpoint endpoint,
+                                           @NonNull Function<Transform, MapFunction> functions) {
+        return compileGeneric(endpoint, functions).map(TransformPlan::specialize);
+    }
+
+    /**
+     * @see #compile(Rules2.Endpoint, Function), but never specialized
+     */
+    static Optional<TransformPlan> compileGeneric(@NonNull Rules2.Endpoint endpoint,
+                                                  @NonNull Function<Transform, MapFunction> functions) {
+        Node root = new Node(false);
+        int order = 0;
+        Set<String> targeted = new HashSet<>();
+        for (Transform transform : endpoint.getTransforms()) {
+            if (transform instanceof Transform.Keep) {
+                //not a function of matched values; see Projection
+                return Optional.empty();
+            }
+            MapFunction f = transform instanceof Transform.Redact ? null : functions.apply(transform);
+            boolean memoize = isPseudonymization(transform);
+            for (String jsonPath : transform.getJsonPaths()) {
+                Optional<SimplePath> path = SimplePath.parse(jsonPath);
+                if (path.isEmpty() || filtersChangedBy(path.get(), targeted)) {
+                    return Optional.empty();
+                }
+                targeted.addAll(targetedProperties(path.get()));
+                Rule rule = new Rule(order++, f, memoize);
+                for (Node leaf : root.add(path.get().getSteps())) {
+                    leaf.rules.add(rule);
+                }
+            }
+        }
+        return Optional.of(new TransformPlan(root));
+    }
+
+    /**
+     * stands for properties of any name
+     */
+    static final String ANY_PROPERTY = "*";
+
+    /**
+     * matches names of properties in a filter expression, as in `@.name`, `@['name']`, `@..name`,
+     * `@.a.b`; or a wildcard, as in `@.*`, `@[*]`
+     *
+     * conservative: may match things that aren't references to properties (eg, within string
+     * literals); that only results in falling back to applying paths one-by-one
+     */
+    static final Pattern FILTER_REFERENCE =
+        Pattern.compile("\\.\\s*([A-Za-z_$][\\w$-]*)|\\[\\s*'([^']*)'|\\[\\s*\"([^\"]*)\"|(\\.\\s*\\*|\\[\\s*\\*\\s*])");
+
+    /**
+     * @param path     to check
+     * @param targeted properties redacted/replaced by earlier paths (see targetedProperties)
+     * @return whether any filter of path references a property of targeted; so would, if paths
+     *         were applied one-by-one, be affected by earlier paths
+     */
+    static boolean filtersChangedBy(SimplePath path, Set<String> targeted) {
+        if (targeted.isEmpty()) {
+            return false;
+        }
+        for (SimplePath.Step step : path.getSteps()) {
+            if (step instanceof SimplePath.Filter) {
+                Set<String> referenced = referencedProperties((SimplePath.Filter) step);
+                if (targeted.contains(ANY_PROPERTY) || referenced.contains(ANY_PROPERTY)
+                    || referenced.stream().anyMatch(targeted::contains)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return names of properties whose values path redacts or replaces; ANY_PROPERTY, if it may
+     *         be values of properties of any name (or array elements)
+     */
+    static Set<String> targetedProperties(SimplePath path) {
+        SimplePath.Step last = path.step(path.length() - 1);
+        if (last instanceof SimplePath.Property) {
+            return ((SimplePath.Property) last).getNames();
+        } else if (last instanceof SimplePath.DeepScan) {
+            return Collections.singleton(((SimplePath.DeepScan) last).getName());
+        } else {
+            return Collections.singleton(ANY_PROPERTY);
+        }
+    }
+
+    /**
+     * @return names of properties referenced (at any depth, relative to node filtered) by filter;
+     *         conservatively, includes ANY_PROPERTY if filter references `@.*` or `@[*]`
+     */
+    static Set<String> referencedProperties(SimplePath.Filter filter) {
+        Set<String> names = new HashSet<>();
+        Matcher reference = FILTER_REFERENCE.matcher(filter.getExpression());
+        while (reference.find()) {
+            if (reference.group(4) != null) {
+                names.add(ANY_PROPERTY);
+            } else {
+                names.add(Optional.ofNullable(reference.group(1))
+                    .or(() -> Optional.ofNullable(reference.group(2)))
+                    .orElse(reference.group(3)));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @param jsonPaths to merge
+     * @return plan with a redaction at the end of each of jsonPaths, if all are within SimplePath
+     *         subset; for use as a trie of paths, rather than applied
+     */
+    static Optional<TransformPlan> ofPaths(@NonNull List<String> jsonPaths) {
+        Node root = new Node(false);
+        int order = 0;
+        for (String jsonPath : jsonPaths) {
+            Optional<SimplePath> path = SimplePath.parse(jsonPath);
+            if (path.isEmpty()) {
+                return Optional.empty();
+            }
+            Rule rule = new Rule(order++, null, false);
+            for (Node leaf : root.add(path.get().getSteps())) {
+                leaf.rules.add(rule);
+            }
+        }
+        return Optional.of(new TransformPlan(root));
+    }
+
+    /**
+     * @return specialized plan generated for plans of same signature, if any; otherwise plan
+     */
+    static TransformPlan specialize(TransformPlan plan) {
+        if (Generated.PLANS.isEmpty() || !plan.complete) {
+            return plan;
+        }
+        Function<TransformPlan, TransformPlan> generated = Generated.PLANS.get(plan.signature());
+        return generated == null ? plan : generated.apply(plan);
+    }
+
+    /**
+     * holder, so generated plans are looked up only once per process
+     */
+    static class Generated {
+
+        static final Map<String, Function<TransformPlan, TransformPlan>> PLANS = load();
+
+        @SuppressWarnings("unchecked")
+        static Map<String, Function<TransformPlan, TransformPlan>> load() {
+            try {
+                return (Map<String, Function<TransformPlan, TransformPlan>>)
+                    Class.forName(GENERATED_PLANS_CLASS).getDeclaredField("PLANS").get(null);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                //eg, compiled without the build step that generates them; plans are just generic
+                return Collections.emptyMap();
+            }
+        }
+    }
+
+    /**
+     * @return digest of structure of plan's states (but not functions of its rules); plans with
+     *         same signature are traversed identically
+     */
+    String signature() {
+        return Hashing.sha256().hashString(describe(), StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * @return canonical description of structure of plan's states, from which signature is derived
+     */
+    String describe() {
+        StringBuilder description = new StringBuilder();
+        for (State state : determinized) {
+            description.append(state.id).append(state.isEmpty() ? " empty" : "").append(" matches:");
+            for (Rule rule : state.matches) {
+                description.append(' ').append(rule.order)
+                    .append(rule.isRedaction() ? "r" : "f").append(rule.memoize ? "m" : "");
+            }
+            description.append(" properties:");
+            for (Map.Entry<String, State> property : new TreeMap<>(state.properties).entrySet()) {
+                description.append(' ').append(property.getKey().length()).append(':')
+                    .append(property.getKey()).append('=').append(property.getValue().id);
+            }
+            description.append(" other:").append(state.other.id);
+            if (state.hasFilters) {
+                description.append(" filters:");
+                for (SimplePath.Filter filter : state.filters) {
+                    description.append(' ').append(filter.getExpression().length()).append(':')
+                        .append(filter.getExpression());
+                }
+                description.append(" elements:");
+                for (State element : state.elements) {
+                    description.append(' ').append(element.id);
+                }
+                description.append(" filtered:");
+                for (State filtered : state.filtered) {
+                    description.append(' ').append(filtered.id);
+                }
+            }
+            description.append('\n');
+        }
+        return description.toString();
+    }
+
+    /**
+     * pseudonymizations are deterministic, comparatively costly, and values they're applied to
+     * repeat a lot within a document; so worth memoizing per document
+     */
+    static boolean isPseudonymization(Transform transform) {
+        return transform instanceof Transform.Pseudonymize
+            || transform instanceof Transform.PseudonymizeEmailHeader;
+    }
+
+    /**
+     * a single JsonPath of a transform
+     */
+    @RequiredArgsConstructor
+    static class Rule {
+
+        /**
+         * order in which rule should be applied, relative to others for the same endpoint
+         */
+        final int order;
+
+        /**
+         * null if rule is a redaction
+         */
+        final MapFunction function;
+
+        /**
+         * whether to memoize results of function within a document
+         */
+        final boolean memoize;
+
+        boolean isRedaction() {
+            return function == null;
+        }
+    }
+
+    static class Node {
+
+        /**
+         * if true, node is active at all descendants of document node at which it's active (eg,
+         * it was reached by a deep scan)
+         */
+        final boolean recursive;
+
+        final Map<String, Node> properties = new HashMap<>();
+
+        Node wildcard;
+
+        Node descendants;
+
+        final Map<SimplePath.Filter, Node> filters = new LinkedHashMap<>();
+
+        /**
+         * rules for paths that end at this node
+         */
+        final List<Rule> rules = new ArrayList<>();
+
+        Node(boolean recursive) {
+            this.recursive = recursive;
+        }
+
+        /**
+         * @return leaf node(s) at which path ends
+         */
+        List<Node> add(List<SimplePath.Step> steps) {
+            if (steps.isEmpty()) {
+                return Collections.singletonList(this);
+            }
+            SimplePath.Step step = steps.get(0);
+            List<SimplePath.Step> rest = steps.subList(1, steps.size());
+            if (step instanceof SimplePath.Property) {
+                List<Node> leaves = new ArrayList<>();
+                for (String name : ((SimplePath.Property) step).getNames()) {
+                    leaves.addAll(properties.computeIfAbsent(name, n -> new Node(false)).add(rest));
+                }
+                return leaves;
+            } else if (step instanceof SimplePath.DeepScan) {
+                if (descendants == null) {
+                    descendants = new Node(true);
+                }
+                return descendants.properties
+                    .computeIfAbsent(((SimplePath.DeepScan) step).getName(), n -> new Node(false))
+                    .add(rest);
+            } else if (step instanceof SimplePath.Wildcard) {
+                if (wildcard == null) {
+                    wildcard = new Node(false);
+                }
+                return wildcard.add(rest);
+            } else if (step instanceof SimplePath.Filter) {
+                return filters.computeIfAbsent((SimplePath.Filter) step, f -> new Node(false)).add(rest);
+            } else {
+                throw new IllegalArgumentException("Unknown step type: " + step.getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * a set of nodes that may be active at a node of a document, with what follows from it
+     */
+    static class State {
+
+        final List<Node> nodes;
+
+        /**
+         * rules of any paths complete at a document node at which state is active, in order
+         */
+        final List<Rule> matches;
+
+        final boolean hasFilters;
+
+        /**
+         * index of state in plan's determinized states; -1 if not determinized
+         */
+        int id = -1;
+
+        /**
+         * states at value of each property that any of nodes has a child for; null if not
+         * precomputed, in which case successors are derived as traversed
+         */
+        Map<String, State> properties;
+
+        /**
+         * state at value of any other property; and at element of array, if state has no filters.
+         * null if not precomputed
+         */
+        State other;
+
+        /**
+         * states at element of array, by which of filters accept it (bit i set, if filters[i] does);
+         * null if not precomputed
+         */
+        State[] elements;
+
+        /**
+         * states at object, by which of filters accept it (bit i set, if filters[i] does); null if
+         * not precomputed
+         */
+        State[] filtered;
+
+        /**
+         * distinct filters of nodes; if elements or filtered are precomputed
+         */
+        List<SimplePath.Filter> filters;
+
+        State(List<Node> nodes) {
+            this.nodes = nodes;
+            this.matches = matches(nodes);
+            this.hasFilters = hasFilters(nodes);
+        }
+
+        boolean isEmpty() {
+            return nodes.isEmpty();
+        }
+
+        boolean isPrecomputed() {
+            return properties != null;
+        }
+    }
+
+    /**
+     * @return state active at root of document
+     */
+    State initial() {
+        return initial;
+    }
+
+    /**
+     * @return state active at value of property 'fieldName' of an object at which 'state' is active
+     */
+    State advanceToProperty(State state, String fieldName) {
+        if (state.isPrecomputed()) {
+            State next = state.properties.get(fieldName);
+            return next == null ? state.other : next;
+        }
+        return state(advanceToProperty(state.nodes, fieldName));
+    }
+
+    /**
+     * @param element value of element; used only to test filters
+     * @return state active at element of an array at which 'state' is active
+     */
+    State advanceToElement(State state, Object element, Configuration configuration) {
+        if (!state.hasFilters) {
+            return state.isPrecomputed() ? state.other : state(advanceToElement(state.nodes, filter -> false));
+        }
+        if (state.elements != null) {
+            return state.elements[accepted(state.filters, element, configuration)];
+        }
+        return state(advanceToElement(state.nodes, filter -> accepts(filter, element, configuration)));
+    }
+
+    /**
+     * @return state active at an object, given it satisfies (or not) filters of 'state' active at it
+     */
+    State applyFilters(State state, Object object, Configuration configuration) {
+        if (state.filtered != null) {
+            return state.filtered[accepted(state.filters, object, configuration)];
+        }
+        return state(applyFilters(state.nodes, filter -> accepts(filter, object, configuration)));
+    }
+
+    boolean hasFilters(State state) {
+        return state.hasFilters;
+    }
+
+    /**
+     * @return rules of any paths complete at a document node at which 'state' is active, in order
+     */
+    List<Rule> matches(State state) {
+        return state.matches;
+    }
+
+    /**
+     * @return bits of which of filters accept node
+     */
+    int accepted(List<SimplePath.Filter> filters, Object node, Configuration configuration) {
+        int accepted = 0;
+        for (int i = 0; i < filters.size(); i++) {
+            if (accepts(filters.get(i), node, configuration)) {
+                accepted |= 1 << i;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * @return determinized state for nodes, if any; otherwise, one whose successors are derived as
+     *         traversed
+     */
+    State state(List<Node> nodes) {
+        State state = states.get(new HashSet<>(nodes));
+        return state == null ? new State(nodes) : state;
+    }
+
+    /**
+     * determinize sets of nodes reachable from root, breadth-first, until maxStates
+     *
+     * @param states       to fill
+     * @param determinized to fill with same states, in order determinized (ie, by id)
+     * @return initial state
+     */
+    State determinize(Map<Set<Node>, State> states, List<State> determinized, int maxStates) {
+        Function<List<Node>, State> intern = nodes -> {
+            Set<Node> key = new HashSet<>(nodes);
+            State state = states.get(key);
+            if (state == null) {
+                state = new State(nodes);
+                if (states.size() < maxStates) {
+                    state.id = determinized.size();
+                    states.put(key, state);
+                    determinized.add(state);
+                }
+            }
+            return state;
+        };
+
+        State initial = intern.apply(closure(Collections.singletonList(root)));
+        for (int i = 0; i < determinized.size(); i++) {
+            State state = determinized.get(i);
+            //in order of name, so ids of states don't depend on hashing
+            Set<String> names = new TreeSet<>();
+            for (Node node : state.nodes) {
+                names.addAll(node.properties.keySet());
+            }
+            Map<String, State> properties = new HashMap<>();
+            for (String name : names) {
+                properties.put(name, intern.apply(advanceToProperty(state.nodes, name)));
+            }
+            state.other = intern.apply(advanceToElement(state.nodes, filter -> false));
+            if (state.hasFilters) {
+                Set<SimplePath.Filter> filters = new LinkedHashSet<>();
+                for (Node node : state.nodes) {
+                    filters.addAll(node.filters.keySet());
+                }
+                if (filters.size() <= MAX_PRECOMPUTED_FILTERS) {
+                    List<SimplePath.Filter> ordered = new ArrayList<>(filters);
+                    State[] elements = new State[1 << ordered.size()];
+                    State[] filtered = new State[1 << ordered.size()];
+                    for (int accepted = 0; accepted < elements.length; accepted++) {
+                        Predicate<SimplePath.Filter> accepts = acceptedOf(ordered, accepted);
+                        elements[accepted] = intern.apply(advanceToElement(state.nodes, accepts));
+                        filtered[accepted] = intern.apply(applyFilters(state.nodes, accepts));
+                    }
+                    state.filters = Collections.unmodifiableList(ordered);
+                    state.elements = elements;
+                    state.filtered = filtered;
+                }
+            }
+            //last, as presence of properties is what marks state as precomputed
+            state.properties = properties;
+        }
+        return initial;
+    }
+
+    /**
+     * @return whether every successor of determinized states is itself determinized
+     */
+    static boolean isComplete(List<State> determinized, int maxStates) {
+        if (determinized.isEmpty() || determinized.size() >= maxStates) {
+            //at limit, some successor may have been left out
+            return false;
+        }
+        for (State state : determinized) {
+            if (state.hasFilters && state.filters == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return predicate for whether a filter is among those of bits 'accepted' of filters
+     */
+    static Predicate<SimplePath.Filter> acceptedOf(List<SimplePath.Filter> filters, int accepted) {
+        return filter -> {
+            int i = filters.indexOf(filter);
+            return i >= 0 && (accepted & (1 << i)) != 0;
+        };
+    }
+
+    List<Node> advanceToProperty(List<Node> nodes, String fieldName) {
+        List<Node> next = Collections.emptyList();
+        for (Node node : nodes) {
+            Node child = node.properties.get(fieldName);
+            if (child != null) {
+                next = add(next, child);
+            }
+            if (node.wildcard != null) {
+                next = add(next, node.wildcard);
+            }
+            if (node.recursive) {
+                next = add(next, node);
+            }
+        }
+        return closure(next);
+    }
+
+    List<Node> advanceToElement(List<Node> nodes, Predicate<SimplePath.Filter> accepts) {
+        List<Node> next = Collections.emptyList();
+        for (Node node : nodes) {
+            if (node.wildcard != null) {
+                next = add(next, node.wildcard);
+            }
+            for (Map.Entry<SimplePath.Filter, Node> filter : node.filters.entrySet()) {
+                if (accepts.test(filter.getKey())) {
+                    next = add(next, filter.getValue());
+                }
+            }
+            if (node.recursive) {
+                next = add(next, node);
+            }
+        }
+        return closure(next);
+    }
+
+    List<Node> applyFilters(List<Node> nodes, Predicate<SimplePath.Filter> accepts) {
+        List<Node> result = nodes;
+        for (int i = 0; i < result.size(); i++) {
+            Node node = result.get(i);
+            for (Map.Entry<SimplePath.Filter, Node> filter : node.filters.entrySet()) {
+                if (accepts.test(filter.getKey())) {
+                    if (result == nodes) {
+                        result = new ArrayList<>(nodes);
+                    }
+                    result = add(result, filter.getValue());
+                    if (filter.getValue().descendants != null) {
+                        result = add(result, filter.getValue().descendants);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    static boolean hasFilters(List<Node> nodes) {
+        for (Node node : nodes) {
+            if (!node.filters.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static List<Rule> matches(List<Node> nodes) {
+        List<Rule> matches = null;
+        for (Node node : nodes) {
+            if (!node.rules.isEmpty()) {
+                if (matches == null) {
+                    matches = new ArrayList<>(node.rules);
+                } else {
+                    matches.addAll(node.rules);
+                    matches.sort(Comparator.comparingInt(r -> r.order));
+                }
+            }
+        }
+        return matches == null ? Collections.emptyList() : Collections.unmodifiableList(matches);
+    }
+
+    /**
+     * apply all transforms to document, in place
+     *
+     * @param document      parsed by configuration's JsonProvider
+     * @param configuration with which document was parsed
+     */
+    void apply(@NonNull Object document, @NonNull Configuration configuration) {
+        apply(document, configuration, Parallelism.NONE);
+    }
+
+    /**
+     * apply all transforms to document, in place
+     *
+     * @param document      parsed by configuration's JsonProvider
+     * @param configuration with which document was parsed
+     * @param parallelism   of traversal of arrays' elements
+     */
+    void apply(@NonNull Object document, @NonNull Configuration configuration, @NonNull Parallelism parallelism) {
+        State state = initial();
+        JsonProvider jsonProvider = configuration.jsonProvider();
+        if (jsonProvider.isMap(document) && hasFilters(state)) {
+            state = applyFilters(state, document, configuration);
+        }
+        traverse(document, state, configuration, new DocumentMemo(), parallelism);
+    }
+
+    void traverse(Object value, State state, Configuration configuration, DocumentMemo memo) {
+        traverse(value, state, configuration, memo, Parallelism.NONE);
+    }
+
+    /**
+     * NOTE: overridden by specialized plans, to walk determinized states with generated code
+     */
+    void traverse(Object value, State state, Configuration configuration, DocumentMemo memo, Parallelism parallelism) {
+        JsonProvider jsonProvider = configuration.jsonProvider();
+        if (jsonProvider.isMap(value)) {
+            //copy, as may be modified during traversal
+            for (String key : new ArrayList<>(jsonProvider.getPropertyKeys(value))) {
+                State childState = advanceToProperty(state, key);
+                if (!childState.isEmpty()) {
+                    traverseProperty(value, key, childState, configuration, memo, parallelism);
+                }
+            }
+        } else if (jsonProvider.isArray(value)) {
+            traverseArray(value, state, configuration, memo, parallelism);
+        }
+    }
+
+    /**
+     * @param childState non-empty state at value of property 'key' of object
+     */
+    void traverseProperty(Object object, String key, State childState, Configuration configuration,
+                          DocumentMemo memo, Parallelism parallelism) {
+        JsonProvider jsonProvider = configuration.jsonProvider();
+        Object child = jsonProvider.getMapValue(object, key);
+        if (jsonProvider.isMap(child) && hasFilters(childState)) {
+            childState = applyFilters(childState, child, configuration);
+        }
+        List<Rule> matches = matches(childState);
+        if (matches.isEmpty()) {
+            traverse(child, childState, configuration, memo, parallelism);
+        } else if (isRedacted(matches)) {
+            jsonProvider.removeProperty(object, key);
+        } else {
+            jsonProvider.setProperty(object, key, map(child, matches, configuration, memo));
+        }
+    }
+
+    void traverseArray(Object value, State state, Configuration configuration, DocumentMemo memo, Parallelism parallelism) {
+        JsonProvider jsonProvider = configuration.jsonProvider();
+        int length = jsonProvider.length(value);
+        Object[] results = new Object[length];
+        if (parallelism.appliesTo(length)) {
+            parallelism.pool.invoke(new TraverseElements(value, state, configuration, results, 0, length,
+                Math.max(MIN_ELEMENTS_PER_TASK, length / (parallelism.pool.getParallelism() * 4))));
+        } else {
+            traverseElements(value, state, configuration, memo, results, 0, length);
+        }
+
+        List<Integer> redacted = null;
+        for (int i = 0; i < length; i++) {
+            if (results[i] == REDACTED) {
+                if (redacted == null) {
+                    redacted = new ArrayList<>();
+                }
+                redacted.add(i);
+            } else if (results[i] != UNCHANGED) {
+                jsonProvider.setArrayIndex(value, i, ((Mapped) results[i]).value);
+            }
+        }
+        if (redacted != null) {
+            //remove from end, so indexes of remaining elements unchanged
+            for (int i = redacted.size() - 1; i >= 0; i--) {
+                jsonProvider.removeProperty(value, redacted.get(i));
+            }
+        }
+    }
+
+    /**
+     * traverse elements [from, to) of array, filling results with what's to become of each (which
+     * caller must apply to array); elements themselves may be modified in place
+     *
+     * does not modify array itself, so may be called concurrently for disjoint ranges
+     */
+    void traverseElements(Object array, State state, Configuration configuration, DocumentMemo memo,
+                          Object[] results, int from, int to) {
+        JsonProvider jsonProvider = configuration.jsonProvider();
+        for (int i = from; i < to; i++) {
+            results[i] = UNCHANGED;
+            Object element = jsonProvider.getArrayIndex(array, i);
+            State elementState = advanceToElement(state, element, configuration);
+            if (!elementState.isEmpty()) {
+                if (jsonProvider.isMap(element) && hasFilters(elementState)) {
+                    elementState = applyFilters(elementState, element, configuration);
+                }
+                List<Rule> matches = matches(elementState);
+                if (matches.isEmpty()) {
+                    traverse(element, elementState, configuration, memo);
+                } else if (isRedacted(matches)) {
+                    results[i] = REDACTED;
+                } else {
+                    results[i] = new Mapped(map(element, matches, configuration, memo));
+                }
+            }
+        }
+    }
+
+    /**
+     * whether elements of (top-level) arrays are traversed in parallel, and if so on what pool
+     */
+    @RequiredArgsConstructor
+    static class Parallelism {
+
+        static final Parallelism NONE = new Parallelism(0, null);
+
+        /**
+         * min length of an array (not itself within an array) for its elements to be traversed in
+         * parallel; 0 or less to traverse everything on calling thread
+         */
+        final int threshold;
+
+        /**
+         * on which to traverse elements, if in parallel; bounded, so concurrent requests don't
+         * multiply threads
+         */
+        final ForkJoinPool pool;
+
+        boolean appliesTo(int length) {
+            return pool != null && threshold > 0 && length >= threshold;
+        }
+    }
+
+    /**
+     * below this, cost of forking a task is significant relative to that of traversing elements
+     */
+    static final int MIN_ELEMENTS_PER_TASK = 64;
+
+    static final Object UNCHANGED = new Object();
+
+    static final Object REDACTED = new Object();
+
+    /**
+     * result of mapping an element; wrapped, as function may legitimately return null
+     */
+    @RequiredArgsConstructor
+    static class Mapped {
+        final Object value;
+    }
+
+    /**
+     * traverses a range of elements of an array, splitting it until no more than maxElements
+     *
+     * each task has its own DocumentMemo, as those aren't thread-safe; functions' results don't
+     * depend on memo, so output is same as if traversed sequentially
+     */
+    @RequiredArgsConstructor
+    class TraverseElements extends RecursiveAction {
+
+        final Object array;
+        final State state;
+        final Configuration configuration;
+        final Object[] results;
+        final int from;
+        final int to;
+        final int maxElements;
+
+        @Override
+        protected void compute() {
+            if (to - from <= maxElements) {
+                traverseElements(array, state, configuration, new DocumentMemo(), results, from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TraverseElements(array, state, configuration, results, from, middle, maxElements),
+                    new TraverseElements(array, state, configuration, results, middle, to, maxElements));
+            }
+        }
+    }
+
+    boolean isRedacted(Collection<Rule> matches) {
+        for (Rule rule : matches) {
+            if (rule.isRedaction()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    Object map(Object value, List<Rule> matches, Configuration configuration, DocumentMemo memo) {
+        for (Rule rule : matches) {
+            if (rule.memoize) {
+                value = memo.map(rule.function, value, configuration);
+            } else {
+                value = rule.function.map(value, configuration);
+            }
+        }
+        return value;
+    }
+
+    boolean accepts(SimplePath.Filter filter, Object node, Configuration configuration) {
+        if (filter.getCompiled() != null) {
+            return filter.getCompiled().test(node, configuration.jsonProvider());
+        }
+        //NOTE: array of provider's own type, as not all providers accept java.util.List as an array
+        JsonProvider jsonProvider = configuration.jsonProvider();
+        Object candidates = jsonProvider.createArray();
+        jsonProvider.setArrayIndex(candidates, 0, node);
+        Object matches = filter.getPredicate().read(candidates, configuration);
+        return jsonProvider.length(matches) > 0;
+    }
+
+    /**
+     * @return nodes, plus those active at same document node by virtue of them (descendants)
+     */
+    List<Node> closure(List<Node> nodes) {
+        List<Node> result = nodes;
+        for (int i = 0; i < result.size(); i++) {
+            Node descendants = result.get(i).descendants;
+            if (descendants != null) {
+                if (result == nodes) {
+                    result = new ArrayList<>(nodes);
+                }
+                result = add(result, descendants);
+            }
+        }
+        return result;
+    }
+
+    List<Node> add(List<Node> nodes, Node node) {
+        if (nodes.isEmpty()) {
+            nodes = new ArrayList<>(4);
+        } else if (nodes.contains(node)) {
+            return nodes;
+        }
+        nodes.add(node);
+        return nodes;
+    }
+}
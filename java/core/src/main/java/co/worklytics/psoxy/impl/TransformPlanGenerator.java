@@ -0,0 +1,284 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
+import co.worklytics.psoxy.rules.RuleSet;
+import co.worklytics.psoxy.rules.Rules2;
+import com.jayway.jsonpath.MapFunction;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * generates, at build time, a specialized TransformPlan for each distinct plan of the endpoints of
+ * PrebuiltSanitizerRules; each walks the plan's determinized states with hardcoded code, rather
+ * than looking up successors and matches in the state table:
+ *   - a method per state, switching on property names to the code for the successor state
+ *   - redactions inlined, and functions applied directly to properties, where successor matches
+ *   - a walk of a successor state called directly, where it has no filters
+ *
+ * functions of rules are still bound at runtime (they depend on salt, etc); as is whether to use a
+ * generated plan at all, by signature of structure of the plan (see TransformPlan::specialize), so
+ * a plan generated from stale rules is never used.
+ *
+ * run as annotation processor by the 'generate-transform-plans' execution of the compiler plugin,
+ * in core's pom.xml, after the rules themselves are compiled; not registered as a service, so
+ * not run by any other compilation.
+ */
+@SupportedAnnotationTypes("*")
+public class TransformPlanGenerator extends AbstractProcessor {
+
+    static final String PACKAGE = TransformPlan.class.getPackage().getName();
+
+    static final String CLASS_PREFIX = "GeneratedTransformPlan_";
+
+    /**
+     * stands in for functions of rules, which generated code doesn't depend on
+     */
+    static final MapFunction PLACEHOLDER = (value, configuration) -> value;
+
+    boolean generated = false;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (!generated) {
+            generated = true;
+            try {
+                generate(processingEnv.getFiler());
+            } catch (IOException | RuntimeException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Failed to generate transform plans for prebuilt rules: " + e);
+            }
+        }
+        return false;
+    }
+
+    void generate(Filer filer) throws IOException {
+        Map<String, TransformPlan> plans = new TreeMap<>();
+        Map<String, Set<String>> sources = new TreeMap<>();
+        for (Map.Entry<String, RuleSet> rules : PrebuiltSanitizerRules.DEFAULTS.entrySet()) {
+            if (rules.getValue() instanceof Rules2) {
+                List<Rules2.Endpoint> endpoints = ((Rules2) rules.getValue()).getEndpoints();
+                for (int i = 0; i < endpoints.size(); i++) {
+                    Optional<TransformPlan> plan = plan(endpoints.get(i));
+                    if (plan.isPresent()) {
+                        String signature = plan.get().signature();
+                        plans.putIfAbsent(signature, plan.get());
+                        sources.computeIfAbsent(signature, s -> new TreeSet<>())
+                            .add(rules.getKey() + "[" + i + "]");
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<String, TransformPlan> plan : plans.entrySet()) {
+            String className = className(plan.getKey());
+            try (Writer writer = filer.createSourceFile(PACKAGE + "." + className).openWriter()) {
+                writer.write(generatePlan(className, plan.getKey(), plan.getValue(), sources.get(plan.getKey())));
+            }
+        }
+        String registryClass = TransformPlan.GENERATED_PLANS_CLASS;
+        try (Writer writer = filer.createSourceFile(registryClass).openWriter()) {
+            writer.write(generateRegistry(registryClass.substring(PACKAGE.length() + 1), plans.keySet()));
+        }
+    }
+
+    /**
+     * @return plan for endpoint, if it can be specialized
+     */
+    static Optional<TransformPlan> plan(Rules2.Endpoint endpoint) {
+        return TransformPlan.compileGeneric(CompiledRules.planned(endpoint), transform -> PLACEHOLDER)
+            .filter(plan -> plan.complete)
+            .filter(plan -> plan.determinized.stream().anyMatch(state -> !state.matches.isEmpty()));
+    }
+
+    static String className(String signature) {
+        return CLASS_PREFIX + signature.substring(0, 16);
+    }
+
+    static String generateRegistry(String className, Set<String> signatures) {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(PACKAGE).append(";\n\n")
+            .append("import java.util.Collections;\n")
+            .append("import java.util.HashMap;\n")
+            .append("import java.util.Map;\n")
+            .append("import java.util.function.Function;\n\n")
+            .append("/**\n")
+            .append(" * GENERATED by TransformPlanGenerator; specialized plans, by signature of plans they specialize\n")
+            .append(" */\n")
+            .append("final class ").append(className).append(" {\n\n")
+            .append("    static final Map<String, Function<TransformPlan, TransformPlan>> PLANS;\n\n")
+            .append("    static {\n")
+            .append("        Map<String, Function<TransformPlan, TransformPlan>> plans = new HashMap<>();\n");
+        for (String signature : signatures) {
+            String planClass = className(signature);
+            source.append("        plans.put(").append(planClass).append(".SIGNATURE, ")
+                .append(planClass).append("::new);\n");
+        }
+        source.append("        PLANS = Collections.unmodifiableMap(plans);\n")
+            .append("    }\n")
+            .append("}\n");
+        return source.toString();
+    }
+
+    static String generatePlan(String className, String signature, TransformPlan plan, Set<String> sources) {
+        List<TransformPlan.State> states = plan.determinized;
+        Set<Integer> referenced = new TreeSet<>();
+        Set<Integer> referencedMatches = new TreeSet<>();
+        StringBuilder walks = new StringBuilder();
+        StringBuilder dispatch = new StringBuilder();
+        for (TransformPlan.State state : states) {
+            if (state.isEmpty()) {
+                continue;
+            }
+            dispatch.append("            case ").append(state.id).append(":\n")
+                .append("                walk").append(state.id)
+                .append("(value, configuration, memo, parallelism);\n")
+                .append("                break;\n");
+
+            walks.append("\n    void walk").append(state.id)
+                .append("(Object value, Configuration configuration, DocumentMemo memo, Parallelism parallelism) {\n");
+            List<String> cases = new ArrayList<>();
+            for (Map.Entry<String, TransformPlan.State> property : new TreeMap<>(state.properties).entrySet()) {
+                if (!property.getValue().isEmpty()) {
+                    cases.add("                    case " + literal(property.getKey()) + ":\n"
+                        + step(property.getValue(), referenced, referencedMatches, "                        ")
+                        + "                        break;\n");
+                }
+            }
+            boolean walksObjects = !cases.isEmpty() || !state.other.isEmpty();
+            boolean walksArrays = state.hasFilters || !state.other.isEmpty();
+            if (walksObjects || walksArrays) {
+                walks.append("        JsonProvider jsonProvider = configuration.jsonProvider();\n");
+            }
+            if (walksObjects) {
+                walks.append("        if (jsonProvider.isMap(value)) {\n")
+                    .append("            for (String key : new ArrayList<>(jsonProvider.getPropertyKeys(value))) {\n");
+                if (cases.isEmpty()) {
+                    walks.append(step(state.other, referenced, referencedMatches, "                "));
+                } else {
+                    walks.append("                switch (key) {\n");
+                    cases.forEach(walks::append);
+                    if (!state.other.isEmpty()) {
+                        walks.append("                    default:\n")
+                            .append(step(state.other, referenced, referencedMatches, "                        "));
+                    }
+                    walks.append("                }\n");
+                }
+                walks.append("            }\n")
+                    .append("        }");
+            }
+            if (walksArrays) {
+                referenced.add(state.id);
+                walks.append(walksObjects ? " else " : "        ")
+                    .append("if (jsonProvider.isArray(value)) {\n")
+                    .append("            traverseArray(value, state").append(state.id)
+                    .append(", configuration, memo, parallelism);\n")
+                    .append("        }");
+            }
+            if (walksObjects || walksArrays) {
+                walks.append('\n');
+            }
+            walks.append("    }\n");
+        }
+
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(PACKAGE).append(";\n\n")
+            .append("import com.jayway.jsonpath.Configuration;\n")
+            .append("import com.jayway.jsonpath.spi.json.JsonProvider;\n\n")
+            .append("import java.util.ArrayList;\n")
+            .append("import java.util.List;\n\n")
+            .append("/**\n")
+            .append(" * GENERATED by TransformPlanGenerator, for plan of prebuilt endpoints:\n");
+        for (String endpoint : sources) {
+            source.append(" *   ").append(endpoint).append('\n');
+        }
+        source.append(" */\n")
+            .append("final class ").append(className).append(" extends TransformPlan {\n\n")
+            .append("    static final String SIGNATURE = \"").append(signature).append("\";\n");
+        for (int id : referenced) {
+            source.append("\n    final State state").append(id).append(";\n");
+        }
+        for (int id : referencedMatches) {
+            source.append("\n    final List<Rule> matches").append(id).append(";\n");
+        }
+        source.append("\n    ").append(className).append("(TransformPlan plan) {\n")
+            .append("        super(plan);\n");
+        for (int id : referenced) {
+            source.append("        state").append(id).append(" = determinized.get(").append(id).append(");\n");
+        }
+        for (int id : referencedMatches) {
+            source.append("        matches").append(id).append(" = determinized.get(").append(id).append(").matches;\n");
+        }
+        source.append("    }\n\n")
+            .append("    @Override\n")
+            .append("    void traverse(Object value, State state, Configuration configuration, DocumentMemo memo, Parallelism parallelism) {\n")
+            .append("        switch (state.id) {\n")
+            .append(dispatch)
+            .append("            default:\n")
+            .append("                super.traverse(value, state, configuration, memo, parallelism);\n")
+            .append("        }\n")
+            .append("    }\n")
+            .append(walks)
+            .append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * @return code for what's to be done at value of property 'key' of 'value', given 'next' is its
+     *         (non-empty) state
+     */
+    static String step(TransformPlan.State next, Set<Integer> referenced, Set<Integer> referencedMatches,
+                       String indent) {
+        if (next.hasFilters) {
+            //depends on value, so as generic plan
+            referenced.add(next.id);
+            return indent + "traverseProperty(value, key, state" + next.id
+                + ", configuration, memo, parallelism);\n";
+        } else if (next.matches.isEmpty()) {
+            return indent + "walk" + next.id
+                + "(jsonProvider.getMapValue(value, key), configuration, memo, parallelism);\n";
+        } else if (next.matches.stream().anyMatch(TransformPlan.Rule::isRedaction)) {
+            return indent + "jsonProvider.removeProperty(value, key);\n";
+        } else {
+            referencedMatches.add(next.id);
+            return indent + "jsonProvider.setProperty(value, key, map(jsonProvider.getMapValue(value, key), matches"
+                + next.id + ", configuration, memo));\n";
+        }
+    }
+
+    /**
+     * @return s as a Java string literal
+     */
+    static String literal(String s) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                literal.append('\\').append('u').append(String.format("%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+}
@@ -0,0 +1,202 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.rules.Transform;
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * an ExtractUrls transform, compiled: host patterns split into labels, parameter names lower-cased;
+ * so content is tokenized, URLs matched and their queries/fragments sanitized in a single scan, without any
+ * regexes.
+ *
+ * immutable, so safe to share across threads.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class UrlExtractor {
+
+    static final String SCHEME = "https://";
+
+    static final String WILDCARD = "*";
+
+    /**
+     * labels of each allowed host; WILDCARD matches any single label
+     */
+    final List<String[]> allowedHosts;
+
+    /**
+     * lower-cased
+     */
+    final Set<String> redactQueryParameters;
+
+    static UrlExtractor compile(@NonNull Transform.ExtractUrls transform) {
+        return new UrlExtractor(
+            Collections.unmodifiableList(transform.getAllowedHosts().stream()
+                .map(host -> host.split("\\.", -1))
+                .collect(Collectors.toList())),
+            Collections.unmodifiableSet(transform.getRedactQueryParameters().stream()
+                .map(parameter -> parameter.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet())));
+    }
+
+    /**
+     * @param value free text
+     * @return URLs in value with allowed hosts, without redacted query parameters, joined by ' ';
+     *         empty if none
+     */
+    String extract(@NonNull String value) {
+        StringBuilder result = new StringBuilder();
+        int length = value.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && isWhitespace(value.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !isWhitespace(value.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                appendIfAllowed(result, value, start, i);
+            }
+        }
+        return result.toString();
+    }
+
+    // as `\s` in java.util.regex, so tokens same as FilterTokenByRegex's default delimiter yields
+    static boolean isWhitespace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    /**
+     * appends token [start, end) of value to result, sanitized, if it's a URL with an allowed host
+     */
+    void appendIfAllowed(StringBuilder result, String value, int start, int end) {
+        if (end - start <= SCHEME.length() || !value.regionMatches(true, start, SCHEME, 0, SCHEME.length())) {
+            return;
+        }
+        int hostStart = start + SCHEME.length();
+        int authorityEnd = hostStart;
+        int hostEnd = -1;
+        while (authorityEnd < end) {
+            char c = value.charAt(authorityEnd);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            } else if (c == '@') {
+                // userinfo; not something to let through
+                return;
+            } else if (c == ':' && hostEnd < 0) {
+                hostEnd = authorityEnd;
+            }
+            authorityEnd++;
+        }
+        if (hostEnd < 0) {
+            hostEnd = authorityEnd;
+        } else if (!isPort(value, hostEnd + 1, authorityEnd)) {
+            return;
+        }
+        if (!isAllowedHost(value, hostStart, hostEnd)) {
+            return;
+        }
+
+        if (result.length() > 0) {
+            result.append(' ');
+        }
+        int queryStart = value.indexOf('?', authorityEnd);
+        int fragmentStart = value.indexOf('#', authorityEnd);
+        if (fragmentStart < 0 || fragmentStart >= end) {
+            fragmentStart = end;
+        }
+        if (queryStart < 0 || queryStart >= fragmentStart) {
+            result.append(value, start, fragmentStart);
+        } else {
+            result.append(value, start, queryStart);
+            appendParameters(result, value, queryStart + 1, fragmentStart, '?');
+        }
+        if (fragmentStart < end) {
+            // fragment may carry parameters too (eg, `#pwd=...`), so redacted likewise
+            appendParameters(result, value, fragmentStart + 1, end, '#');
+        }
+    }
+
+    boolean isPort(String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isAllowedHost(String value, int start, int end) {
+        for (String[] labels : allowedHosts) {
+            if (matches(labels, value, start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean matches(String[] labels, String value, int start, int end) {
+        int labelStart = start;
+        for (int i = 0; i < labels.length; i++) {
+            int labelEnd = value.indexOf('.', labelStart);
+            if (labelEnd < 0 || labelEnd > end) {
+                labelEnd = end;
+            }
+            boolean last = i == labels.length - 1;
+            if (last != (labelEnd == end)) {
+                // host has fewer/more labels than pattern
+                return false;
+            }
+            String label = labels[i];
+            if (label.equals(WILDCARD)) {
+                if (labelEnd == labelStart) {
+                    return false;
+                }
+            } else if (labelEnd - labelStart != label.length()
+                || !value.regionMatches(true, labelStart, label, 0, label.length())) {
+                return false;
+            }
+            labelStart = labelEnd + 1;
+        }
+        return true;
+    }
+
+    /**
+     * appends `&`-delimited parameters [start, end) of value (query or fragment), without redacted
+     * parameters; and prefix before them, unless nothing left
+     */
+    void appendParameters(StringBuilder result, String value, int start, int end, char prefix) {
+        boolean first = true;
+        int parameterStart = start;
+        while (parameterStart <= end) {
+            int parameterEnd = value.indexOf('&', parameterStart);
+            if (parameterEnd < 0 || parameterEnd > end) {
+                parameterEnd = end;
+            }
+            if (!isRedacted(value, parameterStart, parameterEnd)) {
+                result.append(first ? prefix : '&').append(value, parameterStart, parameterEnd);
+                first = false;
+            }
+            parameterStart = parameterEnd + 1;
+        }
+    }
+
+    boolean isRedacted(String value, int start, int end) {
+        if (redactQueryParameters.isEmpty()) {
+            return false;
+        }
+        int nameEnd = value.indexOf('=', start);
+        if (nameEnd < 0 || nameEnd > end) {
+            nameEnd = end;
+        }
+        return redactQueryParameters.contains(value.substring(start, nameEnd).toLowerCase(Locale.ROOT));
+    }
+}
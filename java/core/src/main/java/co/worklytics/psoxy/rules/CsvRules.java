@@ -1,5 +1,6 @@
 package co.worklytics.psoxy.rules;
 
+import co.worklytics.psoxy.PseudonymEncoding;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import lombok.*;
@@ -38,4 +39,9 @@ public class CsvRules implements RuleSet {
     @Deprecated
     @Getter
     String defaultScopeIdForSource;
+
+    /**
+     * encoding of pseudonyms in sanitized content; if null, default per config
+     */
+    PseudonymEncoding pseudonymEncoding;
 }
@@ -1,7 +1,16 @@
 package co.worklytics.psoxy.rules;
 
+import co.worklytics.psoxy.PseudonymEncoding;
+
 public interface RuleSet {
 
+    /**
+     * @return encoding of pseudonyms in content sanitized with these rules; null to use default
+     */
+    default PseudonymEncoding getPseudonymEncoding() {
+        return null;
+    }
+
     @Deprecated // migrate to use transform-level ids
     String getDefaultScopeIdForSource();
 }
@@ -1,6 +1,7 @@
 package co.worklytics.psoxy.rules;
 
 
+import co.worklytics.psoxy.PseudonymEncoding;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import lombok.*;
@@ -40,6 +41,11 @@ public class Rules2 implements RuleSet, Serializable {
     @Builder.Default
     Boolean allowAllEndpoints = false;
 
+    /**
+     * encoding of pseudonyms in content sanitized with these rules; if null, default per config
+     */
+    PseudonymEncoding pseudonymEncoding;
+
 
     /**
      * add endpoints from other ruleset to this one
@@ -68,9 +74,25 @@ public class Rules2 implements RuleSet, Serializable {
 
         String pathRegex;
 
+        /**
+         * alternative to pathRegex; path with `{name}` placeholders for single segments, eg
+         * `/calendar/v3/calendars/{calendarId}/events`. literal segments are case-insensitive, and
+         * any query string is accepted.
+         *
+         * routed without regex matching, so cheaper where it's expressive enough.
+         */
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        String pathTemplate;
+
         @JsonInclude(value=JsonInclude.Include.NON_EMPTY)
         @Singular
         List<Transform> transforms = new ArrayList<>();
+
+        /**
+         * encoding of pseudonyms in content of this endpoint; if null, as for rules
+         */
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        PseudonymEncoding pseudonymEncoding;
     }
 
 
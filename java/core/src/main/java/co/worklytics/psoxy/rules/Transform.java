@@ -13,10 +13,12 @@ import java.util.Set;
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "method")
 @JsonSubTypes({
     @JsonSubTypes.Type(value = Transform.Redact.class, name = "redact"),
+    @JsonSubTypes.Type(value = Transform.Keep.class, name = "keep"),
     @JsonSubTypes.Type(value = Transform.RedactRegexMatches.class, name = "redactRegexMatches"),
     @JsonSubTypes.Type(value = Transform.Pseudonymize.class, name = "pseudonymize"),
     @JsonSubTypes.Type(value = Transform.PseudonymizeEmailHeader.class, name = "pseudonymizeEmailHeader"),
     @JsonSubTypes.Type(value = Transform.FilterTokenByRegex.class, name = "filterTokenByRegex"),
+    @JsonSubTypes.Type(value = Transform.ExtractUrls.class, name = "extractUrls"),
 })
 @SuperBuilder(toBuilder = true)
 @AllArgsConstructor //for builder
@@ -63,6 +65,43 @@ public abstract class Transform {
         }
     }
 
+    /**
+     * inverse of redact: keep ONLY values that match jsonPaths (and the objects/arrays containing
+     * them); everything else in document is removed.
+     *
+     * paths are limited to properties, deep scans (`..`), wildcards and filters; array indexes,
+     * slices and functions are NOT supported.
+     */
+    @NoArgsConstructor //for jackson
+    @SuperBuilder
+    @Getter
+    @EqualsAndHashCode(callSuper = true)
+    public static class Keep extends Transform {
+
+        public static Keep ofPaths(String... jsonPaths) {
+            return Keep.builder().jsonPaths(Arrays.asList(jsonPaths)).build();
+        }
+    }
+
+    /**
+     * engine with which to match a transform's regexes
+     */
+    public enum RegexEngine {
+
+        /**
+         * java.util.regex; full syntax, but backtracks, so time to match may be exponential in
+         * length of content for some regexes
+         */
+        JAVA,
+
+        /**
+         * time to match linear in length of content, whatever the regex; but only subset of
+         * java.util.regex syntax that doesn't need backtracking (see LinearRegex)
+         */
+        LINEAR,
+        ;
+    }
+
     @NoArgsConstructor //for jackson
     @SuperBuilder(toBuilder = true)
     @Getter
@@ -75,6 +114,12 @@ public abstract class Transform {
          */
         @Singular
         List<String> redactions;
+
+        /**
+         * engine with which to match redactions; if null, JAVA
+         */
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        RegexEngine engine;
     }
 
     /**
@@ -99,6 +144,43 @@ public abstract class Transform {
          */
         @Singular
         List<String> filters;
+
+        /**
+         * engine with which to match delimiter and filters; if null, JAVA
+         */
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        RegexEngine engine;
+    }
+
+    /**
+     * transform to extract URLs from free text, in a single pass: redact content EXCEPT https URLs
+     * whose host matches one of allowedHosts, from which any of redactQueryParameters are stripped.
+     *
+     * URLs are the whitespace-delimited tokens of content that are such URLs in their entirety;
+     * those kept are joined by ' '.
+     *
+     * eg, `Join at https://acme.zoom.us/j/123?pwd=abc&from=addon !` --> `https://acme.zoom.us/j/123?from=addon`
+     */
+    @NoArgsConstructor //for jackson
+    @SuperBuilder(toBuilder = true)
+    @Getter
+    @ToString
+    @EqualsAndHashCode(callSuper = true)
+    public static class ExtractUrls extends Transform {
+
+        /**
+         * hosts of URLs to keep, case-insensitive; `*` matches any single label (eg, `*.zoom.us`)
+         */
+        @Singular
+        List<String> allowedHosts;
+
+        /**
+         * names of query parameters to strip from URLs kept (with their values), case-insensitive;
+         * stripped from fragment too, if it's `&`-delimited parameters (eg, `#pwd=abc`)
+         */
+        @JsonInclude(JsonInclude.Include.NON_EMPTY)
+        @Singular
+        List<String> redactQueryParameters;
     }
 
 
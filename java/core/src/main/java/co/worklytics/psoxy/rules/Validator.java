@@ -1,5 +1,6 @@
 package co.worklytics.psoxy.rules;
 
+import co.worklytics.psoxy.utils.LinearRegex;
 import com.google.common.base.Preconditions;
 import com.jayway.jsonpath.JsonPath;
 import lombok.NonNull;
@@ -7,6 +8,7 @@ import org.apache.commons.lang3.NotImplementedException;
 
 import javax.annotation.Nullable;
 import java.util.List;
+import java.util.Optional;
 import java.util.regex.Pattern;
 
 public class Validator {
@@ -29,8 +31,19 @@ public class Validator {
     static public void validate(@NonNull Rules2 rules) {
         rules.getEndpoints().forEach(Validator::validate);
     }
+    static final Pattern PATH_TEMPLATE = Pattern.compile("(/([^/{}?#]+|\\{[A-Za-z0-9_]+\\}))+");
+
+    static final Pattern HOST_PATTERN = Pattern.compile("(\\*|[A-Za-z0-9-]+)(\\.(\\*|[A-Za-z0-9-]+))*");
+
     static void validate(@NonNull Rules2.Endpoint endpoint) {
-        Pattern.compile(endpoint.getPathRegex());
+        Preconditions.checkArgument(endpoint.getPathRegex() == null ^ endpoint.getPathTemplate() == null,
+            "Endpoint must have exactly one of pathRegex or pathTemplate");
+        if (endpoint.getPathTemplate() != null) {
+            Preconditions.checkArgument(PATH_TEMPLATE.matcher(endpoint.getPathTemplate()).matches(),
+                "Invalid pathTemplate: " + endpoint.getPathTemplate());
+        } else {
+            Pattern.compile(endpoint.getPathRegex());
+        }
         endpoint.getTransforms().forEach(Validator::validate);
     }
 
@@ -42,6 +55,34 @@ public class Validator {
                 throw new Error("JsonPath failed to compile: " + p, e);
             }
         });
+        if (transform instanceof Transform.RedactRegexMatches) {
+            Transform.RedactRegexMatches redactRegexMatches = (Transform.RedactRegexMatches) transform;
+            redactRegexMatches.getRedactions()
+                .forEach(regex -> validateRegex(regex, redactRegexMatches.getEngine()));
+        } else if (transform instanceof Transform.FilterTokenByRegex) {
+            Transform.FilterTokenByRegex filterTokenByRegex = (Transform.FilterTokenByRegex) transform;
+            Optional.ofNullable(filterTokenByRegex.getDelimiter())
+                .ifPresent(regex -> validateRegex(regex, filterTokenByRegex.getEngine()));
+            filterTokenByRegex.getFilters()
+                .forEach(regex -> validateRegex(regex, filterTokenByRegex.getEngine()));
+        } else if (transform instanceof Transform.ExtractUrls) {
+            List<String> allowedHosts = ((Transform.ExtractUrls) transform).getAllowedHosts();
+            Preconditions.checkArgument(!allowedHosts.isEmpty(), "extractUrls must have allowedHosts");
+            allowedHosts.forEach(host -> Preconditions.checkArgument(HOST_PATTERN.matcher(host).matches(),
+                "Invalid allowedHost: " + host));
+        }
+    }
+
+    static void validateRegex(@NonNull String regex, @Nullable Transform.RegexEngine engine) {
+        try {
+            if (engine == Transform.RegexEngine.LINEAR) {
+                LinearRegex.compile(regex);
+            } else {
+                Pattern.compile(regex);
+            }
+        } catch (Throwable e) {
+            throw new Error("Regex failed to compile for " + Optional.ofNullable(engine).orElse(Transform.RegexEngine.JAVA) + " engine: " + regex, e);
+        }
     }
 
 }
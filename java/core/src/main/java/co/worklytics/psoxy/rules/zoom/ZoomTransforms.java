@@ -17,4 +17,16 @@ public class ZoomTransforms {
             .filter("https://[^.]+\\.zoom\\.us/.*")
             .build();
 
+    /**
+     * fuses FILTER_CONTENT_EXCEPT_ZOOM_URL and SANITIZE_JOIN_URL into single pass over content
+     *
+     * opt-in, for custom rules; NOT used by prebuilt rules, as its output differs from that chain's
+     * (see SanitizerImplTest::extractUrls_vsChain), so would change both sanitized output and rules SHA
+     */
+    public static final Transform.ExtractUrls EXTRACT_ZOOM_URLS =
+        Transform.ExtractUrls.builder()
+            .allowedHost("*.zoom.us")
+            .redactQueryParameter("pwd")
+            .build();
+
 }
@@ -1,16 +1,17 @@
 package co.worklytics.psoxy.storage.impl;
 
+import co.worklytics.psoxy.PseudonymEncoding;
+import co.worklytics.psoxy.PseudonymizedIdentity;
 import co.worklytics.psoxy.rules.CsvRules;
 import co.worklytics.psoxy.Sanitizer;
 import co.worklytics.psoxy.storage.FileHandler;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.inject.Inject;
@@ -29,9 +30,6 @@ import java.util.stream.Collectors;
 @NoArgsConstructor(onConstructor_ = @Inject)
 public class CSVFileHandler implements FileHandler {
 
-    @Inject
-    ObjectMapper objectMapper;
-
     @Override
     public byte[] handle(@NonNull InputStreamReader reader, @NonNull Sanitizer sanitizer) throws IOException {
         CSVParser records = CSVFormat.DEFAULT
@@ -77,22 +75,40 @@ public class CSVFileHandler implements FileHandler {
                 Preconditions.checkArgument(headersCI.contains(columnToPseudonymize), "Column %s to be pseudonymized not in file", columnToPseudonymize));
 
 
+        List<CSVRecord> rows = records.getRecords();
+
+        // pseudonymize each distinct value once, rather than once per row in which it appears
+        Set<String> toPseudonymize = new HashSet<>();
+        List<String> pseudonymizedColumns = headers.stream()
+            .filter(columnsToPseudonymize::contains)
+            .collect(Collectors.toList());
+        for (CSVRecord row : rows) {
+            for (String column : pseudonymizedColumns) {
+                String value = row.get(column);
+                if (StringUtils.isNotBlank(value)) {
+                    toPseudonymize.add(value);
+                }
+            }
+        }
+        PseudonymEncoding encoding = Optional.ofNullable(options.getRules().getPseudonymEncoding())
+            .orElse(options.getPseudonymEncoding());
+        Map<String, String> pseudonyms = new HashMap<>();
+        for (Map.Entry<String, PseudonymizedIdentity> pseudonym : sanitizer.pseudonymizeAll(toPseudonymize).entrySet()) {
+            pseudonyms.put(pseudonym.getKey(), sanitizer.encode(pseudonym.getValue(), encoding));
+        }
+
         try(ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
             PrintWriter printWriter = new PrintWriter(baos);
             CSVPrinter printer = new CSVPrinter(printWriter, CSVFormat.DEFAULT
                 .withHeader(headers.toArray(new String[0])))) {
 
-            records.forEach(row -> {
+            rows.forEach(row -> {
                 List<Object> sanitized = headers.stream() // only iterate on allowed headers
                         .map(column -> {
                             String value = row.get(column);
                             if (columnsToPseudonymize.contains(column)) {
                                 if (StringUtils.isNotBlank(value)) {
-                                    try {
-                                        return objectMapper.writeValueAsString(sanitizer.pseudonymize(value));
-                                    } catch (JsonProcessingException e) {
-                                        throw new RuntimeException(e);
-                                    }
+                                    return pseudonyms.get(value);
                                 }
                             }
                             return value;
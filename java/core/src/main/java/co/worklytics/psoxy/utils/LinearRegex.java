@@ -0,0 +1,1088 @@
+package co.worklytics.psoxy.utils;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/**
+ * regex, matched in time linear in the length of input (times size of regex), whatever the regex
+ * and input; unlike java.util.regex, which backtracks and so may take time exponential in length of
+ * input for some regexes (eg, `(a|aa)*b`) - which adversarial content can exploit.
+ *
+ * regex is compiled into a Thompson NFA. matches are found by simulating it in lockstep, with
+ * threads ordered by priority (a 'Pike VM', as in RE2), so are the same matches java.util.regex
+ * would find: leftmost; alternatives, greedy and lazy quantifiers preferred in same order.
+ * full matches of regexes without anchors run on a DFA, built lazily from the NFA and cached.
+ *
+ * supports the subset of java.util.regex syntax that doesn't need backtracking:
+ *   - literals, `.`, escapes (`\.`, `\t`, `\n`, `\r`, `\f`, `\xhh`, and 4-digit unicode escapes)
+ *   - classes: `[a-z_]`, `[^&]`, `\d`, `\D`, `\w`, `\W`, `\s`, `\S`
+ *   - groups: `(...)`, `(?:...)`, `(?<name>...)`; alternation `|`
+ *   - quantifiers: `*`, `+`, `?`, `{n}`, `{n,}`, `{n,m}`, and lazy variants of them
+ *   - anchors: `^`, `$`, `\A`, `\Z`, `\z`
+ *   - flags: `(?i)`, `(?s)`, at start of regex
+ *
+ * anything else (backreferences, lookaround, possessive quantifiers, word boundaries, other flags,
+ * etc) is rejected with an IllegalArgumentException; as is repetition (other than `?`) of anything
+ * that can match nothing (eg, `(a*)*`, `(^|a)+`), where java.util.regex's handling of empty
+ * iterations would give different matches.
+ *
+ * thread-safe; Matchers are not.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class LinearRegex {
+
+    /**
+     * limit on size of compiled program; bounds cost per char of input (eg, `(a{1000}){1000}`)
+     */
+    static final int MAX_INSTRUCTIONS = 10_000;
+
+    /**
+     * limit on number of DFA states cached per regex; beyond which, states are computed as needed
+     * (still in linear time) but not retained
+     */
+    static final int MAX_DFA_STATES = 4_096;
+
+    @Getter
+    final String pattern;
+
+    final Program program;
+
+    final Map<StateKey, State> dfaStates = new ConcurrentHashMap<>();
+
+    final AtomicInteger dfaStateCount = new AtomicInteger();
+
+    /**
+     * @param regex to compile
+     * @return regex, compiled for linear-time matching
+     * @throws IllegalArgumentException if regex is invalid or uses syntax not supported
+     */
+    public static LinearRegex compile(@NonNull String regex) {
+        Parser parser = new Parser(regex);
+        Node root = parser.parse();
+        Program.Builder builder = new Program.Builder();
+        root.emit(builder);
+        builder.add(Op.MATCH, 0, 0, null);
+        return new LinearRegex(regex, builder.build());
+    }
+
+    public Matcher matcher(@NonNull CharSequence input) {
+        return new Matcher(input);
+    }
+
+    /**
+     * @return whether whole of input matches regex
+     */
+    public boolean matches(@NonNull CharSequence input) {
+        if (program.hasAssertions) {
+            return matcher(input).matches();
+        }
+        State state = startState();
+        for (int i = 0; i < input.length(); ) {
+            int c = Character.codePointAt(input, i);
+            state = state.next(c);
+            if (state.pcs.length == 0) {
+                return false;
+            }
+            i += Character.charCount(c);
+        }
+        return state.accepting;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    /**
+     * matches of regex in some input, as with java.util.regex.Matcher
+     */
+    public class Matcher {
+
+        final CharSequence input;
+
+        int[] current;
+        int[] currentStarts;
+        int currentSize;
+        int[] next;
+        int[] nextStarts;
+        int nextSize;
+
+        // sparse set of pcs visited while computing closure at a position
+        final int[] visited;
+        final int[] visitedDense;
+        int visitedMark = 0;
+
+        final int[] stack;
+
+        int start = -1;
+        int end = -1;
+
+        // where to search from next; as Matcher::find, past an empty match
+        int from = 0;
+
+        Matcher(CharSequence input) {
+            this.input = input;
+            int size = program.ops.length;
+            current = new int[size];
+            currentStarts = new int[size];
+            next = new int[size];
+            nextStarts = new int[size];
+            visited = new int[size];
+            visitedDense = new int[size];
+            stack = new int[size * 2 + 2];
+        }
+
+        /**
+         * @return whether another match found; if so, see start() and end()
+         */
+        public boolean find() {
+            if (start >= 0 && end == start) {
+                from = end + 1;
+            }
+            if (from > input.length()) {
+                start = end = -1;
+                return false;
+            }
+            if (search(from, false)) {
+                from = end;
+                return true;
+            }
+            from = input.length() + 1;
+            return false;
+        }
+
+        /**
+         * @return whether whole of input matches regex
+         */
+        public boolean matches() {
+            return search(0, true);
+        }
+
+        public int start() {
+            if (start < 0) {
+                throw new IllegalStateException("No match available");
+            }
+            return start;
+        }
+
+        public int end() {
+            if (start < 0) {
+                throw new IllegalStateException("No match available");
+            }
+            return end;
+        }
+
+        /**
+         * @param replacement literal string, to replace each match with
+         * @return input, with all matches replaced
+         */
+        public String replaceAll(@NonNull String replacement) {
+            StringBuilder result = null;
+            int copied = 0;
+            while (find()) {
+                if (result == null) {
+                    result = new StringBuilder(input.length());
+                }
+                result.append(input, copied, start).append(replacement);
+                copied = end;
+            }
+            if (result == null) {
+                return input.toString();
+            }
+            return result.append(input, copied, input.length()).toString();
+        }
+
+        /**
+         * simulates NFA from position `from`
+         *
+         * @param anchored if true, match must start at `from` and end at end of input
+         * @return whether match found; if so, sets start and end
+         */
+        boolean search(int from, boolean anchored) {
+            int length = input.length();
+            currentSize = 0;
+            int matchStart = -1;
+            int matchEnd = -1;
+            for (int pos = from; ; ) {
+                if (currentSize == 0 && matchStart < 0 && !anchored) {
+                    pos = skipToCandidate(pos);
+                }
+                if (matchStart < 0 && (pos == from || !anchored)) {
+                    // new thread, starting here; lowest priority, as any starting earlier preferred
+                    visitedMark = 0;
+                    for (int i = 0; i < currentSize; i++) {
+                        markVisited(current[i]);
+                    }
+                    currentSize = addThread(current, currentStarts, currentSize, 0, pos, pos);
+                }
+                if (currentSize == 0 && (matchStart >= 0 || anchored)) {
+                    break;
+                }
+                int c = pos < length ? Character.codePointAt(input, pos) : -1;
+                int nextPos = c < 0 ? pos : pos + Character.charCount(c);
+                nextSize = 0;
+                visitedMark = 0;
+                for (int i = 0; i < currentSize; i++) {
+                    int pc = current[i];
+                    if (program.ops[pc] == Op.MATCH) {
+                        if (!anchored || pos == length) {
+                            matchStart = currentStarts[i];
+                            matchEnd = pos;
+                            // lower priority threads can't yield a preferred match
+                            break;
+                        }
+                    } else if (c >= 0 && program.chars[pc].test(c)) {
+                        nextSize = addThread(next, nextStarts, nextSize, pc + 1, currentStarts[i], nextPos);
+                    }
+                }
+                if (c < 0) {
+                    break;
+                }
+                swap();
+                pos = nextPos;
+            }
+            if (matchStart >= 0) {
+                start = matchStart;
+                end = matchEnd;
+                return true;
+            } else {
+                start = end = -1;
+                return false;
+            }
+        }
+
+        /**
+         * @return first position, from pos, at which a match could start (or end of input, if none)
+         */
+        int skipToCandidate(int pos) {
+            if (program.firstChars == null) {
+                return pos;
+            }
+            int length = input.length();
+            while (pos < length) {
+                int c = Character.codePointAt(input, pos);
+                for (IntPredicate first : program.firstChars) {
+                    if (first.test(c)) {
+                        return pos;
+                    }
+                }
+                pos += Character.charCount(c);
+            }
+            return pos;
+        }
+
+        void swap() {
+            int[] tmp = current;
+            current = next;
+            next = tmp;
+            tmp = currentStarts;
+            currentStarts = nextStarts;
+            nextStarts = tmp;
+            currentSize = nextSize;
+        }
+
+        /**
+         * adds thread at pc, and all reachable from it without consuming input, to list, in order of
+         * priority
+         *
+         * @return new size of list
+         */
+        int addThread(int[] pcs, int[] starts, int size, int pc, int threadStart, int pos) {
+            int top = 0;
+            stack[top++] = pc;
+            while (top > 0) {
+                pc = stack[--top];
+                if (isVisited(pc)) {
+                    continue;
+                }
+                markVisited(pc);
+                switch (program.ops[pc]) {
+                    case Op.JMP:
+                        stack[top++] = program.x[pc];
+                        break;
+                    case Op.SPLIT:
+                        // y first, so x (preferred) popped first
+                        stack[top++] = program.y[pc];
+                        stack[top++] = program.x[pc];
+                        break;
+                    case Op.ASSERT:
+                        if (holds(program.x[pc], pos)) {
+                            stack[top++] = pc + 1;
+                        }
+                        break;
+                    default:
+                        pcs[size] = pc;
+                        starts[size] = threadStart;
+                        size++;
+                }
+            }
+            return size;
+        }
+
+        boolean isVisited(int pc) {
+            int i = visited[pc];
+            return i < visitedMark && visitedDense[i] == pc;
+        }
+
+        void markVisited(int pc) {
+            visited[pc] = visitedMark;
+            visitedDense[visitedMark++] = pc;
+        }
+
+        boolean holds(int assertion, int pos) {
+            int length = input.length();
+            switch (assertion) {
+                case Assertion.BEGIN:
+                    return pos == 0;
+                case Assertion.END:
+                    return pos == length;
+                case Assertion.END_OR_FINAL_TERMINATOR:
+                    // as java.util.regex's `$`, without MULTILINE or UNIX_LINES
+                    if (pos == length) {
+                        return true;
+                    } else if (pos == length - 2) {
+                        return input.charAt(pos) == '\r' && input.charAt(pos + 1) == '\n';
+                    } else if (pos == length - 1) {
+                        char c = input.charAt(pos);
+                        if (c == '\n') {
+                            return pos == 0 || input.charAt(pos - 1) != '\r';
+                        }
+                        return c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+                    }
+                    return false;
+                default:
+                    throw new IllegalStateException("Unknown assertion: " + assertion);
+            }
+        }
+    }
+
+    // DFA, for regexes without assertions; each state is set of pcs of threads at CHAR/MATCH ops
+
+    State startState() {
+        return state(closure(new int[]{0}, 1));
+    }
+
+    /**
+     * @return pcs of CHAR/MATCH ops reachable from given pcs without consuming input, sorted
+     */
+    int[] closure(int[] pcs, int size) {
+        boolean[] visited = new boolean[program.ops.length];
+        int[] stack = new int[program.ops.length * 2 + 2];
+        int top = 0;
+        for (int i = 0; i < size; i++) {
+            stack[top++] = pcs[i];
+        }
+        int[] result = new int[program.ops.length];
+        int resultSize = 0;
+        while (top > 0) {
+            int pc = stack[--top];
+            if (visited[pc]) {
+                continue;
+            }
+            visited[pc] = true;
+            switch (program.ops[pc]) {
+                case Op.JMP:
+                    stack[top++] = program.x[pc];
+                    break;
+                case Op.SPLIT:
+                    stack[top++] = program.y[pc];
+                    stack[top++] = program.x[pc];
+                    break;
+                default:
+                    result[resultSize++] = pc;
+            }
+        }
+        int[] sorted = Arrays.copyOf(result, resultSize);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    State state(int[] pcs) {
+        StateKey key = new StateKey(pcs);
+        State state = dfaStates.get(key);
+        if (state == null) {
+            boolean accepting = false;
+            for (int pc : pcs) {
+                accepting |= program.ops[pc] == Op.MATCH;
+            }
+            if (dfaStateCount.get() < MAX_DFA_STATES) {
+                state = new State(pcs, accepting, true);
+                State existing = dfaStates.putIfAbsent(key, state);
+                if (existing == null) {
+                    dfaStateCount.incrementAndGet();
+                } else {
+                    state = existing;
+                }
+            } else {
+                state = new State(pcs, accepting, false);
+            }
+        }
+        return state;
+    }
+
+    @RequiredArgsConstructor
+    class State {
+
+        final int[] pcs;
+
+        final boolean accepting;
+
+        // whether retained, so worth caching transitions from
+        final boolean cached;
+
+        // transitions, as computed; writes may race, but states are immutable so any is as good
+        final State[] ascii = new State[128];
+
+        final Map<Integer, State> other = new ConcurrentHashMap<>();
+
+        State next(int c) {
+            State next = c < 128 ? ascii[c] : other.get(c);
+            if (next == null) {
+                int[] targets = new int[pcs.length];
+                int size = 0;
+                for (int pc : pcs) {
+                    if (program.ops[pc] == Op.CHAR && program.chars[pc].test(c)) {
+                        targets[size++] = pc + 1;
+                    }
+                }
+                next = state(closure(targets, size));
+                if (cached) {
+                    if (c < 128) {
+                        ascii[c] = next;
+                    } else if (other.size() < 256) {
+                        other.put(c, next);
+                    }
+                }
+            }
+            return next;
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class StateKey {
+
+        final int[] pcs;
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StateKey && Arrays.equals(pcs, ((StateKey) o).pcs);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(pcs);
+        }
+    }
+
+    // program
+
+    static class Op {
+        static final int CHAR = 0;
+        static final int MATCH = 1;
+        static final int JMP = 2;
+        static final int SPLIT = 3;
+        static final int ASSERT = 4;
+    }
+
+    static class Assertion {
+        static final int BEGIN = 0;
+        static final int END = 1;
+        static final int END_OR_FINAL_TERMINATOR = 2;
+    }
+
+    @RequiredArgsConstructor
+    static class Program {
+
+        final int[] ops;
+
+        // JMP: target; SPLIT: preferred target; ASSERT: assertion
+        final int[] x;
+
+        // SPLIT: other target
+        final int[] y;
+
+        // CHAR: chars matched
+        final IntPredicate[] chars;
+
+        final boolean hasAssertions;
+
+        /**
+         * chars with which any match must begin; null if a match may begin otherwise (eg, be empty)
+         */
+        final IntPredicate[] firstChars;
+
+        static class Builder {
+            final List<Integer> ops = new ArrayList<>();
+            final List<Integer> x = new ArrayList<>();
+            final List<Integer> y = new ArrayList<>();
+            final List<IntPredicate> chars = new ArrayList<>();
+
+            int pc() {
+                return ops.size();
+            }
+
+            int add(int op, int x, int y, IntPredicate chars) {
+                if (ops.size() >= MAX_INSTRUCTIONS) {
+                    throw new IllegalArgumentException("Regex too large to compile for linear-time matching");
+                }
+                ops.add(op);
+                this.x.add(x);
+                this.y.add(y);
+                this.chars.add(chars);
+                return ops.size() - 1;
+            }
+
+            void patch(int pc, int x, int y) {
+                this.x.set(pc, x);
+                this.y.set(pc, y);
+            }
+
+            Program build() {
+                int[] ops = this.ops.stream().mapToInt(Integer::intValue).toArray();
+                return new Program(ops,
+                    this.x.stream().mapToInt(Integer::intValue).toArray(),
+                    this.y.stream().mapToInt(Integer::intValue).toArray(),
+                    this.chars.toArray(new IntPredicate[0]),
+                    Arrays.stream(ops).anyMatch(op -> op == Op.ASSERT),
+                    firstChars());
+            }
+
+            IntPredicate[] firstChars() {
+                List<IntPredicate> firstChars = new ArrayList<>();
+                boolean[] visited = new boolean[ops.size()];
+                List<Integer> stack = new ArrayList<>();
+                stack.add(0);
+                while (!stack.isEmpty()) {
+                    int pc = stack.remove(stack.size() - 1);
+                    if (visited[pc]) {
+                        continue;
+                    }
+                    visited[pc] = true;
+                    switch (ops.get(pc)) {
+                        case Op.CHAR:
+                            firstChars.add(chars.get(pc));
+                            break;
+                        case Op.JMP:
+                            stack.add(x.get(pc));
+                            break;
+                        case Op.SPLIT:
+                            stack.add(x.get(pc));
+                            stack.add(y.get(pc));
+                            break;
+                        default:
+                            // MATCH or ASSERT; so match could begin anywhere
+                            return null;
+                    }
+                }
+                return firstChars.toArray(new IntPredicate[0]);
+            }
+        }
+    }
+
+    // syntax tree
+
+    interface Node {
+        void emit(Program.Builder program);
+
+        /**
+         * @return whether may match without consuming input
+         */
+        boolean isNullable();
+    }
+
+    @RequiredArgsConstructor
+    static class CharNode implements Node {
+        final IntPredicate chars;
+
+        @Override
+        public void emit(Program.Builder program) {
+            program.add(Op.CHAR, 0, 0, chars);
+        }
+
+        @Override
+        public boolean isNullable() {
+            return false;
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class AssertNode implements Node {
+        final int assertion;
+
+        @Override
+        public void emit(Program.Builder program) {
+            program.add(Op.ASSERT, assertion, 0, null);
+        }
+
+        @Override
+        public boolean isNullable() {
+            return true;
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class ConcatNode implements Node {
+        final List<Node> nodes;
+
+        @Override
+        public void emit(Program.Builder program) {
+            nodes.forEach(node -> node.emit(program));
+        }
+
+        @Override
+        public boolean isNullable() {
+            return nodes.stream().allMatch(Node::isNullable);
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class AlternationNode implements Node {
+        final List<Node> alternatives;
+
+        @Override
+        public void emit(Program.Builder program) {
+            List<Integer> jumps = new ArrayList<>();
+            for (int i = 0; i < alternatives.size() - 1; i++) {
+                int split = program.add(Op.SPLIT, 0, 0, null);
+                alternatives.get(i).emit(program);
+                jumps.add(program.add(Op.JMP, 0, 0, null));
+                program.patch(split, split + 1, program.pc());
+            }
+            alternatives.get(alternatives.size() - 1).emit(program);
+            for (int jump : jumps) {
+                program.patch(jump, program.pc(), 0);
+            }
+        }
+
+        @Override
+        public boolean isNullable() {
+            return alternatives.stream().anyMatch(Node::isNullable);
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class RepeatNode implements Node {
+        final Node node;
+        final int min;
+        // -1 if unbounded
+        final int max;
+        final boolean greedy;
+
+        @Override
+        public void emit(Program.Builder program) {
+            for (int i = 0; i < min; i++) {
+                node.emit(program);
+            }
+            if (max < 0) {
+                // L: split body, out; body; jmp L
+                int split = program.add(Op.SPLIT, 0, 0, null);
+                node.emit(program);
+                program.add(Op.JMP, split, 0, null);
+                patchSplit(program, split, split + 1, program.pc());
+            } else {
+                // nested optionals, (x(x)?)?, so each further repetition preferred (or not) in turn
+                List<Integer> splits = new ArrayList<>();
+                for (int i = min; i < max; i++) {
+                    splits.add(program.add(Op.SPLIT, 0, 0, null));
+                    node.emit(program);
+                }
+                int out = program.pc();
+                for (int split : splits) {
+                    patchSplit(program, split, split + 1, out);
+                }
+            }
+        }
+
+        @Override
+        public boolean isNullable() {
+            return min == 0 || node.isNullable();
+        }
+
+        void patchSplit(Program.Builder program, int split, int body, int out) {
+            if (greedy) {
+                program.patch(split, body, out);
+            } else {
+                program.patch(split, out, body);
+            }
+        }
+    }
+
+    // char predicates
+
+    static boolean isAsciiLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    static int asciiToggleCase(int c) {
+        return isAsciiLetter(c) ? c ^ 0x20 : c;
+    }
+
+    static final IntPredicate DIGIT = c -> c >= '0' && c <= '9';
+    static final IntPredicate WORD = c -> isAsciiLetter(c) || DIGIT.test(c) || c == '_';
+    static final IntPredicate SPACE = c -> c == ' ' || (c >= '\t' && c <= '\r');
+    static final IntPredicate LINE_TERMINATOR = c -> c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+
+    @RequiredArgsConstructor
+    private static class Parser {
+
+        final String regex;
+
+        int i = 0;
+
+        boolean caseInsensitive = false;
+
+        boolean dotAll = false;
+
+        final Set<String> groupNames = new HashSet<>();
+
+        Node parse() {
+            flags();
+            Node node = alternation();
+            if (i < regex.length()) {
+                throw unsupported("unexpected '" + regex.charAt(i) + "'");
+            }
+            return node;
+        }
+
+        void flags() {
+            while (regex.startsWith("(?", i) && i + 2 < regex.length() && Character.isLetter(regex.charAt(i + 2))) {
+                int j = i + 2;
+                for (; j < regex.length() && regex.charAt(j) != ')'; j++) {
+                    char flag = regex.charAt(j);
+                    if (flag == 'i') {
+                        caseInsensitive = true;
+                    } else if (flag == 's') {
+                        dotAll = true;
+                    } else {
+                        throw unsupported("flag '" + flag + "'");
+                    }
+                }
+                if (j == regex.length()) {
+                    throw unsupported("unclosed flags");
+                }
+                i = j + 1;
+            }
+        }
+
+        Node alternation() {
+            List<Node> alternatives = new ArrayList<>();
+            alternatives.add(concatenation());
+            while (peek() == '|') {
+                i++;
+                alternatives.add(concatenation());
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new AlternationNode(alternatives);
+        }
+
+        Node concatenation() {
+            List<Node> nodes = new ArrayList<>();
+            while (i < regex.length() && peek() != '|' && peek() != ')') {
+                nodes.add(repetition());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new ConcatNode(nodes);
+        }
+
+        Node repetition() {
+            Node atom = atom();
+            int min;
+            int max;
+            char c = peek();
+            if (c == '*') {
+                min = 0;
+                max = -1;
+                i++;
+            } else if (c == '+') {
+                min = 1;
+                max = -1;
+                i++;
+            } else if (c == '?') {
+                min = 0;
+                max = 1;
+                i++;
+            } else if (c == '{') {
+                i++;
+                min = number();
+                max = min;
+                if (peek() == ',') {
+                    i++;
+                    max = peek() == '}' ? -1 : number();
+                }
+                expect('}');
+                if (max >= 0 && max < min) {
+                    throw unsupported("illegal repetition range");
+                }
+            } else {
+                return atom;
+            }
+            boolean greedy = true;
+            if (peek() == '?') {
+                greedy = false;
+                i++;
+            } else if (peek() == '+') {
+                throw unsupported("possessive quantifier");
+            }
+            if (peek() == '*' || peek() == '+' || peek() == '?' || peek() == '{') {
+                throw unsupported("dangling quantifier");
+            }
+            if ((max < 0 || max > 1) && atom.isNullable()) {
+                // java.util.regex ends such a loop after an iteration that matches nothing, which
+                // needs per-thread state to emulate; so matches might differ
+                throw unsupported("repetition of something that may match nothing");
+            }
+            return new RepeatNode(atom, min, max, greedy);
+        }
+
+        int number() {
+            int start = i;
+            while (Character.isDigit(peek())) {
+                i++;
+            }
+            if (start == i || i - start > 4) {
+                throw unsupported("repetition count");
+            }
+            return Integer.parseInt(regex.substring(start, i));
+        }
+
+        Node atom() {
+            char c = peek();
+            switch (c) {
+                case '(':
+                    i++;
+                    if (regex.startsWith("?:", i)) {
+                        i += 2;
+                    } else if (regex.startsWith("?<", i) && i + 2 < regex.length() && isAsciiLetter(regex.charAt(i + 2))) {
+                        int close = regex.indexOf('>', i);
+                        if (close < 0) {
+                            throw unsupported("unclosed group name");
+                        }
+                        String name = regex.substring(i + 2, close);
+                        // as java.util.regex: ASCII letter, then ASCII letters/digits; and unique
+                        if (!name.chars().allMatch(ch -> isAsciiLetter(ch) || (ch >= '0' && ch <= '9'))) {
+                            throw unsupported("group name '" + name + "'");
+                        }
+                        if (!groupNames.add(name)) {
+                            throw unsupported("duplicate group name '" + name + "'");
+                        }
+                        i = close + 1;
+                    } else if (peek() == '?') {
+                        throw unsupported("lookaround, atomic group or inline flags");
+                    }
+                    Node group = alternation();
+                    expect(')');
+                    return group;
+                case '[':
+                    i++;
+                    return new CharNode(charClass());
+                case '.':
+                    i++;
+                    return new CharNode(dotAll ? ch -> true : LINE_TERMINATOR.negate());
+                case '^':
+                    i++;
+                    return new AssertNode(Assertion.BEGIN);
+                case '$':
+                    i++;
+                    return new AssertNode(Assertion.END_OR_FINAL_TERMINATOR);
+                case '\\':
+                    i++;
+                    char escaped = peek();
+                    if (escaped == 'A') {
+                        i++;
+                        return new AssertNode(Assertion.BEGIN);
+                    } else if (escaped == 'z') {
+                        i++;
+                        return new AssertNode(Assertion.END);
+                    } else if (escaped == 'Z') {
+                        i++;
+                        return new AssertNode(Assertion.END_OR_FINAL_TERMINATOR);
+                    }
+                    return new CharNode(caseFold(escape()));
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw unsupported("dangling '" + c + "'");
+                default:
+                    int codePoint = regex.codePointAt(i);
+                    i += Character.charCount(codePoint);
+                    return new CharNode(caseFold(literal(codePoint)));
+            }
+        }
+
+        IntPredicate literal(int codePoint) {
+            return ch -> ch == codePoint;
+        }
+
+        /**
+         * as java.util.regex's CASE_INSENSITIVE, without UNICODE_CASE: ASCII letters only
+         */
+        IntPredicate caseFold(IntPredicate chars) {
+            if (!caseInsensitive) {
+                return chars;
+            }
+            return ch -> chars.test(ch) || (isAsciiLetter(ch) && chars.test(asciiToggleCase(ch)));
+        }
+
+        /**
+         * escape, after `\`, as char predicate
+         */
+        IntPredicate escape() {
+            if (i >= regex.length()) {
+                throw unsupported("trailing '\\'");
+            }
+            char c = regex.charAt(i++);
+            switch (c) {
+                case 'd':
+                    return DIGIT;
+                case 'D':
+                    return DIGIT.negate();
+                case 'w':
+                    return WORD;
+                case 'W':
+                    return WORD.negate();
+                case 's':
+                    return SPACE;
+                case 'S':
+                    return SPACE.negate();
+                default:
+                    int literal = escapedLiteral(c);
+                    return ch -> ch == literal;
+            }
+        }
+
+        int escapedLiteral(char c) {
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'x':
+                    return hex(2);
+                case 'u':
+                    return hex(4);
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        throw unsupported("escape '\\" + c + "'");
+                    }
+                    return c;
+            }
+        }
+
+        int hex(int digits) {
+            if (i + digits > regex.length()) {
+                throw unsupported("hex escape");
+            }
+            try {
+                int value = Integer.parseInt(regex.substring(i, i + digits), 16);
+                i += digits;
+                return value;
+            } catch (NumberFormatException e) {
+                throw unsupported("hex escape");
+            }
+        }
+
+        /**
+         * class, after `[`, through `]`; case-folded if case-insensitive
+         */
+        IntPredicate charClass() {
+            boolean negated = false;
+            if (peek() == '^') {
+                negated = true;
+                i++;
+            }
+            List<IntPredicate> members = new ArrayList<>();
+            boolean first = true;
+            while (first || peek() != ']') {
+                if (i >= regex.length()) {
+                    throw unsupported("unclosed class");
+                }
+                char c = peek();
+                if (c == '[' || regex.startsWith("&&", i) || (first && c == ']')) {
+                    throw unsupported("nested class, intersection or leading ']'");
+                }
+                first = false;
+                int from;
+                if (c == '\\') {
+                    i++;
+                    char escaped = peek();
+                    if ("dDwWsS".indexOf(escaped) >= 0) {
+                        members.add(escape());
+                        continue;
+                    }
+                    i++;
+                    from = escapedLiteral(escaped);
+                } else {
+                    from = regex.codePointAt(i);
+                    i += Character.charCount(from);
+                }
+                if (peek() == '-' && i + 1 < regex.length() && regex.charAt(i + 1) != ']') {
+                    i++;
+                    int to;
+                    if (peek() == '\\') {
+                        i++;
+                        char escaped = peek();
+                        if (i >= regex.length() || "dDwWsS".indexOf(escaped) >= 0) {
+                            throw unsupported("illegal range");
+                        }
+                        i++;
+                        to = escapedLiteral(escaped);
+                    } else if (peek() == '[') {
+                        throw unsupported("illegal range");
+                    } else {
+                        to = regex.codePointAt(i);
+                        i += Character.charCount(to);
+                    }
+                    if (to < from) {
+                        throw unsupported("illegal range");
+                    }
+                    int lower = from;
+                    members.add(ch -> ch >= lower && ch <= to);
+                } else {
+                    members.add(literal(from));
+                }
+            }
+            i++;
+            IntPredicate[] union = members.toArray(new IntPredicate[0]);
+            IntPredicate positive = ch -> {
+                for (IntPredicate member : union) {
+                    if (member.test(ch)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+            // as java.util.regex, complement of class after folding its members
+            return negated ? caseFold(positive).negate() : caseFold(positive);
+        }
+
+        char peek() {
+            return i < regex.length() ? regex.charAt(i) : 0;
+        }
+
+        void expect(char c) {
+            if (peek() != c) {
+                throw unsupported("expected '" + c + "'");
+            }
+            i++;
+        }
+
+        IllegalArgumentException unsupported(String what) {
+            return new IllegalArgumentException("Regex not supported for linear-time matching (" + what + ", at " + i + "): " + regex);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package co.worklytics.psoxy.utils;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HttpTransport over a single java.net.http.HttpClient, so connections to sources (and TLS sessions)
+ * are pooled and re-used across requests, rather than established anew for each; and may be
+ * HTTP/2, if source supports it.
+ *
+ * thread-safe; intended to be shared for lifetime of container.
+ *
+ * NOTE: size of pool, and how long idle connections are kept alive, are per JVM; see
+ * `jdk.httpclient.connectionPoolSize` and `jdk.httpclient.keepalive.timeout` system properties
+ */
+public class PooledHttpTransport extends HttpTransport {
+
+    /**
+     * headers that java.net.http sets itself (or otherwise disallows), and won't accept from caller
+     * - see jdk.internal.net.http.common.Utils::DISALLOWED_HEADERS_SET
+     */
+    static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "date", "expect",
+        "from", "host", "upgrade", "via", "warning");
+
+    final HttpClient client;
+
+    /**
+     * usage of transport; for monitoring
+     */
+    @Getter
+    final Stats stats = new Stats();
+
+    PooledHttpTransport(@NonNull HttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @param version        preferred; if HTTP_2, falls back to HTTP/1.1 for sources that don't
+     *                       support it
+     * @param connectTimeout for all requests; connect timeout is per client, not per request, with
+     *                       java.net.http, so any passed to requests is ignored
+     */
+    public static PooledHttpTransport of(@NonNull HttpClient.Version version, @NonNull Duration connectTimeout) {
+        return new PooledHttpTransport(HttpClient.newBuilder()
+            .version(version)
+            .connectTimeout(connectTimeout)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build());
+    }
+
+    @Override
+    protected LowLevelHttpRequest buildRequest(String method, String url) {
+        return new Request(method, url);
+    }
+
+    public static class Stats {
+
+        final LongAdder requests = new LongAdder();
+
+        final LongAdder failures = new LongAdder();
+
+        final LongAdder http2Responses = new LongAdder();
+
+        final AtomicInteger open = new AtomicInteger();
+
+        final AtomicInteger maxOpen = new AtomicInteger();
+
+        void recordOpened(HttpResponse<?> response) {
+            requests.increment();
+            if (response.version() == HttpClient.Version.HTTP_2) {
+                http2Responses.increment();
+            }
+            maxOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+        }
+
+        void recordClosed() {
+            open.decrementAndGet();
+        }
+
+        void recordFailure() {
+            failures.increment();
+        }
+
+        /**
+         * @return number of requests to which a response was received
+         */
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        /**
+         * @return number of requests that failed without a response (eg, couldn't connect, timed out)
+         */
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * @return number of responses received over HTTP/2
+         */
+        public long getHttp2Responses() {
+            return http2Responses.sum();
+        }
+
+        /**
+         * @return number of responses whose content is still open (so hold a connection, or an
+         *         HTTP/2 stream)
+         */
+        public int getOpen() {
+            return open.get();
+        }
+
+        /**
+         * @return most responses that have been open at once
+         */
+        public int getMaxOpen() {
+            return maxOpen.get();
+        }
+
+        @Override
+        public String toString() {
+            return "PooledHttpTransport.Stats(requests=" + getRequests()
+                + ", failures=" + getFailures()
+                + ", http2Responses=" + getHttp2Responses()
+                + ", open=" + getOpen()
+                + ", maxOpen=" + getMaxOpen() + ")";
+        }
+    }
+
+    @RequiredArgsConstructor
+    class Request extends LowLevelHttpRequest {
+
+        final String method;
+
+        final String url;
+
+        final List<String[]> headers = new ArrayList<>();
+
+        Duration timeout;
+
+        @Override
+        public void addHeader(String name, String value) {
+            headers.add(new String[]{name, value});
+        }
+
+        /**
+         * NOTE: unlike other transports, readTimeout bounds TOTAL time from sending request until
+         * response headers are received (java.net.http has no timeout between reads); and once
+         * headers are received, reads of content aren't bounded at all.
+         *
+         * connectTimeout is ignored; see PooledHttpTransport::of
+         */
+        @Override
+        public void setTimeout(int connectTimeout, int readTimeout) {
+            timeout = readTimeout > 0 ? Duration.ofMillis(readTimeout) : null;
+        }
+
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url));
+            for (String[] header : headers) {
+                if (!RESTRICTED_HEADERS.contains(header[0].toLowerCase(Locale.ROOT))) {
+                    builder.header(header[0], header[1]);
+                }
+            }
+            if (getContentType() != null) {
+                builder.setHeader("Content-Type", getContentType());
+            }
+            if (getContentEncoding() != null) {
+                builder.setHeader("Content-Encoding", getContentEncoding());
+            }
+            if (timeout != null) {
+                builder.timeout(timeout);
+            }
+
+            HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.noBody();
+            if (getStreamingContent() != null) {
+                //request content (eg, token requests) is small, so no need to stream it
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                getStreamingContent().writeTo(content);
+                body = HttpRequest.BodyPublishers.ofByteArray(content.toByteArray());
+            }
+            builder.method(method, body);
+
+            HttpResponse<InputStream> response;
+            try {
+                response = client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stats.recordFailure();
+                throw new InterruptedIOException("Interrupted awaiting response from " + url);
+            } catch (IOException e) {
+                stats.recordFailure();
+                throw e;
+            }
+            stats.recordOpened(response);
+            return new Response(response);
+        }
+    }
+
+    class Response extends LowLevelHttpResponse {
+
+        final HttpResponse<InputStream> response;
+
+        /**
+         * names and values, in order; excluding HTTP/2 pseudo-headers
+         */
+        final List<String[]> headers = new ArrayList<>();
+
+        /**
+         * body of response, recording when it's closed (whether by disconnect, or by a caller that
+         * closes content directly)
+         */
+        final InputStream content;
+
+        Response(HttpResponse<InputStream> response) {
+            this.response = response;
+            AtomicBoolean closed = new AtomicBoolean();
+            this.content = new FilterInputStream(response.body()) {
+                @Override
+                public void close() throws IOException {
+                    if (closed.compareAndSet(false, true)) {
+                        stats.recordClosed();
+                    }
+                    super.close();
+                }
+            };
+            for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+                if (!header.getKey().startsWith(":")) {
+                    for (String value : header.getValue()) {
+                        headers.add(new String[]{header.getKey(), value});
+                    }
+                }
+            }
+        }
+
+        @Override
+        public InputStream getContent() {
+            return content;
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return response.headers().firstValue("Content-Encoding").orElse(null);
+        }
+
+        @Override
+        public long getContentLength() {
+            return response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+        }
+
+        @Override
+        public String getContentType() {
+            return response.headers().firstValue("Content-Type").orElse(null);
+        }
+
+        @Override
+        public String getStatusLine() {
+            return (response.version() == HttpClient.Version.HTTP_2 ? "HTTP/2 " : "HTTP/1.1 ") + response.statusCode();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String getReasonPhrase() {
+            // not exposed by java.net.http (nor sent at all, with HTTP/2)
+            return null;
+        }
+
+        @Override
+        public int getHeaderCount() {
+            return headers.size();
+        }
+
+        @Override
+        public String getHeaderName(int index) {
+            return headers.get(index)[0];
+        }
+
+        @Override
+        public String getHeaderValue(int index) {
+            return headers.get(index)[1];
+        }
+
+        /**
+         * closes content; if it's been read fully, connection is returned to pool for re-use
+         */
+        @Override
+        public void disconnect() throws IOException {
+            content.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package co.worklytics.psoxy;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compares HashUtils to the implementation it replaced (join fragments, DigestUtils::sha256,
+ * base64-encode, then replace non-alphanumeric chars), hashing salted emails as pseudonymization
+ * does
+ *
+ * not run as part of test suite; to run, after `mvn test-compile` in core:
+ *   mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=co.worklytics.psoxy.HashUtilsBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashUtilsBenchmark {
+
+    static final int DISTINCT_EMAILS = 1_000;
+
+    static final String SALT = "salt";
+
+    HashUtils hashUtils;
+
+    HashUtils.KeyedHash keyedHash;
+
+    String[] emails;
+
+    int next;
+
+    @Setup
+    public void setup() {
+        hashUtils = new HashUtils();
+        keyedHash = hashUtils.keyed(SALT);
+        emails = new String[DISTINCT_EMAILS];
+        for (int i = 0; i < emails.length; i++) {
+            emails[i] = "user" + i + "@acme.com";
+        }
+    }
+
+    String nextEmail() {
+        next = (next + 1) % emails.length;
+        return emails[next];
+    }
+
+    @Benchmark
+    public String hash_legacy() {
+        String hash = new String(
+            Base64.getEncoder()
+                .withoutPadding()
+                .encode(DigestUtils.sha256(String.join("", nextEmail(), SALT, ""))),
+            StandardCharsets.UTF_8);
+        return StringUtils.replaceChars(hash, "/+", "_.");
+    }
+
+    @Benchmark
+    public String hash() {
+        return hashUtils.hash(nextEmail(), SALT, "");
+    }
+
+    @Benchmark
+    public String hash_keyed() {
+        return keyedHash.hash("", ":", nextEmail());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(HashUtilsBenchmark.class.getSimpleName())
+            .build())
+            .run();
+    }
+}
@@ -0,0 +1,84 @@
+package co.worklytics.psoxy;
+
+import lombok.SneakyThrows;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class HashUtilsTest {
+
+    HashUtils hashUtils = new HashUtils();
+
+    //implementation prior to allocation-free one; hashes must never change
+    String legacyHash(String... fragments) {
+        String hash = new String(
+            Base64.getEncoder()
+                .withoutPadding()
+                .encode(DigestUtils.sha256(String.join("", fragments))),
+            StandardCharsets.UTF_8);
+        return StringUtils.replaceChars(hash, "/+", "_.");
+    }
+
+    @ValueSource(strings = {
+        "",
+        "original",
+        "alice@worklytics.co",
+        "Ålice@wörklytics.co",
+        "エリス@例え.jp",
+        "😀 smile",
+        "lone high \uD83D surrogate",
+        "lone low \uDE00 surrogate",
+        "ends with high \uD83D",
+    })
+    @ParameterizedTest
+    void hash_matchesLegacy(String value) {
+        assertEquals(legacyHash(value, "salt", ""), hashUtils.hash(value, "salt", ""));
+        assertEquals(legacyHash(value), hashUtils.hash(value));
+    }
+
+    @Test
+    void hash_surrogatePairAcrossFragments() {
+        assertEquals(legacyHash("a\uD83D", "\uDE00b"), hashUtils.hash("a\uD83D", "\uDE00b"));
+        assertEquals(legacyHash("a\uD83D", "", "\uDE00b"), hashUtils.hash("a\uD83D", "", "\uDE00b"));
+    }
+
+    @Test
+    void hash_nullFragment() {
+        assertEquals(legacyHash("value", null, "scope"), hashUtils.hash("value", null, "scope"));
+    }
+
+    @Test
+    void hash_exceedsBuffer() {
+        String value = StringUtils.repeat("aé€😀", 500);
+        assertEquals(legacyHash(value, "salt"), hashUtils.hash(value, "salt"));
+    }
+
+    @SneakyThrows
+    @Test
+    void keyed_matchesMac() {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec("salt".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        String expected = StringUtils.replaceChars(Base64.getEncoder().withoutPadding()
+            .encodeToString(mac.doFinal("email:alice@worklytics.co".getBytes(StandardCharsets.UTF_8))), "/+", "_.");
+
+        HashUtils.KeyedHash keyed = hashUtils.keyed("salt");
+        assertEquals(expected, keyed.hash("email", ":", "alice@worklytics.co"));
+        //reusable
+        assertEquals(expected, keyed.hash("email:alice@worklytics.co"));
+        //on other threads too
+        assertEquals(expected, CompletableFuture.supplyAsync(() -> keyed.hash("email:alice@worklytics.co")).get());
+
+        assertNotEquals(expected, hashUtils.keyed("other salt").hash("email:alice@worklytics.co"));
+    }
+}
@@ -0,0 +1,82 @@
+package co.worklytics.psoxy;
+
+import com.google.common.cache.CacheStats;
+import lombok.NonNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PseudonymCacheTest {
+
+    /**
+     * stand-in for some other backing store (eg, off-heap)
+     */
+    static class MapStore implements PseudonymStore {
+
+        final Map<PseudonymCache.Key, PseudonymizedIdentity> map = new ConcurrentHashMap<>();
+
+        @Override
+        public PseudonymizedIdentity getIfPresent(@NonNull PseudonymCache.Key key) {
+            return map.get(key);
+        }
+
+        @Override
+        public void put(@NonNull PseudonymCache.Key key, @NonNull PseudonymizedIdentity pseudonym) {
+            map.put(key, pseudonym);
+        }
+
+        @Override
+        public CacheStats stats() {
+            return new CacheStats(0, 0, 0, 0, 0, 0);
+        }
+
+        @Override
+        public long size() {
+            return map.size();
+        }
+    }
+
+    @Test
+    void get_pluggableStore() {
+        MapStore store = new MapStore();
+        PseudonymCache cache = new PseudonymCache(store);
+        AtomicInteger computed = new AtomicInteger();
+
+        PseudonymCache.Key key = new PseudonymCache.Key("fingerprint", "scope", "alice@acme.com");
+        PseudonymizedIdentity first = cache.get(key, () -> {
+            computed.incrementAndGet();
+            return PseudonymizedIdentity.builder().scope("email").domain("acme.com").hash("hash").build();
+        });
+        first.setOriginal("alice@acme.com");
+
+        PseudonymizedIdentity second = cache.get(key, () -> {
+            throw new IllegalStateException("should have been cached");
+        });
+
+        assertEquals(1, computed.get());
+        assertEquals(1, cache.size());
+        assertEquals("hash", second.getHash());
+        assertEquals("acme.com", second.getDomain());
+        // copies, so modifying one doesn't affect what's stored
+        assertNull(second.getOriginal());
+        assertNull(store.getIfPresent(key).getOriginal());
+    }
+
+    @Test
+    void get_differentKeys() {
+        PseudonymCache cache = new PseudonymCache(new MapStore());
+
+        PseudonymizedIdentity a = cache.get(new PseudonymCache.Key("salt1", "scope", "value"),
+            () -> PseudonymizedIdentity.builder().hash("1").build());
+        PseudonymizedIdentity b = cache.get(new PseudonymCache.Key("salt2", "scope", "value"),
+            () -> PseudonymizedIdentity.builder().hash("2").build());
+
+        assertEquals("1", a.getHash());
+        assertEquals("2", b.getHash());
+        assertEquals(2, cache.size());
+    }
+}
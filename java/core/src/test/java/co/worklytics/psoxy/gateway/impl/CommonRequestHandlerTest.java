@@ -1,24 +1,39 @@
 package co.worklytics.psoxy.gateway.impl;
 
+import co.worklytics.psoxy.ErrorCauses;
 import co.worklytics.psoxy.PsoxyModule;
+import co.worklytics.psoxy.ResponseHeader;
+import co.worklytics.psoxy.Sanitizer;
+import co.worklytics.psoxy.gateway.ConfigService;
 import co.worklytics.psoxy.gateway.HttpEventRequest;
+import co.worklytics.psoxy.gateway.HttpEventResponse;
 import co.worklytics.psoxy.gateway.ProxyConfigProperty;
+import co.worklytics.psoxy.gateway.SourceAuthStrategy;
+import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
 import co.worklytics.test.MockModules;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.auth.Credentials;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.OAuth2Credentials;
 import dagger.Component;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.net.URL;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
@@ -92,4 +107,96 @@ class CommonRequestHandlerTest {
 
         assertEquals(expectedProxyCallUrl, url.toString(), "URLs should match");
     }
+
+    HttpEventRequest get(String path) {
+        return new HttpEventRequest() {
+            @Override
+            public String getPath() {
+                return path;
+            }
+
+            @Override
+            public Optional<String> getQuery() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<String> getHeader(String headerName) {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<List<String>> getMultiValueHeader(String headerName) {
+                return Optional.empty();
+            }
+
+            @Override
+            public String getHttpMethod() {
+                return "GET";
+            }
+        };
+    }
+
+    /**
+     * setup handler to proxy gmail, with source responding to any request with content
+     */
+    void setupSource(Sanitizer.Engine engine, String content) {
+        handler.config = new MemoryConfigService(Map.of(
+            ProxyConfigProperty.TARGET_HOST.name(), "gmail.googleapis.com",
+            ProxyConfigProperty.PSOXY_SALT.name(), "salt",
+            ProxyConfigProperty.SANITIZER_ENGINE.name(), engine.name()));
+        handler.rules = PrebuiltSanitizerRules.DEFAULTS.get("gmail");
+        handler.sourceAuthStrategy = new SourceAuthStrategy() {
+            @Override
+            public String getConfigIdentifier() {
+                return "test";
+            }
+
+            @Override
+            public Credentials getCredentials(Optional<String> userToImpersonate) {
+                return OAuth2Credentials.create(new AccessToken("token", null));
+            }
+
+            @Override
+            public Set<ConfigService.ConfigProperty> getRequiredConfigProperties() {
+                return Set.of();
+            }
+        };
+        handler.httpTransport = new MockHttpTransport.Builder()
+            .setLowLevelHttpResponse(new MockLowLevelHttpResponse()
+                .setContentType("application/json; charset=UTF-8")
+                .setContent(content))
+            .build();
+    }
+
+    @SneakyThrows
+    @ParameterizedTest
+    @EnumSource(value = Sanitizer.Engine.class, names = {"JSON_PATH", "SINGLE_PASS"})
+    void handle_sanitizedBeforeResponding(Sanitizer.Engine engine) {
+        setupSource(engine, "{\"id\":\"17c3b1911726ef3f\",\"payload\":{\"headers\":[{\"name\":\"From\",\"value\":\"alice@acme.com\"}]}}");
+
+        HttpEventResponse response = handler.handle(get("/gmail/v1/users/me/messages/17c3b1911726ef3f"));
+
+        assertEquals(200, response.getStatusCode());
+        // whole, not streamed
+        assertNull(response.getStreamingBody());
+        assertTrue(response.getBody().contains("17c3b1911726ef3f"));
+        assertFalse(response.getBody().contains("alice@acme.com"));
+    }
+
+    @SneakyThrows
+    @ParameterizedTest
+    @EnumSource(value = Sanitizer.Engine.class, names = {"JSON_PATH", "SINGLE_PASS"})
+    void handle_sanitizationFails(Sanitizer.Engine engine) {
+        // truncated, so can't be parsed
+        setupSource(engine, "{\"id\":\"17c3b1911726ef3f\",\"payload\":{\"headers\":[{\"name\":\"From\",\"value\":\"alice@");
+
+        HttpEventResponse response = handler.handle(get("/gmail/v1/users/me/messages/17c3b1911726ef3f"));
+
+        assertEquals(500, response.getStatusCode());
+        assertEquals(ErrorCauses.SANITIZATION.name(),
+            response.getHeaders().get(ResponseHeader.ERROR.getHttpHeader()));
+        assertEquals(0, response.getBodyBytes().length);
+        assertNull(response.getStreamingBody());
+    }
 }
@@ -0,0 +1,104 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.OAuth2Credentials;
+import com.google.auth.oauth2.OAuth2CredentialsWithRefresh;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredentialsCacheTest {
+
+    static final Set<String> SCOPES = Set.of("https://www.googleapis.com/auth/admin.reports.audit.readonly");
+
+    CredentialsCache cache = new CredentialsCache(2);
+
+    AtomicInteger built = new AtomicInteger();
+
+    AtomicInteger refreshed = new AtomicInteger();
+
+    CountDownLatch refreshDone = new CountDownLatch(1);
+
+    OAuth2Credentials credentials(Duration expiresIn) {
+        built.incrementAndGet();
+        return OAuth2CredentialsWithRefresh.newBuilder()
+            .setAccessToken(token("initial", expiresIn))
+            .setRefreshHandler(() -> {
+                refreshed.incrementAndGet();
+                refreshDone.countDown();
+                return token("refreshed", Duration.ofHours(1));
+            })
+            .build();
+    }
+
+    static AccessToken token(String value, Duration expiresIn) {
+        return new AccessToken(value, Date.from(Instant.now().plus(expiresIn)));
+    }
+
+    static CredentialsCache.Key key(String user) {
+        return new CredentialsCache.Key("gcp_service_account_key", user, SCOPES);
+    }
+
+    @Test
+    void get_builtOncePerKey() {
+        OAuth2Credentials alice = cache.get(key("alice@acme.com"), () -> credentials(Duration.ofHours(1)));
+        OAuth2Credentials bob = cache.get(key("bob@acme.com"), () -> credentials(Duration.ofHours(1)));
+
+        assertSame(alice, cache.get(key("alice@acme.com"), () -> credentials(Duration.ofHours(1))));
+        assertSame(bob, cache.get(key("bob@acme.com"), () -> credentials(Duration.ofHours(1))));
+        assertNotSame(alice, bob);
+        assertEquals(2, built.get());
+        assertEquals(2, cache.getStats().hitCount());
+
+        // fresh tokens, so nothing to refresh
+        assertEquals(0, refreshed.get());
+        assertEquals("initial", alice.getAccessToken().getTokenValue());
+    }
+
+    @Test
+    void get_bounded() {
+        cache.get(key("alice@acme.com"), () -> credentials(Duration.ofHours(1)));
+        cache.get(key("bob@acme.com"), () -> credentials(Duration.ofHours(1)));
+        cache.get(key("charlie@acme.com"), () -> credentials(Duration.ofHours(1)));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getStats().evictionCount());
+    }
+
+    @Test
+    void get_noUser() {
+        OAuth2Credentials credentials = cache.get(key(null), () -> credentials(Duration.ofHours(1)));
+
+        assertSame(credentials, cache.get(key(null), () -> credentials(Duration.ofHours(1))));
+        assertEquals(1, built.get());
+    }
+
+    @Test
+    void get_refreshesStaleTokenInBackground() throws InterruptedException {
+        //within refresh margin, but not yet expired
+        cache.get(key("alice@acme.com"), () -> credentials(Duration.ofSeconds(330)));
+
+        OAuth2Credentials credentials =
+            cache.get(key("alice@acme.com"), () -> credentials(Duration.ofHours(1)));
+
+        assertTrue(refreshDone.await(5, TimeUnit.SECONDS));
+        assertEquals(1, built.get());
+
+        // refresh completes asynchronously w.r.t. handler returning
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!"refreshed".equals(credentials.getAccessToken().getTokenValue())
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("refreshed", credentials.getAccessToken().getTokenValue());
+        assertEquals(1, refreshed.get());
+    }
+}
@@ -2,21 +2,42 @@ package co.worklytics.psoxy.gateway.impl.oauth;
 
 import co.worklytics.psoxy.PsoxyModule;
 import co.worklytics.psoxy.SourceAuthModule;
+import co.worklytics.psoxy.gateway.impl.MemoryConfigService;
 import co.worklytics.test.MockModules;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.http.EmptyContent;
+import com.google.api.client.http.HttpContent;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
 import com.google.auth.oauth2.AccessToken;
 import dagger.Component;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.sql.Date;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -84,7 +105,7 @@ class OAuthRefreshTokenSourceAuthStrategyTest {
     @Test
     public void testCachedTokenNeedsRefreshWhenNull() {
         OAuthRefreshTokenSourceAuthStrategy.TokenRefreshHandlerImpl tokenRefreshHandler = new OAuthRefreshTokenSourceAuthStrategy.TokenRefreshHandlerImpl();
-        assertFalse(tokenRefreshHandler.isCurrentTokenValid(null, Instant.now()));
+        assertFalse(tokenRefreshHandler.isCurrentTokenValid(null, Instant.now(), Instant.now()));
     }
 
     @ParameterizedTest
@@ -95,7 +116,7 @@ class OAuthRefreshTokenSourceAuthStrategyTest {
         Instant expiration = fixed.plus(tokenRefreshHandler.TOKEN_REFRESH_THRESHOLD).plusMillis(millis);
 
         AccessToken token = new AccessToken("any-token", Date.from(expiration));
-        assertTrue(tokenRefreshHandler.isCurrentTokenValid(token, fixed));
+        assertTrue(tokenRefreshHandler.isCurrentTokenValid(token, fixed.minus(Duration.ofHours(1)), fixed));
     }
 
     @ParameterizedTest
@@ -106,7 +127,142 @@ class OAuthRefreshTokenSourceAuthStrategyTest {
         Instant expiration = fixed.plus(tokenRefreshHandler.TOKEN_REFRESH_THRESHOLD).plusMillis(millis);
 
         AccessToken token = new AccessToken("any-token", Date.from(expiration));
-        assertFalse(tokenRefreshHandler.isCurrentTokenValid(token, fixed));
+        assertFalse(tokenRefreshHandler.isCurrentTokenValid(token, fixed.minus(Duration.ofHours(1)), fixed));
     }
 
+    @ParameterizedTest
+    @CsvSource({
+        "3600, 360",
+        "720, 360",
+        "600, 300",
+        "120, 60",
+    })
+    public void refreshThreshold(long lifetimeSeconds, long expectedSeconds) {
+        OAuthRefreshTokenSourceAuthStrategy.TokenRefreshHandlerImpl tokenRefreshHandler = new OAuthRefreshTokenSourceAuthStrategy.TokenRefreshHandlerImpl();
+        assertEquals(Duration.ofSeconds(expectedSeconds),
+            tokenRefreshHandler.refreshThreshold(Duration.ofSeconds(lifetimeSeconds)));
+    }
+
+    @Test
+    public void testShortLivedTokenValidForHalfItsLifetime() {
+        OAuthRefreshTokenSourceAuthStrategy.TokenRefreshHandlerImpl tokenRefreshHandler = new OAuthRefreshTokenSourceAuthStrategy.TokenRefreshHandlerImpl();
+        Instant issuedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        AccessToken token = new AccessToken("any-token", Date.from(issuedAt.plus(Duration.ofMinutes(2))));
+
+        assertTrue(tokenRefreshHandler.isCurrentTokenValid(token, issuedAt, issuedAt));
+        assertTrue(tokenRefreshHandler.isCurrentTokenValid(token, issuedAt, issuedAt.plusSeconds(59)));
+        assertFalse(tokenRefreshHandler.isCurrentTokenValid(token, issuedAt, issuedAt.plusSeconds(60)));
+    }
+
+    /**
+     * @param tokenResponse   content of token endpoint's response
+     * @param tokenRequests   incremented on each request to token endpoint
+     * @param requestReceived counted down on each request to token endpoint
+     * @param respond         token endpoint awaits this before responding
+     */
+    OAuthRefreshTokenSourceAuthStrategy.TokenRefreshHandlerImpl tokenRefreshHandler(String tokenResponse,
+                                                                                   AtomicInteger tokenRequests,
+                                                                                   CountDownLatch requestReceived,
+                                                                                   CountDownLatch respond) {
+        MockHttpTransport transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                return new MockLowLevelHttpRequest() {
+                    @SneakyThrows
+                    @Override
+                    public LowLevelHttpResponse execute() {
+                        tokenRequests.incrementAndGet();
+                        requestReceived.countDown();
+                        assertTrue(respond.await(10, TimeUnit.SECONDS));
+                        return new MockLowLevelHttpResponse()
+                            .setContentType("application/json")
+                            .setContent(tokenResponse);
+                    }
+                };
+            }
+        };
+
+        OAuthRefreshTokenSourceAuthStrategy.TokenRefreshHandlerImpl tokenRefreshHandler = new OAuthRefreshTokenSourceAuthStrategy.TokenRefreshHandlerImpl();
+        tokenRefreshHandler.config = new MemoryConfigService(Map.of(
+            OAuthRefreshTokenSourceAuthStrategy.ConfigProperty.REFRESH_ENDPOINT.name(), "https://example.com/token"));
+        tokenRefreshHandler.objectMapper = objectMapper;
+        tokenRefreshHandler.httpRequestFactory = transport.createRequestFactory();
+        tokenRefreshHandler.payloadBuilder = new OAuthRefreshTokenSourceAuthStrategy.TokenRequestPayloadBuilder() {
+            @Override
+            public String getGrantType() {
+                return "refresh_token";
+            }
+
+            @Override
+            public HttpContent buildPayload() {
+                return new EmptyContent();
+            }
+        };
+        return tokenRefreshHandler;
+    }
+
+    @SneakyThrows
+    @Test
+    public void refreshAccessToken_concurrentCallersShareRefresh() {
+        AtomicInteger tokenRequests = new AtomicInteger();
+        CountDownLatch requestReceived = new CountDownLatch(1);
+        CountDownLatch respond = new CountDownLatch(1);
+        OAuthRefreshTokenSourceAuthStrategy.TokenRefreshHandlerImpl tokenRefreshHandler =
+            tokenRefreshHandler(EXAMPLE_TOKEN_RESPONSE, tokenRequests, requestReceived, respond);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            // first caller starts refresh, which is held in progress until others have arrived
+            Future<AccessToken> first = executor.submit(tokenRefreshHandler::refreshAccessToken);
+            assertTrue(requestReceived.await(10, TimeUnit.SECONDS));
+
+            List<Thread> racing = new CopyOnWriteArrayList<>();
+            List<Future<AccessToken>> others = IntStream.range(0, 7)
+                .mapToObj(i -> executor.submit(() -> {
+                    racing.add(Thread.currentThread());
+                    return tokenRefreshHandler.refreshAccessToken();
+                }))
+                .collect(Collectors.toList());
+
+            // wait until all others are blocked, awaiting refresh in progress
+            long deadline = System.currentTimeMillis() + 10_000;
+            while ((racing.size() < 7 || racing.stream().anyMatch(t -> t.getState() != Thread.State.BLOCKED))
+                && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(7, racing.stream().filter(t -> t.getState() == Thread.State.BLOCKED).count());
+
+            respond.countDown();
+
+            AccessToken token = first.get(10, TimeUnit.SECONDS);
+            assertEquals("BWjcyMzY3ZDhiNmJkNTY", token.getTokenValue());
+            for (Future<AccessToken> other : others) {
+                assertSame(token, other.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // valid token now held, so no further request
+        tokenRefreshHandler.refreshAccessToken();
+
+        assertEquals(1, tokenRequests.get());
+        assertEquals(1, tokenRefreshHandler.getStats().getRefreshes());
+        assertEquals(0, tokenRefreshHandler.getStats().getFailures());
+    }
+
+    @SneakyThrows
+    @Test
+    public void refreshAccessToken_shortLivedTokenReused() {
+        AtomicInteger tokenRequests = new AtomicInteger();
+        OAuthRefreshTokenSourceAuthStrategy.TokenRefreshHandlerImpl tokenRefreshHandler =
+            tokenRefreshHandler(EXAMPLE_TOKEN_RESPONSE.replace("3600", "120"),
+                tokenRequests, new CountDownLatch(1), new CountDownLatch(0));
+
+        AccessToken token = tokenRefreshHandler.refreshAccessToken();
+
+        // lifetime shorter than TOKEN_REFRESH_THRESHOLD, but still re-used for first half of it
+        assertSame(token, tokenRefreshHandler.refreshAccessToken());
+        assertEquals(1, tokenRequests.get());
+    }
 }
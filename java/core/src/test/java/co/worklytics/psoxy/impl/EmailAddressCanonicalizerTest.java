@@ -0,0 +1,133 @@
+package co.worklytics.psoxy.impl;
+
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria;
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressParser;
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressValidator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.mail.internet.InternetAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmailAddressCanonicalizerTest {
+
+    //canonicalization as done prior to EmailAddressCanonicalizer
+    Optional<String> expectedCanonical(String value) {
+        if (EmailAddressValidator.isValid(value)) {
+            return Optional.of(EmailAddressParser.getLocalPart(value, EmailAddressCriteria.DEFAULT, true).toLowerCase()
+                + "@" + EmailAddressParser.getDomain(value, EmailAddressCriteria.DEFAULT, true).toLowerCase());
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    Optional<List<String>> expectedAddressList(String value) {
+        if (EmailAddressParser.isValidAddressList(value, EmailAddressCriteria.DEFAULT)) {
+            return Optional.of(Arrays.stream(EmailAddressParser.extractHeaderAddresses(value, EmailAddressCriteria.DEFAULT, true))
+                .map(InternetAddress::getAddress)
+                .collect(Collectors.toList()));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    @ValueSource(strings = {
+        "alice@worklytics.co",
+        "Alice.Example@Worklytics.CO",
+        "alice+tag@mail.worklytics.co",
+        "a_b-c%d@sub-domain.worklytics.co",
+        "alice@localhost",
+        "alice@worklytics",
+        "alice@-worklytics.co",
+        "alice@worklytics-.co",
+        "alice@worklytics..co",
+        "alice@worklytics.co.",
+        "alice@.worklytics.co",
+        ".alice@worklytics.co",
+        "alice.@worklytics.co",
+        "al..ice@worklytics.co",
+        "alice@@worklytics.co",
+        "@worklytics.co",
+        "alice@",
+        "alice",
+        "",
+        "alice@123.45.67.89",
+        "alice@worklytics.c0",
+        "alice@worklytics.c",
+        "alice@123.co",
+        "alice@worklytics.-co",
+        "alice@[123.45.67.89]",
+        "\"alice example\"@worklytics.co",
+        "Alice Example <alice@worklytics.co>",
+        "\"Alice Example\" <Alice@Worklytics.co>",
+        "alice@worklytics.co (Alice)",
+        " alice@worklytics.co",
+        "alice@worklytics.co ",
+        "ålice@worklytics.co",
+        "alice@wörklytics.co",
+        "o'brien@worklytics.co",
+        "alice/ops@worklytics.co",
+        "12345",
+        "https://worklytics.co",
+    })
+    @ParameterizedTest
+    void parse_sameAsEmailAddressParser(String value) {
+        assertEquals(expectedCanonical(value),
+            EmailAddressCanonicalizer.parse(value).map(EmailAddressCanonicalizer.EmailAddress::getCanonical));
+    }
+
+    @Test
+    void parse_domainCasePreserved() {
+        assertEquals("Worklytics.CO", EmailAddressCanonicalizer.parse("Alice@Worklytics.CO").orElseThrow().getDomain());
+    }
+
+    @ValueSource(strings = {
+        "alice@worklytics.co",
+        "alice@worklytics.co, bob@worklytics.co",
+        "alice@worklytics.co,bob@worklytics.co",
+        "alice@worklytics.co ,  bob@worklytics.co",
+        "\"Alice Example\" <alice@worklytics.co>, \"Bob Example\" <bob@worklytics.co>",
+        "alice@worklytics.co, Bob Example <bob@worklytics.co>",
+        "alice@worklytics.co,",
+        ",alice@worklytics.co",
+        "alice@worklytics.co,,bob@worklytics.co",
+        "alice@worklytics.co, , bob@worklytics.co",
+        "alice@worklytics.co; bob@worklytics.co",
+        "alice@worklytics.co\tbob@worklytics.co",
+        "undisclosed-recipients:;",
+    })
+    @ParameterizedTest
+    void parseAddressList_sameAsEmailAddressParser(String value) {
+        assertEquals(expectedAddressList(value), EmailAddressCanonicalizer.parseAddressList(value));
+    }
+
+    @Test
+    void parse_randomSameAsEmailAddressParser() {
+        final String alphabet = "aZ09._-+%@@.,\" <>()[]'å";
+        Random random = new Random(42);
+        for (int i = 0; i < 5_000; i++) {
+            StringBuilder value = new StringBuilder("al");
+            int length = random.nextInt(16);
+            for (int j = 0; j < length; j++) {
+                value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            value.append(random.nextBoolean() ? "@worklytics" : "");
+            length = random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String s = value.toString();
+
+            assertEquals(expectedCanonical(s),
+                EmailAddressCanonicalizer.parse(s).map(EmailAddressCanonicalizer.EmailAddress::getCanonical), s);
+            assertEquals(expectedAddressList(s), EmailAddressCanonicalizer.parseAddressList(s), s);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
+import co.worklytics.psoxy.rules.RuleSet;
+import co.worklytics.psoxy.rules.Rules2;
+import co.worklytics.psoxy.rules.Transform;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EndpointRouterTest {
+
+    static final Rules2.Endpoint EVENTS = Rules2.Endpoint.builder()
+        .pathTemplate("/calendar/v3/calendars/{calendarId}/events")
+        .transform(Transform.Redact.ofPaths("$..summary"))
+        .build();
+
+    static final Rules2.Endpoint PRIMARY_EVENTS = Rules2.Endpoint.builder()
+        .pathTemplate("/calendar/v3/calendars/primary/events")
+        .build();
+
+    static final Rules2.Endpoint EVENT = Rules2.Endpoint.builder()
+        .pathRegex("^/calendar/v3/calendars/[^/]*?/events/[^/]*$")
+        .build();
+
+    static final Rules2.Endpoint ANY_CALENDAR = Rules2.Endpoint.builder()
+        .pathRegex("^/calendar/v3/.*")
+        .build();
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "/calendar/v3/calendars/primary/events",
+        "/calendar/v3/calendars/primary/events?timeMin=2021-01-01T00:00:00Z",
+        "/calendar/v3/calendars/primary/events/12345",
+        "/calendar/v3/users/me/settings",
+        "/gmail/v1/users/me/messages",
+        "/gmail/v1/users/me/messages/17c3b1911726ef3f?format=metadata",
+        "/admin/directory/v1/users?customer=my_customer",
+        "/admin/reports/v1/activity/users/all/applications/meet",
+        "/drive/v2/files/123/revisions",
+        "/drive/v3/files/123/permissions?fields=*",
+        "/v1.0/users/48d31887-5fad-4d73-a9f5-3c356e68a038/calendar/calendarView",
+        "/beta/users/48d31887-5fad-4d73-a9f5-3c356e68a038/mailFolders/SentItems/messages",
+        "/api/discovery.conversations.history?channel=C123&limit=10",
+        "/api/discovery.users.list",
+        "/v2/users/me/meetings",
+        "/v2/report/users/me/meetings",
+        "/api/1.0/workspaces/123/teams",
+        "/not/an/endpoint",
+        "",
+    })
+    void route_sameAsSequentialScan(String relativeUrl) {
+        for (RuleSet rules : PrebuiltSanitizerRules.DEFAULTS.values()) {
+            if (rules instanceof Rules2) {
+                Optional<Rules2.Endpoint> expected = ((Rules2) rules).getEndpoints().stream()
+                    .filter(endpoint -> Pattern.compile(endpoint.getPathRegex(), Pattern.CASE_INSENSITIVE)
+                        .matcher(relativeUrl).matches())
+                    .findFirst();
+
+                assertEquals(expected, EndpointRouter.of((Rules2) rules).route(relativeUrl));
+            }
+        }
+    }
+
+    @Test
+    void route_templates() {
+        EndpointRouter router = EndpointRouter.of(Rules2.builder()
+            .endpoint(EVENTS)
+            .endpoint(PRIMARY_EVENTS)
+            .endpoint(EVENT)
+            .build());
+
+        assertEquals(Optional.of(EVENTS), router.route("/calendar/v3/calendars/primary/events"));
+        assertEquals(Optional.of(EVENTS), router.route("/calendar/v3/calendars/alice@acme.com/events?maxResults=10"));
+        assertEquals(Optional.of(EVENTS), router.route("/Calendar/V3/calendars/primary/Events"));
+        assertEquals(Optional.of(EVENT), router.route("/calendar/v3/calendars/primary/events/123"));
+        assertEquals(Optional.empty(), router.route("/calendar/v3/calendars//events"));
+        assertEquals(Optional.empty(), router.route("/calendar/v3/calendars/primary/events/123/"));
+        assertEquals(Optional.empty(), router.route("/calendar/v3/calendars/primary"));
+    }
+
+    @Test
+    void route_firstInRuleOrder() {
+        EndpointRouter router = EndpointRouter.of(Rules2.builder()
+            .endpoint(ANY_CALENDAR)
+            .endpoint(EVENTS)
+            .endpoint(PRIMARY_EVENTS)
+            .build());
+
+        assertEquals(Optional.of(ANY_CALENDAR), router.route("/calendar/v3/calendars/primary/events"));
+
+        router = EndpointRouter.of(Rules2.builder()
+            .endpoint(PRIMARY_EVENTS)
+            .endpoint(EVENTS)
+            .endpoint(ANY_CALENDAR)
+            .build());
+
+        assertEquals(Optional.of(PRIMARY_EVENTS), router.route("/calendar/v3/calendars/primary/events"));
+        assertEquals(Optional.of(EVENTS), router.route("/calendar/v3/calendars/other/events"));
+        assertEquals(Optional.of(ANY_CALENDAR), router.route("/calendar/v3/calendars/other"));
+    }
+
+    @Test
+    void route_backReference() {
+        Rules2.Endpoint repeated = Rules2.Endpoint.builder()
+            .pathRegex("^/(\\w+)/\\1$")
+            .build();
+
+        EndpointRouter router = EndpointRouter.of(Rules2.builder()
+            .endpoint(EVENT)
+            .endpoint(repeated)
+            .build());
+
+        assertEquals(Optional.of(repeated), router.route("/abc/abc"));
+        assertEquals(Optional.empty(), router.route("/abc/def"));
+    }
+}
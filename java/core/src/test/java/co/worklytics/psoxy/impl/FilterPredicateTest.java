@@ -0,0 +1,152 @@
+package co.worklytics.psoxy.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.Option;
+import com.jayway.jsonpath.spi.json.JacksonJsonNodeJsonProvider;
+import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilterPredicateTest {
+
+    static final List<String> CANDIDATES = Arrays.asList(
+        "{}",
+        "{\"name\":null}",
+        "{\"name\":\"To\"}",
+        "{\"name\":\"to\"}",
+        "{\"name\":\"From\"}",
+        "{\"name\":\"actor\"}",
+        "{\"name\":\"\"}",
+        "{\"name\":\"1\"}",
+        "{\"name\":1}",
+        "{\"name\":1.0}",
+        "{\"name\":12345678901234567890}",
+        "{\"name\":true}",
+        "{\"name\":{\"first\":\"To\"}}",
+        "{\"name\":[\"To\"]}",
+        "{\"kind\":\"x\",\"name\":\"To\"}",
+        "{\"from\":{\"emailAddress\":\"alice@worklytics.co\"}}",
+        "{\"from\":{\"emailAddress\":null}}",
+        "{\"from\":{}}",
+        "{\"from\":\"alice@worklytics.co\"}",
+        "{\"weird-name\":\"To\"}",
+        "\"To\"",
+        "1",
+        "[{\"name\":\"To\"}]"
+    );
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "[?(@.name == 'To')]",
+        "[?(@.name == \"To\")]",
+        "[?(@.name != 'To')]",
+        "[?(@.name == '1')]",
+        "[?(@.name == '1.00')]",
+        "[?(@.name == '')]",
+        "[?(@['name'] == 'To')]",
+        "[?(@.name in ['To','From'])]",
+        "[?(@.name in [ 'To', \"From\", '1' ])]",
+        "[?(@.name in [])]",
+        "[?(@.name =~ /^(To|From)$/)]",
+        "[?(@.name =~ /^(To|From)$/i)]",
+        "[?(@.name =~ /to/i)]",
+        "[?(@.name =~ /.*/)]",
+        "[?(@.name =~ /1/)]",
+        "[?(@.name =~ /true/)]",
+        "[?(@.name =~ /^a\\/b$/)]",
+        "[?(!(@.name =~ /^(To|From)$/i))]",
+        "[?(@.name)]",
+        "[?(!@.name)]",
+        "[?(@.from && @.from.emailAddress)]",
+        "[?(@.from.emailAddress)]",
+        "[?(@.weird-name)]",
+        "[?(@.kind == 'x' && @.name == 'To')]",
+        "[?(@.kind == 'x' || @.name == 'From')]",
+        "[?(@.kind == 'x' || @.name == 'From' && @.name)]",
+        "[?((@.kind == 'x' || @.name == 'From') && @.name)]",
+    })
+    void equivalentToJsonPath(String filter) {
+        FilterPredicate predicate = FilterPredicate.compile(filter)
+            .orElseThrow(() -> new AssertionError("Expected support for " + filter));
+
+        for (Configuration configuration : configurations()) {
+            JsonPath jsonPath = JsonPath.compile("$" + filter);
+            for (String candidate : CANDIDATES) {
+                JsonProvider jsonProvider = configuration.jsonProvider();
+                Object node = jsonProvider.parse(candidate);
+                Object array = jsonProvider.createArray();
+                jsonProvider.setArrayIndex(array, 0, node);
+
+                boolean expected = jsonProvider.length(jsonPath.read(array, configuration)) > 0;
+                assertEquals(expected, predicate.test(node, jsonProvider),
+                    filter + " against " + candidate + " (" + jsonProvider.getClass().getSimpleName() + ")");
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "[?(@.name == 1)]",
+        "[?(@.name == true)]",
+        "[?(@.name == null)]",
+        "[?('To' == @.name)]",
+        "[?(@.name nin ['To'])]",
+        "[?(@.name > 'To')]",
+        "[?(@.name == 'T\\'o')]",
+        "[?(@ == 'To')]",
+        "[?(@.name == $.name)]",
+        "[?(@.name.length() > 1)]",
+        "[?(@.name =~ /To/g)]",
+        "[?(!@.name == 'To')]",
+        "[?(@.name == 'To']",
+        "[?(@.name =~ /To)]",
+        "$.name",
+    })
+    void unsupported(String filter) {
+        assertFalse(FilterPredicate.compile(filter).isPresent());
+    }
+
+    @Test
+    void compilePath_placeholders() {
+        String path = "$.payload.headers[?(@.name in ['To','Cc'])].value";
+        JsonPath compiled = CompiledRules.CompiledTransform.compilePath(path);
+        assertEquals("$['payload']['headers'][?]['value']", compiled.getPath());
+
+        for (Configuration configuration : configurations()) {
+            Object document = configuration.jsonProvider().parse("{\"payload\":{\"headers\":[" +
+                "{\"name\":\"To\",\"value\":\"alice@worklytics.co\"},{\"name\":\"Subject\",\"value\":\"secret\"}," +
+                "{\"name\":\"Cc\",\"value\":\"bob@worklytics.co\"}]}}");
+            assertEquals(configuration.jsonProvider().toJson(JsonPath.compile(path).read(document, configuration)),
+                configuration.jsonProvider().toJson(compiled.read(document, configuration)));
+        }
+    }
+
+    @Test
+    void compilePath_unsupportedFilterLeftToJsonPath() {
+        String path = "$.items[?(@.count > 1)].name";
+        assertEquals(JsonPath.compile(path).getPath(), CompiledRules.CompiledTransform.compilePath(path).getPath());
+    }
+
+    static List<Configuration> configurations() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        return Arrays.asList(
+            Configuration.defaultConfiguration()
+                .jsonProvider(new JacksonJsonProvider(objectMapper))
+                .mappingProvider(new JacksonMappingProvider(objectMapper))
+                .setOptions(Option.SUPPRESS_EXCEPTIONS),
+            Configuration.defaultConfiguration()
+                .jsonProvider(new JacksonJsonNodeJsonProvider(objectMapper))
+                .mappingProvider(new JacksonMappingProvider(objectMapper))
+                .setOptions(Option.SUPPRESS_EXCEPTIONS));
+    }
+}
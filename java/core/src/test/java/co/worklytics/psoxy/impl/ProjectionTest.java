@@ -0,0 +1,92 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.rules.Transform;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
+import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProjectionTest {
+
+    Configuration configuration;
+
+    @BeforeEach
+    void setup() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        configuration = Configuration.defaultConfiguration()
+            .jsonProvider(new JacksonJsonProvider(objectMapper))
+            .mappingProvider(new JacksonMappingProvider(objectMapper));
+    }
+
+    String apply(Transform.Keep keep, String json) {
+        Object document = configuration.jsonProvider().parse(json);
+        return configuration.jsonProvider().toJson(Projection.compile(keep).apply(document, configuration));
+    }
+
+    @Test
+    void keepsMatchesAndAncestors() {
+        String json = "{\"kind\":\"list\",\"items\":[{\"id\":1,\"name\":\"a\",\"owner\":{\"id\":\"x\",\"email\":\"alice@worklytics.co\"}}," +
+            "{\"id\":2,\"owner\":{\"email\":\"bob@worklytics.co\"}},{\"name\":\"c\"}],\"nextPageToken\":\"abc\"}";
+
+        assertEquals("{\"items\":[{\"id\":1,\"owner\":{\"id\":\"x\"}},{\"id\":2}],\"nextPageToken\":\"abc\"}",
+            apply(Transform.Keep.ofPaths("$.items[*].id", "$.items[*].owner.id", "$.nextPageToken"), json));
+    }
+
+    @Test
+    void keepsMatchesWhole() {
+        String json = "{\"items\":[{\"id\":1,\"owner\":{\"id\":\"x\",\"email\":\"alice@worklytics.co\"}}]}";
+
+        assertEquals("{\"items\":[{\"owner\":{\"id\":\"x\",\"email\":\"alice@worklytics.co\"}}]}",
+            apply(Transform.Keep.ofPaths("$.items[*].owner"), json));
+    }
+
+    @Test
+    void deepScan() {
+        String json = "{\"a\":{\"id\":1,\"b\":[{\"id\":2,\"c\":3},{\"d\":4}]},\"e\":5}";
+
+        assertEquals("{\"a\":{\"id\":1,\"b\":[{\"id\":2}]}}",
+            apply(Transform.Keep.ofPaths("$..id"), json));
+    }
+
+    @Test
+    void filters() {
+        String json = "{\"items\":[{\"events\":[{\"name\":\"x\",\"parameters\":[" +
+            "{\"name\":\"room_id\",\"value\":\"1\"},{\"name\":\"message_text\",\"value\":\"secret\"}," +
+            "{\"name\":\"actor\",\"value\":\"alice@worklytics.co\"}]}]}]}";
+
+        assertEquals("{\"items\":[{\"events\":[{\"parameters\":[" +
+                "{\"name\":\"room_id\",\"value\":\"1\"},{\"name\":\"actor\",\"value\":\"alice@worklytics.co\"}]}]}]}",
+            apply(Transform.Keep.ofPaths("$.items[*].events[*].parameters[?(@.name =~ /^(room_id|actor)$/i)]"), json));
+    }
+
+    @Test
+    void nothingKept() {
+        assertEquals("{}", apply(Transform.Keep.ofPaths("$.id"), "{\"name\":\"a\",\"b\":{\"c\":1}}"));
+        assertEquals("[]", apply(Transform.Keep.ofPaths("$[*].id"), "[{\"name\":\"a\"}]"));
+    }
+
+    @Test
+    void inPlace() {
+        Map<?, ?> document = (Map<?, ?>) configuration.jsonProvider().parse("{\"a\":{\"id\":1,\"b\":2},\"c\":[{\"id\":1},{\"b\":2}]}");
+        Object a = document.get("a");
+        Object c0 = ((List<?>) document.get("c")).get(0);
+
+        assertSame(document, Projection.compile(Transform.Keep.ofPaths("$..id")).apply(document, configuration));
+        assertSame(a, document.get("a"));
+        assertSame(c0, ((List<?>) document.get("c")).get(0));
+        assertEquals(1, ((List<?>) document.get("c")).size());
+    }
+
+    @Test
+    void unsupportedPaths() {
+        assertThrows(IllegalArgumentException.class,
+            () -> Projection.compile(Transform.Keep.ofPaths("$.items[0].id")));
+    }
+}
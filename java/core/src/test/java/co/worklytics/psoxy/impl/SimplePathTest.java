@@ -0,0 +1,66 @@
+package co.worklytics.psoxy.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimplePathTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "$.users[*].primaryEmail",
+        "$.items[*].attendees[*].email",
+        "$..email",
+        "$..['text']",
+        "$.users[*]['name','real_name']",
+        "$.enterprise.['icon','name']",
+        "$.*.id",
+        "$.items[?(@.kind == 'calendar#event')].summary",
+        "$..headers[?(@.name =~ /^(To|From)$/i)].value",
+        "$.value[?(@.from && @.from.emailAddress)].subject",
+    })
+    void parse_supported(String jsonPath) {
+        assertTrue(SimplePath.parse(jsonPath).isPresent());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "$",
+        "$.items[0].id",
+        "$.items[0:2].id",
+        "$.items[-1:]",
+        "$..*",
+        "$..[*]",
+        "$..['from','to']",
+        "$.items.length()",
+        "$.items[?(@.id == $.owner)]",
+        "items[*].id",
+    })
+    void parse_unsupported(String jsonPath) {
+        assertTrue(SimplePath.parse(jsonPath).isEmpty());
+    }
+
+    @Test
+    void parse_steps() {
+        SimplePath path = SimplePath.parse("$..payload['headers','parts'][*][?(@.name == 'To')].value").get();
+
+        assertEquals(5, path.length());
+        assertEquals(new SimplePath.DeepScan("payload"), path.step(0));
+        assertEquals(new SimplePath.Property(Set.of("headers", "parts")), path.step(1));
+        assertEquals(new SimplePath.Wildcard(), path.step(2));
+        assertEquals("[?(@.name == 'To')]", ((SimplePath.Filter) path.step(3)).getExpression());
+        assertEquals(new SimplePath.Property(Set.of("value")), path.step(4));
+    }
+
+    @Test
+    void parse_filterWithParensInLiterals() {
+        SimplePath path = SimplePath.parse("$.items[?(@.summary == ')' || @.summary =~ /\\(x\\)/)].id").get();
+
+        assertEquals(3, path.length());
+        assertEquals("[?(@.summary == ')' || @.summary =~ /\\(x\\)/)]", ((SimplePath.Filter) path.step(1)).getExpression());
+    }
+}
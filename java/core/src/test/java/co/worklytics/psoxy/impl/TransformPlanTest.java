@@ -0,0 +1,408 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
+import co.worklytics.psoxy.rules.RuleSet;
+import co.worklytics.psoxy.rules.Rules2;
+import co.worklytics.psoxy.rules.Transform;
+import co.worklytics.test.TestUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.MapFunction;
+import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
+import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransformPlanTest {
+
+    Configuration configuration;
+
+    @BeforeEach
+    void setup() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        configuration = Configuration.defaultConfiguration()
+            .jsonProvider(new JacksonJsonProvider(objectMapper))
+            .mappingProvider(new JacksonMappingProvider(objectMapper));
+    }
+
+    //appends transform's (first) redaction to value, so tests can see what was applied in what order
+    MapFunction marker(Transform transform) {
+        String marker = ((Transform.RedactRegexMatches) transform).getRedactions().get(0);
+        return (value, configuration) -> value + "+" + marker;
+    }
+
+    //appends transform's type to value, for transforms of any type
+    MapFunction tagging(Transform transform) {
+        return (value, configuration) -> value + "+" + transform.getClass().getSimpleName();
+    }
+
+    Transform marking(String marker, String... jsonPaths) {
+        return Transform.RedactRegexMatches.builder()
+            .jsonPaths(Arrays.asList(jsonPaths))
+            .redaction(marker)
+            .build();
+    }
+
+    String apply(Rules2.Endpoint endpoint, String json) {
+        TransformPlan plan = TransformPlan.compile(endpoint, this::marker).orElseThrow();
+        Object document = configuration.jsonProvider().parse(json);
+        plan.apply(document, configuration);
+        return configuration.jsonProvider().toJson(document);
+    }
+
+    @Test
+    void compile_mergesCommonPrefixes() {
+        TransformPlan plan = TransformPlan.compile(Rules2.Endpoint.builder()
+            .transform(Transform.Redact.ofPaths("$.users[*].name", "$..phone"))
+            .transform(marking("a", "$.users[*].email"))
+            .build(), this::marker).orElseThrow();
+
+        TransformPlan.Node users = plan.root.properties.get("users");
+        assertEquals(1, plan.root.properties.size());
+        assertEquals(2, users.wildcard.properties.size());
+        assertTrue(plan.root.descendants.recursive);
+        assertTrue(plan.root.descendants.properties.get("phone").rules.get(0).isRedaction());
+    }
+
+    @Test
+    void compile_unsupported() {
+        assertTrue(TransformPlan.compile(Rules2.Endpoint.builder()
+            .transform(Transform.Redact.ofPaths("$.users[*].name", "$.users[0].email"))
+            .build(), this::marker).isEmpty());
+    }
+
+    @Test
+    void compile_filterOnPropertyTargetedByEarlierPath() {
+        // filter would see result of earlier redaction, if applied one-by-one
+        assertTrue(TransformPlan.compile(Rules2.Endpoint.builder()
+            .transform(Transform.Redact.ofPaths("$.items[*].kind"))
+            .transform(Transform.Redact.ofPaths("$.items[?(!@.kind)]"))
+            .build(), this::marker).isEmpty());
+        assertTrue(TransformPlan.compile(Rules2.Endpoint.builder()
+            .transform(marking("a", "$..organizer"))
+            .transform(Transform.Redact.ofPaths("$.items[?(@['organizer'].email == 'x')].summary"))
+            .build(), this::marker).isEmpty());
+        // even within same transform
+        assertTrue(TransformPlan.compile(Rules2.Endpoint.builder()
+            .transform(Transform.Redact.ofPaths("$.items[*].kind", "$.items[?(@.kind == 'private')].summary"))
+            .build(), this::marker).isEmpty());
+        // earlier path may target properties of any name
+        assertTrue(TransformPlan.compile(Rules2.Endpoint.builder()
+            .transform(Transform.Redact.ofPaths("$.items[*].*"))
+            .transform(Transform.Redact.ofPaths("$.items[?(@.kind == 'private')].summary"))
+            .build(), this::marker).isEmpty());
+    }
+
+    @Test
+    void compile_filterOnPropertyNotTargetedByEarlierPath() {
+        // filter references properties only targeted later, or not at all
+        assertTrue(TransformPlan.compile(Rules2.Endpoint.builder()
+            .transform(Transform.Redact.ofPaths("$.items[*].summary"))
+            .transform(Transform.Redact.ofPaths("$.items[?(@.kind == 'private')].description"))
+            .transform(Transform.Redact.ofPaths("$.items[*].kind"))
+            .build(), this::marker).isPresent());
+    }
+
+    @Test
+    void referencedProperties() {
+        assertEquals(Set.of("kind", "email", "organizer", "name"), TransformPlan.referencedProperties(
+            new SimplePath.Filter("[?(@.kind == 'a' && @['organizer'].email && @..name =~ /^(To|From)$/i)]")));
+        assertEquals(Set.of(TransformPlan.ANY_PROPERTY), TransformPlan.referencedProperties(
+            new SimplePath.Filter("[?(@.* == 'a')]")));
+    }
+
+    @Test
+    void apply_inRuleOrder() {
+        String json = "{\"users\":[{\"name\":\"alice\",\"email\":\"alice@acme.com\"}]}";
+
+        Rules2.Endpoint endpoint = Rules2.Endpoint.builder()
+            .transform(marking("a", "$..email"))
+            .transform(marking("b", "$.users[*].email", "$.users[*].name"))
+            .build();
+
+        assertEquals("{\"users\":[{\"name\":\"alice+b\",\"email\":\"alice@acme.com+a+b\"}]}",
+            apply(endpoint, json));
+    }
+
+    @Test
+    void apply_redactionWins() {
+        String json = "{\"users\":[{\"id\":1,\"name\":\"alice\",\"email\":\"alice@acme.com\"},{\"id\":2,\"name\":\"bob\"}]}";
+
+        Rules2.Endpoint endpoint = Rules2.Endpoint.builder()
+            .transform(marking("a", "$..email", "$..name"))
+            .transform(Transform.Redact.ofPaths("$.users[*].email", "$.users[?(@.id == 2)]"))
+            .build();
+
+        assertEquals("{\"users\":[{\"id\":1,\"name\":\"alice+a\"}]}",
+            apply(endpoint, json));
+    }
+
+    @Test
+    void apply_filterOnObject() {
+        String json = "{\"owner\":{\"kind\":\"user\",\"id\":\"1\"},\"group\":{\"kind\":\"group\",\"id\":\"2\"}}";
+
+        Rules2.Endpoint endpoint = Rules2.Endpoint.builder()
+            .transform(marking("a", "$.*[?(@.kind == 'user')].id"))
+            .build();
+
+        assertEquals("{\"owner\":{\"kind\":\"user\",\"id\":\"1+a\"},\"group\":{\"kind\":\"group\",\"id\":\"2\"}}",
+            apply(endpoint, json));
+    }
+
+    @Test
+    void apply_pseudonymizationsMemoizedPerDocument() {
+        String json = "{\"events\":[{\"organizer\":\"alice\"},{\"organizer\":\"alice\"},{\"organizer\":\"bob\"}]}";
+
+        List<Object> applied = new ArrayList<>();
+        TransformPlan plan = TransformPlan.compile(Rules2.Endpoint.builder()
+            .transform(Transform.Pseudonymize.ofPaths("$.events[*].organizer"))
+            .build(), transform -> (value, configuration) -> {
+                applied.add(value);
+                return value + "+p";
+            }).orElseThrow();
+
+        Object document = configuration.jsonProvider().parse(json);
+        plan.apply(document, configuration);
+
+        assertEquals("{\"events\":[{\"organizer\":\"alice+p\"},{\"organizer\":\"alice+p\"},{\"organizer\":\"bob+p\"}]}",
+            configuration.jsonProvider().toJson(document));
+        assertEquals(Arrays.asList("alice", "bob"), applied);
+    }
+
+    @Test
+    void apply_parallelSameAsSequential() {
+        StringBuilder json = new StringBuilder("{\"kind\":\"events\",\"items\":[");
+        for (int i = 0; i < 5_000; i++) {
+            json.append(i > 0 ? "," : "")
+                .append("{\"id\":").append(i)
+                .append(",\"kind\":\"").append(i % 3 == 0 ? "private" : "public")
+                .append("\",\"organizer\":{\"email\":\"user").append(i % 7).append("@acme.com\"}")
+                .append(",\"attendees\":[\"a\",\"b\"]}");
+        }
+        json.append("]}");
+
+        Rules2.Endpoint endpoint = Rules2.Endpoint.builder()
+            .transform(Transform.Redact.ofPaths("$.items[?(@.kind == 'private')]"))
+            .transform(marking("a", "$..email", "$.items[*].attendees[*]"))
+            .build();
+        TransformPlan plan = TransformPlan.compile(endpoint, this::marker).orElseThrow();
+
+        Object sequential = configuration.jsonProvider().parse(json.toString());
+        plan.apply(sequential, configuration);
+        Object parallel = configuration.jsonProvider().parse(json.toString());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            plan.apply(parallel, configuration, new TransformPlan.Parallelism(100, pool));
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(configuration.jsonProvider().toJson(sequential),
+            configuration.jsonProvider().toJson(parallel));
+        assertEquals(3_333, configuration.jsonProvider().length(
+            configuration.jsonProvider().getMapValue(parallel, "items")));
+    }
+
+    @Test
+    void parallelism_appliesTo() {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            assertTrue(new TransformPlan.Parallelism(100, pool).appliesTo(100));
+            assertFalse(new TransformPlan.Parallelism(100, pool).appliesTo(99));
+            assertFalse(new TransformPlan.Parallelism(0, pool).appliesTo(100));
+            assertFalse(new TransformPlan.Parallelism(100, null).appliesTo(100));
+            assertFalse(TransformPlan.Parallelism.NONE.appliesTo(Integer.MAX_VALUE));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void determinize_successorsPrecomputed() {
+        TransformPlan plan = TransformPlan.compile(Rules2.Endpoint.builder()
+            .transform(Transform.Redact.ofPaths("$.users[*].name", "$..phone"))
+            .transform(marking("a", "$.users[*].email"))
+            .build(), this::marker).orElseThrow();
+
+        TransformPlan.State users = plan.advanceToProperty(plan.initial(), "users");
+        assertTrue(users.isPrecomputed());
+        assertSame(users, plan.advanceToProperty(plan.initial(), "users"));
+
+        TransformPlan.State user = plan.advanceToElement(users, null, configuration);
+        assertEquals(1, plan.matches(plan.advanceToProperty(user, "email")).size());
+        assertTrue(plan.matches(plan.advanceToProperty(user, "phone")).get(0).isRedaction());
+
+        // any other property, at any depth, is the same state: just the deep scan active
+        TransformPlan.State other = plan.advanceToProperty(plan.initial(), "groups");
+        assertSame(other, plan.advanceToProperty(other, "members"));
+        assertSame(other, plan.advanceToElement(other, null, configuration));
+        assertTrue(plan.matches(other).isEmpty());
+    }
+
+    @Test
+    void determinize_prebuiltRules() {
+        for (RuleSet rules : PrebuiltSanitizerRules.DEFAULTS.values()) {
+            if (rules instanceof Rules2) {
+                for (Rules2.Endpoint endpoint : ((Rules2) rules).getEndpoints()) {
+                    TransformPlan.compile(endpoint, transform -> (value, configuration) -> value).ifPresent(plan -> {
+                        assertTrue(plan.states.size() < TransformPlan.MAX_STATES, endpoint.getPathRegex());
+                        assertTrue(plan.initial().isPrecomputed(), endpoint.getPathRegex());
+                    });
+                }
+            }
+        }
+    }
+
+    @Test
+    void specialize_prebuiltRules() {
+        for (RuleSet rules : PrebuiltSanitizerRules.DEFAULTS.values()) {
+            if (rules instanceof Rules2) {
+                for (Rules2.Endpoint endpoint : ((Rules2) rules).getEndpoints()) {
+                    TransformPlan.compile(CompiledRules.planned(endpoint), this::tagging).ifPresent(plan -> {
+                        if (plan.determinized.stream().anyMatch(state -> !state.matches.isEmpty())) {
+                            assertTrue(plan.getClass().getSimpleName().startsWith(TransformPlanGenerator.CLASS_PREFIX),
+                                endpoint.getPathRegex());
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    @Test
+    void specialize_onlyIfSameSignature() {
+        Rules2.Endpoint endpoint = ((Rules2) PrebuiltSanitizerRules.DEFAULTS.get("gcal")).getEndpoints().get(1);
+        TransformPlan plan = TransformPlan.compileGeneric(endpoint, this::tagging).orElseThrow();
+        assertEquals(TransformPlan.class, plan.getClass());
+        assertSame(TransformPlan.Generated.PLANS.get(plan.signature()).apply(plan).getClass(),
+            TransformPlan.specialize(plan).getClass());
+
+        // any change to structure, and it's a different plan
+        TransformPlan changed = TransformPlan.compile(endpoint.toBuilder()
+            .transform(Transform.Redact.ofPaths("$.items[*].location"))
+            .build(), this::tagging).orElseThrow();
+        assertNotEquals(plan.signature(), changed.signature());
+        assertEquals(TransformPlan.class, changed.getClass());
+
+        // nor if not fully determinized
+        assertSame(TransformPlan.class, TransformPlan.specialize(new TransformPlan(plan.root, 3)).getClass());
+    }
+
+    @Test
+    void apply_specializedSameAsGeneric() {
+        Rules2.Endpoint endpoint = ((Rules2) PrebuiltSanitizerRules.DEFAULTS.get("gcal")).getEndpoints().get(1);
+        String json = new String(TestUtils.getData("api-response-examples/g-workspace/calendar/events.json"));
+
+        TransformPlan generic = TransformPlan.compileGeneric(endpoint, this::tagging).orElseThrow();
+        TransformPlan specialized = TransformPlan.specialize(generic);
+        assertNotSame(generic, specialized);
+
+        Object expected = configuration.jsonProvider().parse(json);
+        generic.apply(expected, configuration);
+        Object actual = configuration.jsonProvider().parse(json);
+        specialized.apply(actual, configuration);
+
+        assertEquals(configuration.jsonProvider().toJson(expected), configuration.jsonProvider().toJson(actual));
+        assertNotEquals(json, configuration.jsonProvider().toJson(actual));
+    }
+
+    @Test
+    void determinize_beyondMaxStates() {
+        String json = "{\"users\":[{\"name\":\"alice\",\"email\":\"alice@acme.com\",\"phone\":\"1\"},"
+            + "{\"name\":\"bob\",\"groups\":[{\"phone\":\"2\",\"email\":\"bob@acme.com\"}]}]}";
+
+        Rules2.Endpoint endpoint = Rules2.Endpoint.builder()
+            .transform(Transform.Redact.ofPaths("$.users[*].name", "$..phone"))
+            .transform(marking("a", "$.users[*].email", "$..groups[*].email"))
+            .build();
+        TransformPlan plan = TransformPlan.compile(endpoint, this::marker).orElseThrow();
+        assertTrue(plan.complete);
+
+        // successors beyond limit are derived as traversed, each time they're reached
+        TransformPlan single = new TransformPlan(plan.root, 1);
+        assertTrue(single.initial().isPrecomputed());
+        TransformPlan.State users = single.advanceToProperty(single.initial(), "users");
+        assertFalse(users.isPrecomputed());
+        assertEquals(-1, users.id);
+        assertNotSame(single.advanceToElement(users, null, configuration),
+            single.advanceToElement(users, null, configuration));
+
+        for (int maxStates = 1; maxStates < plan.determinized.size(); maxStates++) {
+            TransformPlan truncated = new TransformPlan(plan.root, maxStates);
+            assertEquals(maxStates, truncated.states.size());
+            assertFalse(truncated.complete);
+
+            Object expected = configuration.jsonProvider().parse(json);
+            plan.apply(expected, configuration);
+            Object actual = configuration.jsonProvider().parse(json);
+            truncated.apply(actual, configuration);
+            assertEquals(configuration.jsonProvider().toJson(expected), configuration.jsonProvider().toJson(actual),
+                "maxStates=" + maxStates);
+        }
+        assertEquals("{\"users\":[{\"email\":\"alice@acme.com+a\"},{\"groups\":[{\"email\":\"bob@acme.com+a\"}]}]}",
+            apply(endpoint, json));
+    }
+
+    @Test
+    void determinize_beyondMaxPrecomputedFilters() {
+        StringBuilder json = new StringBuilder("{\"items\":[");
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i <= TransformPlan.MAX_PRECOMPUTED_FILTERS; i++) {
+            paths.add("$.items[?(@.kind == 'k" + i + "')].id");
+            json.append(i > 0 ? "," : "").append("{\"kind\":\"k").append(i).append("\",\"id\":\"").append(i).append("\"}");
+        }
+        json.append(",{\"kind\":\"other\",\"id\":\"x\"}]}");
+
+        TransformPlan plan = TransformPlan.compile(Rules2.Endpoint.builder()
+            .transform(marking("a", paths.toArray(new String[0])))
+            .build(), this::marker).orElseThrow();
+
+        TransformPlan.State items = plan.advanceToProperty(plan.initial(), "items");
+        assertTrue(plan.hasFilters(items));
+        assertNull(items.elements);
+        assertFalse(plan.complete);
+
+        Object document = configuration.jsonProvider().parse(json.toString());
+        plan.apply(document, configuration);
+        String sanitized = configuration.jsonProvider().toJson(document);
+        for (int i = 0; i <= TransformPlan.MAX_PRECOMPUTED_FILTERS; i++) {
+            assertTrue(sanitized.contains("\"id\":\"" + i + "+a\""), sanitized);
+        }
+        assertTrue(sanitized.contains("\"id\":\"x\""), sanitized);
+    }
+
+    @Test
+    void apply_undeterminizedSameResult() {
+        String json = "{\"users\":[{\"name\":\"alice\",\"email\":\"alice@acme.com\",\"kind\":\"user\"},"
+            + "{\"name\":\"bob\",\"kind\":\"admin\",\"manager\":{\"email\":\"carol@acme.com\"}}],"
+            + "\"owner\":{\"kind\":\"user\",\"id\":\"1\"}}";
+
+        Rules2.Endpoint endpoint = Rules2.Endpoint.builder()
+            .transform(Transform.Redact.ofPaths("$.users[?(@.name == 'alice')].email"))
+            .transform(marking("a", "$..email", "$.*[?(@.kind == 'user')].id"))
+            .transform(marking("b", "$.users[?(@.kind == 'admin')].name"))
+            .build();
+        TransformPlan plan = TransformPlan.compile(endpoint, this::marker).orElseThrow();
+        TransformPlan undeterminized = new TransformPlan(plan.root, 0);
+        assertFalse(undeterminized.initial().isPrecomputed());
+
+        Object expected = configuration.jsonProvider().parse(json);
+        plan.apply(expected, configuration);
+        Object actual = configuration.jsonProvider().parse(json);
+        undeterminized.apply(actual, configuration);
+
+        assertEquals(configuration.jsonProvider().toJson(expected), configuration.jsonProvider().toJson(actual));
+        assertEquals("{\"users\":[{\"name\":\"alice\",\"kind\":\"user\"},"
+                + "{\"name\":\"bob+b\",\"kind\":\"admin\",\"manager\":{\"email\":\"carol@acme.com+a\"}}],"
+                + "\"owner\":{\"kind\":\"user\",\"id\":\"1+a\"}}",
+            configuration.jsonProvider().toJson(actual));
+    }
+}
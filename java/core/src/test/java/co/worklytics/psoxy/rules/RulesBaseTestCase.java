@@ -12,11 +12,17 @@ import lombok.*;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Stream;
 
@@ -120,6 +126,51 @@ abstract public class RulesBaseTestCase {
             });
     }
 
+    /**
+     * @return every combination of options that should sanitize examples exactly as default
+     *         (JSON_PATH engine, MAP model, content as String) does
+     */
+    static Stream<Arguments> sanitizerVariants() {
+        Stream.Builder<Arguments> variants = Stream.builder();
+        for (Sanitizer.Engine engine : Sanitizer.Engine.values()) {
+            for (Sanitizer.DocumentModel documentModel : Sanitizer.DocumentModel.values()) {
+                //threshold of 1, so every top-level array of examples is sanitized in parallel
+                for (int parallelThreshold : new int[]{0, 1}) {
+                    for (boolean streaming : new boolean[]{false, true}) {
+                        variants.add(Arguments.of(engine, documentModel, parallelThreshold, streaming));
+                    }
+                }
+            }
+        }
+        return variants.build();
+    }
+
+    @ParameterizedTest(name = "{0}, {1}, parallelThreshold={2}, streaming={3}")
+    @MethodSource("sanitizerVariants")
+    void testExamples_variants(Sanitizer.Engine engine,
+                               Sanitizer.DocumentModel documentModel,
+                               int parallelThreshold,
+                               boolean streaming) {
+        SanitizerImpl variant =
+            sanitizerFactory.create(sanitizer.getOptions()
+                .withEngine(engine)
+                .withDocumentModel(documentModel)
+                .withParallelThreshold(parallelThreshold));
+
+        getExamples()
+            .forEach(example -> {
+                byte[] original = TestUtils.getData(getExampleDirectoryPath() + "/" + example.getPlainExampleFile());
+
+                String sanitized = streaming
+                    ? sanitizeStream(variant, example.getRequestUrl(), original)
+                    : sanitize(variant, example.getRequestUrl(), new String(original));
+
+                //NOTE: byte-for-byte, not just equivalent JSON
+                assertEquals(sanitize(example.getRequestUrl(), new String(original)), sanitized,
+                    String.format("%s sanitized differently by %s, %s, parallelThreshold=%d, streaming=%s",
+                        example.getPlainExampleFile(), engine, documentModel, parallelThreshold, streaming));
+            });
+    }
 
 
     @SneakyThrows
@@ -158,14 +209,26 @@ abstract public class RulesBaseTestCase {
         return new String(TestUtils.getData(directoryPath + "/" + filePathWithinExampleDirectory));
     }
 
-    @SneakyThrows
     protected String sanitize(String endpoint, String jsonResponse) {
-        return this.sanitizer.sanitize(new URL(endpoint), jsonResponse);
+        return sanitize(this.sanitizer, endpoint, jsonResponse);
+    }
+
+    @SneakyThrows
+    protected String sanitize(Sanitizer sanitizer, String endpoint, String jsonResponse) {
+        return sanitizer.sanitize(new URL(endpoint), jsonResponse);
+    }
+
+    @SneakyThrows
+    protected String sanitizeStream(Sanitizer sanitizer, String endpoint, byte[] jsonResponse) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sanitizer.sanitize(new URL(endpoint), new ByteArrayInputStream(jsonResponse), StandardCharsets.UTF_8, out);
+        return out.toString(StandardCharsets.UTF_8);
     }
 
     protected void assertSha(String expectedSha) {
         assertNotNull(expectedSha);
         assertEquals(expectedSha, rulesUtils.sha(sanitizer.getOptions().getRules()));
+        assertEquals(expectedSha, sanitizer.getRulesSha());
     }
 
     protected void assertNotSanitized(String content, Collection<String> shouldContain) {
@@ -64,10 +64,38 @@ class CalendarTests extends JavaRulesTestBaseCase {
         assertRedacted(sanitized, "Dear alice :");
     }
 
+    @SneakyThrows
+    @Test
+    void events_zoomUrls() {
+        String jsonString = asJson("events-zoom.json");
+
+        assertNotSanitized(jsonString,
+            "https://acme.zoom.us/j/12354234234?pwd=123123&from=addon",
+            "https://us02web.zoom.us/j/87654321#success&pwd=abcdef");
+
+        String sanitized =
+            sanitizer.sanitize(new URL("http://calendar.googleapis.com/calendar/v3/calendars/primary/events"), jsonString);
+
+        // zoom URLs kept, but 'pwd' redacted from query and fragment
+        assertNotSanitized(sanitized,
+            "https://acme.zoom.us/j/12354234234?&from=addon",
+            "https://us02web.zoom.us/j/87654321#success&");
+        assertRedacted(sanitized, "pwd=", "123123", "abcdef", "Passcode");
+
+        // other hosts (and non-https) dropped
+        assertRedacted(sanitized,
+            "meet.google.com",
+            "https://zoom.us/j/1",
+            "acme.zoom.us/j/2",
+            "evil.com",
+            "docs.google.com");
+    }
+
     @Override
     public Stream<InvocationExample> getExamples() {
         return Stream.of(
-                InvocationExample.of("http://calendar.googleapis.com/calendar/v3/calendars/primary/events", "events.json")
+                InvocationExample.of("http://calendar.googleapis.com/calendar/v3/calendars/primary/events", "events.json"),
+                InvocationExample.of("http://calendar.googleapis.com/calendar/v3/calendars/primary/events", "events-zoom.json")
             );
     }
 }
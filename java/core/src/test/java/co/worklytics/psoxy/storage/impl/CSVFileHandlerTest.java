@@ -1,5 +1,6 @@
 package co.worklytics.psoxy.storage.impl;
 
+import co.worklytics.psoxy.PseudonymEncoding;
 import co.worklytics.psoxy.PsoxyModule;
 import co.worklytics.psoxy.rules.*;
 import co.worklytics.psoxy.Sanitizer;
@@ -86,6 +87,33 @@ public class CSVFileHandlerTest {
         }
     }
 
+    @Test
+    @SneakyThrows
+    void handle_pseudonymizeCompact() {
+        final String EXPECTED = "EMPLOYEE_ID,EMPLOYEE_EMAIL,DEPARTMENT,EFFECTIVE_ISOWEEK\r\n" +
+                "1,e:worklytics.co:Qf4dLJ4jfqZLn9ef4VirvYjvOnRaVI5tf5oLnM65YOA,Engineering,2020-01-06\r\n" +
+                "2,e:workltyics.co:al4JK5KlOIsneC2DM__P_HRYe28LWYTBSf3yWKGm5yQ,Sales,2020-01-06\r\n" +
+                "3,e:workltycis.co:BlQB8Vk0VwdbdWTGAzBF.ote1357Ajr0fFcgFf72kdk,Engineering,2020-01-06\r\n" +
+                "4,,Engineering,2020-01-06\r\n"; //blank ID
+
+        Sanitizer sanitizer = sanitizerFactory.create(Sanitizer.Options.builder()
+                .rules(CsvRules.builder()
+                    .columnToPseudonymize("EMPLOYEE_EMAIL")
+                    .pseudonymEncoding(PseudonymEncoding.COMPACT)
+                    .build())
+                .pseudonymizationSalt("salt")
+                .defaultScopeId("hris")
+                .build());
+
+        File inputFile = new File(getClass().getResource("/csv/hris-example.csv").getFile());
+
+        try (FileReader in = new FileReader(inputFile)) {
+            byte[] result  = csvFileHandler.handle(in, sanitizer);
+
+            assertEquals(EXPECTED, new String(result));
+        }
+    }
+
     @Test
     @SneakyThrows
     void handle_redaction() {
@@ -0,0 +1,109 @@
+package co.worklytics.psoxy.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * compares LinearRegex to java.util.regex on patterns of the sort used by prebuilt rules
+ *
+ * not run as part of test suite; to run, after `mvn test-compile` in core:
+ *   mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=co.worklytics.psoxy.utils.LinearRegexBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinearRegexBenchmark {
+
+    static final String PWD = "(?i)pwd=[^&]*";
+
+    static final String ZOOM_URL = "https://[^.]+\\.zoom\\.us/.*";
+
+    static final String EMAIL = "[a-z0-9._%+-]+@[a-z0-9.-]+\\.[a-z]{2,}";
+
+    Pattern pwdPattern;
+    LinearRegex pwdRegex;
+
+    Pattern zoomPattern;
+    LinearRegex zoomRegex;
+
+    Pattern emailPattern;
+    LinearRegex emailRegex;
+
+    String url;
+
+    String text;
+
+    @Setup
+    public void setup() {
+        pwdPattern = Pattern.compile(PWD);
+        pwdRegex = LinearRegex.compile(PWD);
+        zoomPattern = Pattern.compile(ZOOM_URL);
+        zoomRegex = LinearRegex.compile(ZOOM_URL);
+        emailPattern = Pattern.compile(EMAIL);
+        emailRegex = LinearRegex.compile(EMAIL);
+
+        url = "https://acme.zoom.us/j/12354234234?pwd=123123&uname=alice&tk=abc#success";
+
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            description.append("Agenda item ").append(i)
+                .append(": review roadmap with the team, no addresses here. ");
+        }
+        description.append("Questions to bob@acme.com before the meeting.");
+        text = description.toString();
+    }
+
+    @Benchmark
+    public String replaceAll_javaRegex() {
+        return pwdPattern.matcher(url).replaceAll("");
+    }
+
+    @Benchmark
+    public String replaceAll_linearRegex() {
+        return pwdRegex.matcher(url).replaceAll("");
+    }
+
+    @Benchmark
+    public boolean matches_javaRegex() {
+        return zoomPattern.matcher(url).matches();
+    }
+
+    @Benchmark
+    public boolean matches_linearRegex() {
+        return zoomRegex.matches(url);
+    }
+
+    @Benchmark
+    public boolean find_javaRegex() {
+        return emailPattern.matcher(text).find();
+    }
+
+    @Benchmark
+    public boolean find_linearRegex() {
+        return emailRegex.matcher(text).find();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(LinearRegexBenchmark.class.getSimpleName())
+            .build())
+            .run();
+    }
+}
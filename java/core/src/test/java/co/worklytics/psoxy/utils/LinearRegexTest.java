@@ -0,0 +1,301 @@
+package co.worklytics.psoxy.utils;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinearRegexTest {
+
+    static final List<String> INPUTS = Arrays.asList(
+        "",
+        "a",
+        "aaa",
+        "abc",
+        "abcabc",
+        "ABC aBc",
+        "x=1&pwd=secret&y=2",
+        "https://acme.zoom.us/12312345?pwd=1234asAf",
+        "https://acme.asdf.zoom.us/123",
+        "https://zoom.us/123",
+        "come to my meeting!\r\nhttps://acme.zoom.us/j/1\r\n",
+        "line\n",
+        "line\r\n",
+        "line\r",
+        "line ",
+        "\n",
+        "a\nb",
+        "tab\there",
+        "under_score 42 -7 3.14",
+        "emoji 😀 here",
+        "😀",
+        "<b>bold</b> and <i>italic</i>"
+    );
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "a",
+        "abc",
+        "a*",
+        "a+",
+        "a?",
+        "a*?",
+        "a+?",
+        "a??",
+        "a{2}",
+        "a{1,2}",
+        "a{2,}",
+        "a{0,2}?",
+        "(a|ab)(c|bcd)",
+        "(a|ab)c",
+        "(?:ab|a)*c?",
+        "(?<name>ab)+",
+        "a|b|c",
+        "|a",
+        "a|",
+        "()",
+        "(a+)*",
+        "(a*)?b",
+        "(^)??",
+        "(a|b?)?",
+        "[abc]+",
+        "[^abc]+",
+        "[a-c]",
+        "[^a-z ]",
+        "[-a]",
+        "[a-]",
+        "[\\]a]",
+        "[\\d.]+",
+        "\\d+",
+        "\\D+",
+        "\\w+",
+        "\\W+",
+        "\\s+",
+        "\\S+",
+        "\\.",
+        "\\x41",
+        "\\u00e9|\\t",
+        ".",
+        ".+",
+        ".*",
+        "(?s).+",
+        "^a",
+        "c$",
+        "^$",
+        "$",
+        "^",
+        "\\Aabc\\z",
+        "line\\Z",
+        "(?i)abc",
+        "(?i)[a-c]+",
+        "(?i)[^b]",
+        "(?i)pwd=[^&]*",
+        "(?i)(?s)LINE.",
+        "https://[^.]+\\.zoom\\.us/.*",
+        "<.+>",
+        "<.+?>",
+        "</?[a-z]+>",
+        "-?\\d+(\\.\\d+)?",
+        "😀",
+        "[😀]",
+        "e.o",
+        "(a|b)*?c",
+    })
+    void equivalentToJavaRegex(String regex) {
+        Pattern pattern = Pattern.compile(regex);
+        LinearRegex linear = LinearRegex.compile(regex);
+
+        for (String input : INPUTS) {
+            String context = "/" + regex + "/ against '" + input + "'";
+
+            assertEquals(pattern.matcher(input).matches(), linear.matches(input), context);
+            assertEquals(pattern.matcher(input).matches(), linear.matcher(input).matches(), context);
+
+            List<String> expected = new ArrayList<>();
+            Matcher matcher = pattern.matcher(input);
+            while (matcher.find()) {
+                expected.add(matcher.start() + "-" + matcher.end());
+            }
+            List<String> actual = new ArrayList<>();
+            LinearRegex.Matcher linearMatcher = linear.matcher(input);
+            while (linearMatcher.find()) {
+                actual.add(linearMatcher.start() + "-" + linearMatcher.end());
+            }
+            assertEquals(expected, actual, context);
+
+            assertEquals(pattern.matcher(input).replaceAll("_"), linear.matcher(input).replaceAll("_"), context);
+        }
+    }
+
+    /**
+     * random regexes of supported syntax, over a small alphabet so they match often
+     */
+    static String randomRegex(Random random, int depth) {
+        StringBuilder regex = new StringBuilder();
+        int alternatives = 1 + random.nextInt(depth > 0 ? 3 : 2);
+        for (int i = 0; i < alternatives; i++) {
+            if (i > 0) {
+                regex.append('|');
+            }
+            int terms = 1 + random.nextInt(3);
+            for (int j = 0; j < terms; j++) {
+                regex.append(randomAtom(random, depth));
+                if (random.nextInt(3) == 0) {
+                    String[] quantifiers = {"*", "+", "?", "{2}", "{1,}", "{0,2}", "{1,3}"};
+                    regex.append(quantifiers[random.nextInt(quantifiers.length)]);
+                    if (random.nextInt(4) == 0) {
+                        regex.append('?');
+                    }
+                }
+            }
+        }
+        return regex.toString();
+    }
+
+    static String randomAtom(Random random, int depth) {
+        String[] atoms = {"a", "b", "c", "A", ".", "[ab]", "[^a]", "[a-c]", "\\d", "\\w", "\\s", "^", "$"};
+        int choice = random.nextInt(depth > 0 ? atoms.length + 3 : atoms.length);
+        if (choice < atoms.length) {
+            return atoms[choice];
+        }
+        String inner = randomRegex(random, depth - 1);
+        switch (choice - atoms.length) {
+            case 0:
+                return "(" + inner + ")";
+            case 1:
+                return "(?:" + inner + ")";
+            default:
+                //names must be unique within regex
+                return "(?<g" + random.nextInt(1_000_000) + ">" + inner + ")";
+        }
+    }
+
+    static String randomInput(Random random) {
+        String alphabet = "aabbcA0 \n";
+        StringBuilder input = new StringBuilder();
+        int length = random.nextInt(9);
+        for (int i = 0; i < length; i++) {
+            input.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return input.toString();
+    }
+
+    @Test
+    void equivalentToJavaRegex_random() {
+        //fixed seed, so any failure is reproducible
+        Random random = new Random(20221018L);
+        int compared = 0;
+        for (int i = 0; i < 3_000; i++) {
+            String regex = (random.nextInt(5) == 0 ? "(?i)" : "") + (random.nextInt(5) == 0 ? "(?s)" : "")
+                + randomRegex(random, 2);
+            LinearRegex linear;
+            try {
+                linear = LinearRegex.compile(regex);
+            } catch (IllegalArgumentException e) {
+                //eg, repetition of something that can match nothing
+                continue;
+            }
+            Pattern pattern = Pattern.compile(regex);
+            compared++;
+
+            for (int j = 0; j < 20; j++) {
+                String input = randomInput(random);
+                String context = "/" + regex + "/ against '" + input + "'";
+
+                assertEquals(pattern.matcher(input).matches(), linear.matches(input), context);
+
+                List<String> expected = new ArrayList<>();
+                Matcher matcher = pattern.matcher(input);
+                while (matcher.find()) {
+                    expected.add(matcher.start() + "-" + matcher.end());
+                }
+                List<String> actual = new ArrayList<>();
+                LinearRegex.Matcher linearMatcher = linear.matcher(input);
+                while (linearMatcher.find()) {
+                    actual.add(linearMatcher.start() + "-" + linearMatcher.end());
+                }
+                assertEquals(expected, actual, context);
+
+                assertEquals(pattern.matcher(input).replaceAll("_"), linear.matcher(input).replaceAll("_"), context);
+            }
+        }
+        // most generated regexes supported, else test isn't testing much
+        assertTrue(compared > 2_000, "only compared " + compared);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "(a)\\1",
+        "a(?=b)",
+        "a(?!b)",
+        "(?<=a)b",
+        "(?<!a)b",
+        "(?>a)",
+        "a*+",
+        "a++",
+        "\\bword\\b",
+        "\\p{Alpha}",
+        "\\Qa.b\\E",
+        "(?m)^a$",
+        "(?x)a b",
+        "a(?i)b",
+        "(?i:a)",
+        "[a[b]]",
+        "[a-z&&[^q]]",
+        "a{1000000}",
+        "(a{100}){200}",
+        "(a*)*",
+        "(a|)+",
+        "(^|a){2}",
+        "(?<g>a)(?<g>b)",
+        "(?<g-1>a)",
+        // invalid for java.util.regex too
+        "(a",
+        "a)",
+        "*a",
+        "a**",
+        "[a",
+        "[z-a]",
+        "a{2,1}",
+        "\\",
+    })
+    void unsupported(String regex) {
+        assertThrows(IllegalArgumentException.class, () -> LinearRegex.compile(regex));
+    }
+
+    @Test
+    void linearTime() {
+        // catastrophic backtracking for java.util.regex
+        String input = StringUtils.repeat("a", 100_000);
+
+        assertTimeout(Duration.ofSeconds(10), () -> {
+            assertFalse(LinearRegex.compile("(a|aa)*b").matches(input));
+            assertFalse(LinearRegex.compile("(a+)+b").matcher(input).find());
+            assertEquals(input, LinearRegex.compile("(x+x+)+y").matcher(input).replaceAll(""));
+        });
+    }
+
+    @Test
+    void dfaStatesBounded() {
+        // exponentially many DFA states
+        LinearRegex regex = LinearRegex.compile("[ab]*a[ab]{15}");
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            input.append(i % 3 == 0 ? 'a' : 'b');
+        }
+        Pattern pattern = Pattern.compile(regex.getPattern());
+
+        assertEquals(pattern.matcher(input).matches(), regex.matches(input));
+        assertTrue(regex.dfaStateCount.get() <= LinearRegex.MAX_DFA_STATES);
+    }
+}
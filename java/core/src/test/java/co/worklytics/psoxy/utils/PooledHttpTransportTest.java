@@ -0,0 +1,212 @@
+package co.worklytics.psoxy.utils;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.sun.net.httpserver.HttpServer;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PooledHttpTransportTest {
+
+    HttpServer server;
+
+    //remote ports of connections that requests were received over
+    Set<Integer> clientPorts;
+
+    PooledHttpTransport transport;
+
+    @SneakyThrows
+    @BeforeEach
+    void setup() {
+        clientPorts = new HashSet<>();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/echo", exchange -> {
+            synchronized (clientPorts) {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+            }
+            byte[] requestBody = exchange.getRequestBody().readAllBytes();
+            String body = exchange.getRequestMethod() + " "
+                + exchange.getRequestHeaders().getFirst("Content-Type") + " "
+                + new String(requestBody, StandardCharsets.UTF_8);
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+            exchange.getResponseHeaders().add("X-Custom", "a");
+            exchange.sendResponseHeaders(201, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.createContext("/headers", exchange -> {
+            StringBuilder body = new StringBuilder();
+            for (String name : new TreeSet<>(exchange.getRequestHeaders().keySet())) {
+                body.append(name.toLowerCase(Locale.ROOT)).append(": ")
+                    .append(String.join(",", exchange.getRequestHeaders().get(name))).append("\n");
+            }
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.createContext("/gzip", exchange -> {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write("{\"compressed\":true}".getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, compressed.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                compressed.writeTo(out);
+            }
+        });
+        server.start();
+
+        transport = PooledHttpTransport.of(HttpClient.Version.HTTP_1_1, Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void teardown() {
+        server.stop(0);
+    }
+
+    GenericUrl url(String path) {
+        return new GenericUrl("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path);
+    }
+
+    @SneakyThrows
+    @Test
+    void get() {
+        HttpResponse response = transport.createRequestFactory().buildGetRequest(url("/echo")).execute();
+        try {
+            assertEquals(201, response.getStatusCode());
+            assertEquals("text/plain; charset=utf-8", response.getContentType());
+            assertEquals("a", response.getHeaders().getFirstHeaderStringValue("X-Custom"));
+            assertEquals("GET null ", response.parseAsString());
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void post() {
+        HttpResponse response = transport.createRequestFactory()
+            .buildPostRequest(url("/echo"), ByteArrayContent.fromString("application/x-www-form-urlencoded", "grant_type=x"))
+            .execute();
+        try {
+            assertEquals("POST application/x-www-form-urlencoded grant_type=x", response.parseAsString());
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void gzip() {
+        HttpRequestFactory requestFactory =
+            transport.createRequestFactory(new GzipedContentHttpRequestInitializer("Psoxy"));
+        HttpResponse response = requestFactory.buildGetRequest(url("/gzip")).execute();
+        try {
+            assertEquals("{\"compressed\":true}", response.parseAsString());
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void connectionsReused() {
+        for (int i = 0; i < 5; i++) {
+            HttpResponse response = transport.createRequestFactory().buildGetRequest(url("/echo")).execute();
+            try {
+                response.parseAsString();
+            } finally {
+                response.disconnect();
+            }
+        }
+
+        assertEquals(1, clientPorts.size());
+        assertEquals(5, transport.getStats().getRequests());
+        assertEquals(0, transport.getStats().getOpen());
+        assertEquals(1, transport.getStats().getMaxOpen());
+        assertEquals(0, transport.getStats().getFailures());
+    }
+
+    @SneakyThrows
+    @Test
+    void restrictedHeadersFiltered() {
+        HttpHeaders headers = new HttpHeaders();
+        // all that java.net.http disallows, as of JDK 17
+        for (String restricted : List.of("Connection", "Content-Length", "Date", "Expect", "From", "Host",
+            "Upgrade", "Via", "Warning")) {
+            headers.set(restricted, List.of("from-caller"));
+        }
+        headers.set("X-Custom", "b");
+
+        // java.net.http would throw IllegalArgumentException on any restricted header
+        HttpResponse response = transport.createRequestFactory().buildGetRequest(url("/headers"))
+            .setHeaders(headers)
+            .execute();
+        try {
+            String received = response.parseAsString();
+            assertTrue(received.contains("x-custom: b\n"), received);
+            assertFalse(received.contains("from-caller"), received);
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void stats_openUntilDisconnect() {
+        HttpResponse first = transport.createRequestFactory().buildGetRequest(url("/echo")).execute();
+        HttpResponse second = transport.createRequestFactory().buildGetRequest(url("/echo")).execute();
+        assertEquals(2, transport.getStats().getOpen());
+        assertEquals(2, transport.getStats().getMaxOpen());
+
+        // disconnect without reading content
+        first.disconnect();
+        assertEquals(1, transport.getStats().getOpen());
+
+        // closed only once, however many times it's closed/disconnected
+        first.disconnect();
+        second.getContent().close();
+        second.disconnect();
+        assertEquals(0, transport.getStats().getOpen());
+        assertEquals(2, transport.getStats().getMaxOpen());
+        assertEquals(2, transport.getStats().getRequests());
+    }
+
+    @Test
+    void stats_failure() {
+        server.stop(0);
+
+        assertThrows(IOException.class,
+            () -> transport.createRequestFactory().buildGetRequest(url("/echo")).execute());
+        assertEquals(1, transport.getStats().getFailures());
+        assertEquals(0, transport.getStats().getRequests());
+        assertEquals(0, transport.getStats().getOpen());
+    }
+}
@@ -60,18 +60,14 @@ public class Handler implements com.amazonaws.services.lambda.runtime.RequestHan
         //
 
         HttpEventResponse response;
-        boolean base64Encoded = false;
+        boolean compressionRequested = false;
         try {
             APIGatewayV2HTTPEventRequestAdapter httpEventRequestAdapter = new APIGatewayV2HTTPEventRequestAdapter(httpEvent);
-            response = requestHandler.handle(httpEventRequestAdapter);
+            //lambda's return value must have body whole, so can't stream it
+            response = requestHandler.handle(httpEventRequestAdapter).buffered();
 
             context.getLogger().log(httpEventRequestAdapter.getHeader(HttpHeaders.ACCEPT_ENCODING).orElse("accept-encoding not found"));
-            if (isCompressionRequested(httpEventRequestAdapter)) {
-                Pair<Boolean, HttpEventResponse> compressedResponse = responseCompressionHandler.compressIfNeeded(response);
-                base64Encoded = compressedResponse.getLeft();
-                response = compressedResponse.getRight();
-            }
-
+            compressionRequested = isCompressionRequested(httpEventRequestAdapter);
         } catch (Throwable e) {
             context.getLogger().log(String.format("%s - %s", e.getClass().getName(), e.getMessage()));
             context.getLogger().log(ExceptionUtils.getStackTrace(e));
@@ -83,14 +79,7 @@ public class Handler implements com.amazonaws.services.lambda.runtime.RequestHan
         }
 
         try {
-            //NOTE: AWS seems to give 502 Bad Gateway errors without explanation or any info
-            // in the lambda logs if this is malformed somehow (Eg, missing statusCode)
-            return APIGatewayV2HTTPResponse.builder()
-                .withStatusCode(response.getStatusCode())
-                .withHeaders(response.getHeaders())
-                .withBody(response.getBody())
-                .withIsBase64Encoded(base64Encoded)
-                .build();
+            return responseCompressionHandler.asLambdaResponse(response, compressionRequested);
         } catch (Throwable e) {
             context.getLogger().log("Error writing response as Lambda return");
             throw new Error(e);
@@ -119,25 +108,76 @@ public class Handler implements com.amazonaws.services.lambda.runtime.RequestHan
          */
         Optional<String> compressBodyAndConvertToBase64(String body) {
             if (compressionOutweighOverhead(body)) {
-                try (ByteArrayOutputStream bos = new ByteArrayOutputStream(DEFAULT_COMPRESSION_BUFFER_SIZE)) {
-                    try (GZIPOutputStream output = new GZIPOutputStream(bos)) {
-                        output.write(body.getBytes(StandardCharsets.UTF_8.name()));
-                    }
-                    return Optional.ofNullable(Base64.encodeBase64String(bos.toByteArray()));
-                } catch (IOException ignored) {
-                    // do nothing, send uncompressed
+                return compressAndConvertToBase64(body.getBytes(StandardCharsets.UTF_8));
+            }
+            return Optional.empty();
+        }
+
+        /**
+         * Compresses raw content as binary base64
+         * @param body
+         * @return optional with content if compression has been applied
+         */
+        Optional<String> compressRawBodyAndConvertToBase64(byte[] body) {
+            if (body.length >= MIN_BYTES_TO_COMPRESS) {
+                return compressAndConvertToBase64(body);
+            }
+            return Optional.empty();
+        }
+
+        Optional<String> compressAndConvertToBase64(byte[] body) {
+            try (ByteArrayOutputStream bos = new ByteArrayOutputStream(DEFAULT_COMPRESSION_BUFFER_SIZE)) {
+                try (GZIPOutputStream output = new GZIPOutputStream(bos)) {
+                    output.write(body);
                 }
+                return Optional.ofNullable(Base64.encodeBase64String(bos.toByteArray()));
+            } catch (IOException ignored) {
+                // do nothing, send uncompressed
             }
             return Optional.empty();
         }
 
+        /**
+         * @param response             buffered response
+         * @param compressionRequested whether caller accepts gzip-encoded response
+         * @return response as lambda return value; body base64-encoded if it's binary (compressed,
+         *         or raw as received from source)
+         */
+        APIGatewayV2HTTPResponse asLambdaResponse(HttpEventResponse response, boolean compressionRequested) {
+            boolean base64Encoded = false;
+            if (compressionRequested) {
+                Pair<Boolean, HttpEventResponse> compressedResponse = compressIfNeeded(response);
+                base64Encoded = compressedResponse.getLeft();
+                response = compressedResponse.getRight();
+            }
+            if (!base64Encoded && response.getRawBody() != null) {
+                //as received from source, so may not be UTF-8 text; pass as binary
+                response = HttpEventResponse.builder()
+                    .body(Base64.encodeBase64String(response.getRawBody()))
+                    .statusCode(response.getStatusCode())
+                    .headers(response.getHeaders())
+                    .build();
+                base64Encoded = true;
+            }
+
+            //NOTE: AWS seems to give 502 Bad Gateway errors without explanation or any info
+            // in the lambda logs if this is malformed somehow (Eg, missing statusCode)
+            return APIGatewayV2HTTPResponse.builder()
+                .withStatusCode(response.getStatusCode())
+                .withHeaders(response.getHeaders())
+                .withBody(response.getBody())
+                .withIsBase64Encoded(base64Encoded)
+                .build();
+        }
+
         /**
          * @param response
          * @return (bool, response) - bool indicates if the response has been compressed or not
          */
         Pair<Boolean, HttpEventResponse> compressIfNeeded(HttpEventResponse response) {
-            String uncompressed = response.getBody();
-            Optional<String> compressedBody = compressBodyAndConvertToBase64(uncompressed);
+            Optional<String> compressedBody = response.getRawBody() == null
+                ? compressBodyAndConvertToBase64(response.getBody())
+                : compressRawBodyAndConvertToBase64(response.getRawBody());
             HttpEventResponse returnResponse = response;
             boolean compressed = compressedBody.isPresent();
             if (compressed) {
@@ -0,0 +1,113 @@
+package co.worklytics.psoxy;
+
+import co.worklytics.psoxy.gateway.HttpEventResponse;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import lombok.SneakyThrows;
+import org.apache.http.HttpHeaders;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static co.worklytics.psoxy.Handler.ResponseCompressionHandler.GZIP;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandlerTest {
+
+    Handler.ResponseCompressionHandler responseCompressionHandler = new Handler.ResponseCompressionHandler();
+
+    /**
+     * @return bytes that aren't valid UTF-8, as a source might send
+     */
+    static byte[] binary(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        bytes[0] = (byte) 0xC3; // lead byte, followed by a non-continuation byte
+        bytes[1] = (byte) 0x28;
+        return bytes;
+    }
+
+    @SneakyThrows
+    static byte[] gunzip(byte[] compressed) {
+        try (GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return gis.readAllBytes();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 100, 4096})
+    void asLambdaResponse_rawBody(int size) {
+        byte[] rawBody = binary(size);
+        HttpEventResponse response = HttpEventResponse.builder()
+            .statusCode(200)
+            .header(HttpHeaders.CONTENT_TYPE, "application/octet-stream")
+            .rawBody(rawBody)
+            .build();
+
+        APIGatewayV2HTTPResponse lambdaResponse = responseCompressionHandler.asLambdaResponse(response, false);
+
+        assertEquals(200, lambdaResponse.getStatusCode());
+        assertTrue(lambdaResponse.getIsBase64Encoded());
+        assertArrayEquals(rawBody, Base64.getDecoder().decode(lambdaResponse.getBody()));
+        assertEquals("application/octet-stream", lambdaResponse.getHeaders().get(HttpHeaders.CONTENT_TYPE));
+        assertNull(lambdaResponse.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    void asLambdaResponse_rawBody_gzipRequested() {
+        byte[] rawBody = binary(4096);
+        HttpEventResponse response = HttpEventResponse.builder()
+            .statusCode(200)
+            .header(HttpHeaders.CONTENT_TYPE, "application/octet-stream")
+            .rawBody(rawBody)
+            .build();
+
+        APIGatewayV2HTTPResponse lambdaResponse = responseCompressionHandler.asLambdaResponse(response, true);
+
+        assertEquals(200, lambdaResponse.getStatusCode());
+        assertTrue(lambdaResponse.getIsBase64Encoded());
+        assertEquals(GZIP, lambdaResponse.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(rawBody, gunzip(Base64.getDecoder().decode(lambdaResponse.getBody())));
+    }
+
+    @Test
+    void asLambdaResponse_rawBody_gzipRequestedButTooSmall() {
+        byte[] rawBody = binary(100);
+        HttpEventResponse response = HttpEventResponse.builder()
+            .statusCode(200)
+            .rawBody(rawBody)
+            .build();
+
+        APIGatewayV2HTTPResponse lambdaResponse = responseCompressionHandler.asLambdaResponse(response, true);
+
+        // not compressed, but still binary
+        assertTrue(lambdaResponse.getIsBase64Encoded());
+        assertNull(lambdaResponse.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(rawBody, Base64.getDecoder().decode(lambdaResponse.getBody()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void asLambdaResponse_textBody(boolean compressionRequested) {
+        String body = "{\"name\":\"" + "a".repeat(4096) + "\"}";
+        HttpEventResponse response = HttpEventResponse.builder()
+            .statusCode(200)
+            .body(body)
+            .build();
+
+        APIGatewayV2HTTPResponse lambdaResponse =
+            responseCompressionHandler.asLambdaResponse(response, compressionRequested);
+
+        assertEquals(compressionRequested, lambdaResponse.getIsBase64Encoded());
+        if (compressionRequested) {
+            assertEquals(body, new String(gunzip(Base64.getDecoder().decode(lambdaResponse.getBody())), StandardCharsets.UTF_8));
+        } else {
+            assertEquals(body, lambdaResponse.getBody());
+        }
+    }
+}
@@ -9,9 +9,7 @@ import com.google.cloud.functions.HttpResponse;
 import lombok.extern.java.Log;
 
 import javax.inject.Inject;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 
 @Log
 public class Route implements HttpFunction {
@@ -33,8 +31,8 @@ public class Route implements HttpFunction {
                 .forEach(response::appendHeader);
 
         response.setStatusCode(abstractResponse.getStatusCode());
-        new ByteArrayInputStream(abstractResponse.getBody().getBytes(StandardCharsets.UTF_8))
-            .transferTo(response.getOutputStream());
+        //streamed, if possible, so never held in memory whole
+        abstractResponse.writeBody(response.getOutputStream());
     }
 
 }